@@ -0,0 +1,29 @@
+package perceptron.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the perceptron benchmarks with the gc profiler attached, so that the
+ * report shows the allocation rate (gc.alloc.rate.norm, bytes per operation)
+ * next to the throughput.
+ * 
+ * <pre>
+ * java -cp target/benchmarks.jar perceptron.bench.BenchmarkRunner [regex]
+ * </pre>
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws RunnerException {
+		String include = "perceptron.bench.";
+		if (args != null && args.length > 0)
+			include = args[0];
+		Options opts = new OptionsBuilder().include(include).addProfiler(
+				GCProfiler.class).build();
+		new Runner(opts).run();
+	}
+
+}
@@ -0,0 +1,55 @@
+package perceptron.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import perceptron.Candidate;
+
+/**
+ * Harmony evaluation: Candidate.getWeight(), the two noisy variants, and the
+ * search for the optimal candidate of a tableau.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EvaluationBenchmark {
+
+	private double[] noise;
+
+	@Benchmark
+	public double getWeight(GrammarState g) {
+		return g.nextCandidate().getWeight();
+	}
+
+	/** One noise draw per evaluation, as perceptronSolve does per step. */
+	@Benchmark
+	public double getWeightWithNoise(GrammarState g) {
+		Candidate cand = g.nextCandidate();
+		this.noise = g.ts.sampleNoise(this.noise);
+		return cand.getWeightWithNoise(this.noise);
+	}
+
+	/** The older per-constraint noise draw. */
+	@Benchmark
+	public double getWeightWithNoiseIntegerStdDev(GrammarState g) {
+		return g.nextCandidate().getWeightWithNoise(1);
+	}
+
+	@Benchmark
+	public Candidate findOptimalCandidate(GrammarState g) {
+		return g.nextTableau().findOptimalCandidate();
+	}
+
+}
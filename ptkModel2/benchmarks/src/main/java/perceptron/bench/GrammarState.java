@@ -0,0 +1,87 @@
+package perceptron.bench;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import perceptron.Candidate;
+import perceptron.Perceptron;
+import perceptron.Tableau;
+import perceptron.TableauSet;
+
+/**
+ * A synthetic TableauSet shared by the evaluation and learning benchmarks,
+ * plus a cursor that walks over its tableaux and candidates so that
+ * successive invocations don't keep hitting the same cache lines.
+ */
+@State(Scope.Thread)
+public class GrammarState {
+
+	@Param( { "10", "100", "300" })
+	public int constraints;
+
+	@Param( { "5", "20" })
+	public int candidates;
+
+	@Param( { "0.1", "0.5", "1.0" })
+	public double density;
+
+	@Param( { "500" })
+	public int tableaux;
+
+	public TableauSet ts;
+
+	public Perceptron learner;
+
+	private double[] initialWeights;
+
+	private int tableauCursor;
+
+	private int candidateCursor;
+
+	@Setup(Level.Trial)
+	public void build() {
+		this.ts = new SyntheticGrammar(this.constraints, this.candidates,
+				this.tableaux, this.density, 20070219L).build();
+		this.initialWeights = this.ts.getWeightVector().clone();
+		this.learner = new Perceptron(this.ts);
+	}
+
+	/** Undo the learning done in the previous iteration. */
+	@Setup(Level.Iteration)
+	public void resetWeights() {
+		System.arraycopy(this.initialWeights, 0, this.ts.getWeightVector(), 0,
+				this.initialWeights.length);
+	}
+
+	/** The next tableau in round-robin order. */
+	public Tableau nextTableau() {
+		if (++this.tableauCursor == this.tableaux) {
+			this.tableauCursor = 0;
+		}
+		return this.ts.getTableau(this.tableauCursor);
+	}
+
+	/** The next candidate in round-robin order. */
+	public Candidate nextCandidate() {
+		if (++this.candidateCursor == this.candidates) {
+			this.candidateCursor = 0;
+			this.nextTableau();
+		}
+		return this.ts.getTableau(this.tableauCursor).getCandidate(
+				this.candidateCursor);
+	}
+
+	/** A loser from the next tableau (the winner is always candidate 0). */
+	public Candidate nextLoser() {
+		if (++this.candidateCursor >= this.candidates) {
+			this.candidateCursor = 1;
+			this.nextTableau();
+		}
+		return this.ts.getTableau(this.tableauCursor).getCandidate(
+				Math.min(this.candidateCursor, this.candidates - 1));
+	}
+
+}
@@ -0,0 +1,40 @@
+package perceptron.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import perceptron.Candidate;
+import perceptron.Tableau;
+
+/**
+ * The learner's inner loop: choosing a tableau to learn from, and one weight
+ * update.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LearningBenchmark {
+
+	@Benchmark
+	public Tableau randomTableau(GrammarState g) {
+		return g.ts.randomTableau();
+	}
+
+	@Benchmark
+	public double perceptronLearn(GrammarState g) {
+		Candidate loser = g.nextLoser();
+		Candidate winner = loser.getParent().getCandidate(0);
+		g.learner.perceptronLearn(winner, loser);
+		return g.ts.getWeightVector()[0];
+	}
+
+}
@@ -0,0 +1,104 @@
+package perceptron.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import perceptron.CompiledGrammar;
+import perceptron.ParallelOTSoftLoader;
+import perceptron.TableauSet;
+
+/**
+ * Reading an OTSoft file from disk into a TableauSet.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoadingBenchmark {
+
+	@Param( { "10", "100", "300" })
+	public int constraints;
+
+	@Param( { "5", "20" })
+	public int candidates;
+
+	@Param( { "0.1", "1.0" })
+	public double density;
+
+	@Param( { "2000" })
+	public int tableaux;
+
+	private File file;
+
+	private File compiled;
+
+	private ParallelOTSoftLoader loader = new ParallelOTSoftLoader();
+
+	@Setup(Level.Trial)
+	public void writeFile() throws IOException {
+		this.file = File.createTempFile("ptkmodel-bench", ".txt");
+		new SyntheticGrammar(this.constraints, this.candidates, this.tableaux,
+				this.density, 20070219L).writeOTSoftFile(this.file);
+		TableauSet ts = new TableauSet();
+		ts.readOTSoftFile(this.file);
+		this.compiled = File.createTempFile("ptkmodel-bench", ".ptkg");
+		CompiledGrammar.write(ts, this.compiled);
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteFile() {
+		this.file.delete();
+		this.compiled.delete();
+	}
+
+	/** The old way: getPrunedFile(), then readOTSoftFile(ArrayList). */
+	@Benchmark
+	public TableauSet readPrunedFile() {
+		TableauSet ts = new TableauSet();
+		ts.readOTSoftFile(TableauSet.getPrunedFile(this.file.getPath()));
+		return ts;
+	}
+
+	/** The streaming reader. */
+	@Benchmark
+	public TableauSet readOTSoftFile() {
+		TableauSet ts = new TableauSet();
+		ts.readOTSoftFile(this.file);
+		return ts;
+	}
+
+	/** The streaming reader, on chunks of the file in parallel. */
+	@Benchmark
+	public TableauSet readOTSoftFileInParallel() throws IOException {
+		TableauSet ts = new TableauSet();
+		this.loader.read(this.file, ts);
+		return ts;
+	}
+
+	/** The compiled grammar, with every tableau built. */
+	@Benchmark
+	public TableauSet readCompiledGrammar() {
+		TableauSet ts = new TableauSet();
+		ts.readCompiledGrammar(this.compiled);
+		ts.buildAll();
+		return ts;
+	}
+
+}
@@ -0,0 +1,135 @@
+package perceptron.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
+
+import perceptron.Candidate;
+import perceptron.Cell;
+import perceptron.LinguisticConstraint;
+import perceptron.LinguisticForm;
+import perceptron.Tableau;
+import perceptron.TableauSet;
+
+/**
+ * Builds random TableauSets of a given shape for the benchmarks. The first
+ * candidate of every tableau is its winner; every other cell is a violation
+ * with probability <code>density</code>.
+ */
+public class SyntheticGrammar {
+
+	private final int constraints;
+	private final int candidates;
+	private final int tableaux;
+	private final double density;
+	private final long seed;
+
+	public SyntheticGrammar(int constraints, int candidates, int tableaux,
+			double density, long seed) {
+		this.constraints = constraints;
+		this.candidates = candidates;
+		this.tableaux = tableaux;
+		this.density = density;
+		this.seed = seed;
+	}
+
+	/**
+	 * Make the TableauSet. The same parameters and seed always give the same
+	 * set. As with a loaded file, each tableau is stored sparsely or densely
+	 * according to its density.
+	 * 
+	 * @return ts A new TableauSet.
+	 */
+	public TableauSet build() {
+		Random r = new Random(this.seed);
+		TableauSet ts = new TableauSet();
+		for (int i = 0; i < this.constraints; i++) {
+			LinguisticConstraint cons = new LinguisticConstraint(ts);
+			cons.setName("C" + i);
+			cons.setShortName("C" + i);
+			cons.setHTMLName("C" + i);
+			switch (i % 3) {
+			case 0:
+				cons.setMarkedness();
+				break;
+			case 1:
+				cons.setIOFaithfulness();
+				break;
+			default:
+				cons.setOOFaithfulness();
+			}
+			cons.setWeight(r.nextDouble() * 10);
+			ts.addConstraint(cons);
+		}
+		for (int t = 0; t < this.tableaux; t++) {
+			Tableau tableau = new Tableau(ts);
+			tableau.setInput(new LinguisticForm("/in" + t + "/"));
+			for (int c = 0; c < this.candidates; c++) {
+				Candidate cand = new Candidate(tableau);
+				cand.setOutput(new LinguisticForm("[out" + t + "_" + c + "]"));
+				cand.setFrequency(c == 0 ? 1 + r.nextInt(10) : 0);
+				for (int i = 0; i < this.constraints; i++) {
+					double viol = 0;
+					if (r.nextDouble() < this.density) {
+						viol = 1 + r.nextInt(3);
+					}
+					cand.addViolation(new Cell(viol));
+				}
+				tableau.addCandidate(cand);
+			}
+			ts.addTableau(tableau);
+		}
+		ts.compress();
+		return ts;
+	}
+
+	/**
+	 * Write the grammar out as a tab-separated OTSoft file.
+	 * 
+	 * @param file
+	 *            Where to write it.
+	 * @throws IOException
+	 */
+	public void writeOTSoftFile(File file) throws IOException {
+		TableauSet ts = this.build();
+		String newline = System.getProperty("line.separator");
+		BufferedWriter out = new BufferedWriter(new FileWriter(file));
+		try {
+			StringBuilder names = new StringBuilder("\t\t");
+			for (int i = 0; i < ts.constraintCount(); i++) {
+				names.append('\t').append(ts.getConstraint(i).getName());
+			}
+			out.write(names.toString());
+			out.write(newline);
+			out.write(names.toString());
+			out.write(newline);
+			for (int t = 0; t < ts.size(); t++) {
+				Tableau tableau = ts.getTableau(t);
+				for (int c = 0; c < tableau.candidateCount(); c++) {
+					Candidate cand = tableau.getCandidate(c);
+					StringBuilder line = new StringBuilder();
+					if (c == 0) {
+						line.append(tableau.getInput());
+					}
+					line.append('\t').append(cand.getOutput()).append('\t');
+					if (cand.getFrequency() > 0) {
+						line.append((int) cand.getFrequency());
+					}
+					for (int i = 0; i < cand.violationCount(); i++) {
+						line.append('\t');
+						if (cand.getViolation(i) != 0) {
+							line.append((int) cand.getViolation(i));
+						}
+					}
+					out.write(line.toString());
+					out.write(newline);
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+}
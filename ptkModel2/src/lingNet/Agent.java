@@ -2,6 +2,8 @@ package lingNet;
 
 import perceptron.*;
 
+import java.io.File;
+import java.util.HashMap;
 import java.util.Random;
 import java.util.ArrayList;
 import model.*;
@@ -11,9 +13,12 @@ public class Agent {
 	public Agent(SocialNetwork network,String filePath,String fileName) {
 		// Set parent of node to the network it belongs to.
 		this.parent = network;
-		this.ts = readTableaux(filePath, fileName);
+		this.ts = getTemplate(filePath);
+		this.weights = new double[this.ts.constraintCount()];
+		System.arraycopy(this.ts.getWeightVector(), 0, this.weights, 0,
+				this.weights.length);
 	}
-	
+
 	Random generator = new Random();
 
 	public SocialNetwork parent;
@@ -24,8 +29,30 @@ public class Agent {
 	 */
 	ArrayList<Integer> connections = new ArrayList<Integer>();
 
-	// Each agent has their own TableauSet.
-	public TableauSet ts = new TableauSet();
+	/*
+	 * The grammar. This is a frozen TableauSet shared by every agent that
+	 * reads the same file, so it must not be learned on directly: each agent
+	 * learns on its own weights, through getLearner().
+	 */
+	public TableauSet ts;
+
+	// Each agent has their own weights, one per constraint of ts.
+	private double[] weights;
+
+	/*
+	 * Each agent may have their own frequencies, for some tableaux:
+	 * frequencies[t] is null while tableau t uses the frequencies in ts.
+	 * These are what the agent's learner learns from.
+	 */
+	private double[][] frequencies;
+
+	private Perceptron learner;
+
+	/*
+	 * The grammars read so far, by file path: one frozen TableauSet per file,
+	 * whatever the number of agents.
+	 */
+	private static HashMap<String, TableauSet> templates = new HashMap<String, TableauSet>();
 
 	public SocialNetwork getParent() {
 		return this.parent;
@@ -38,11 +65,11 @@ public class Agent {
 	public int getConnection(int con) {
 		return this.connections.get(con);
 	}
-	
+
 	public int getRandomConnection() {
 		return getConnection(generator.nextInt(this.connections.size()));
 	}
-	
+
 	public void removeConnection(int con) {
 		this.connections.remove(con);
 	}
@@ -50,12 +77,108 @@ public class Agent {
 	public int getPositionInNetwork() {
 		return this.parent.getAgentNumber(this);
 	}
-	
-	public TableauSet readTableaux(String filePath, String fileName) {
-		ArrayList<String> OTSoftFile = TableauSet.getPrunedFile("" + filePath);
-		ts = new TableauSet();
-		ts.readOTSoftFile(OTSoftFile);
-		
+
+	/**
+	 * This agent's weights, indexed like the constraints of ts. This is the
+	 * live array.
+	 */
+	public double[] getWeights() {
+		return this.weights;
+	}
+
+	public double getWeight(int constraint) {
+		return this.weights[constraint];
+	}
+
+	/**
+	 * A Perceptron that learns on this agent's weights and frequencies over
+	 * the shared tableaux.
+	 */
+	public Perceptron getLearner() {
+		if (this.learner == null) {
+			this.learner = new Perceptron(this.ts, this.weights, generator
+					.nextLong());
+			this.learner.setFrequencies(this.frequencies);
+		}
+		return this.learner;
+	}
+
+	/**
+	 * The index of the optimal candidate of tableau t under this agent's
+	 * weights.
+	 */
+	public int optimumIndex(int t) {
+		return this.ts.getTableau(t).optimumIndex(this.weights, generator);
+	}
+
+	/**
+	 * The frequency of candidate r of tableau t for this agent: their own, if
+	 * they have been given one, else the one in ts.
+	 */
+	public double getFrequency(int t, int r) {
+		if (this.frequencies != null && this.frequencies[t] != null) {
+			return this.frequencies[t][r];
+		}
+		return this.ts.getTableau(t).getCandidate(r).getFrequency();
+	}
+
+	/**
+	 * Give candidate r of tableau t a frequency of this agent's own. The
+	 * other candidates of the tableau keep the frequencies they had, and ts
+	 * is left alone.
+	 */
+	public void setFrequency(int t, int r, double freq) {
+		if (this.frequencies == null) {
+			this.frequencies = new double[this.ts.size()][];
+			if (this.learner != null) {
+				this.learner.setFrequencies(this.frequencies);
+			}
+		}
+		if (this.frequencies[t] == null) {
+			Tableau tableau = this.ts.getTableau(t);
+			this.frequencies[t] = new double[tableau.candidateCount()];
+			for (int i = 0; i < tableau.candidateCount(); i++) {
+				this.frequencies[t][i] = tableau.getCandidate(i).getFrequency();
+			}
+		}
+		this.frequencies[t][r] = freq;
+		if (this.learner != null) {
+			this.learner.frequenciesChanged(t);
+		}
+	}
+
+	/**
+	 * This agent's own frequencies, by tableau and candidate, with null for
+	 * the tableaux that use those in ts; null if there are none. This is the
+	 * live array.
+	 */
+	public double[][] getFrequencies() {
+		return this.frequencies;
+	}
+
+	/**
+	 * The shared grammar of a file: read and frozen the first time it is
+	 * asked for.
+	 */
+	public static synchronized TableauSet getTemplate(String filePath) {
+		TableauSet template = templates.get("" + filePath);
+		if (template == null) {
+			template = readTableaux(filePath);
+			template.freeze();
+			templates.put("" + filePath, template);
+		}
+		return template;
+	}
+
+	/** Forget the grammars read so far, e.g. after a file has changed. */
+	public static synchronized void clearTemplates() {
+		templates.clear();
+	}
+
+	private static TableauSet readTableaux(String filePath) {
+		TableauSet ts = new TableauSet();
+		ts.readOTSoftFile(new File("" + filePath));
+
 		String shortName = "" + filePath;
 		ts.setFileName(shortName);
 		if (shortName.length() > 60) {
@@ -65,5 +188,5 @@ public class Agent {
 			}
 		}
 		return ts;
-	}	
-}
\ No newline at end of file
+	}
+}
@@ -2,8 +2,6 @@ package model.mvmodel;
 
 import java.util.ArrayList;
 
-import perceptron.TableauSet;
-
 import lingNet.Agent;
 import lingNet.SocialNetwork;
 
@@ -21,8 +19,6 @@ public class Vineyarder extends Agent {
     
     ArrayList<Integer> connections = new ArrayList<Integer>();
     
-    TableauSet ts = new TableauSet();
-    
     public Vineyarder(SocialNetwork network, String filePath, String fileName) {
 		super(network, filePath, fileName);
 		
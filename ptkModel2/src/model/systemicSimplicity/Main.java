@@ -1,5 +1,6 @@
 package model.systemicSimplicity;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Random;
 import java.util.StringTokenizer;
@@ -21,7 +22,15 @@ public class Main {
 	static int totalNumberOfCyclesSoFar = 0;
 	static SocialNetwork network;
 	Random generator = new Random();
-	static String[] output = new String[1000000];
+	// The accuracy of each agent, every cycle.
+	static TimeSeriesRecorder accuracy;
+	static int accuracyDownsampling = 1;
+
+	// Snapshot output: SnapshotWriter.TEXT or SnapshotWriter.BINARY, and
+	// whether to print text snapshots on the console too.
+	static int snapshotFormat = SnapshotWriter.TEXT;
+	static boolean echoSnapshots = false;
+	static SnapshotWriter snapshots;
 
 	static String filePath;
 	static String fileName;
@@ -41,28 +50,45 @@ public class Main {
 			// Empty loop
 		} while (parametersSet == false);
 		Main model = new Main();
+		snapshots = new SnapshotWriter(256, snapshotFormat, echoSnapshots);
 		model.network = model.createSocialNetwork(numOfChildren);
+		accuracy = new TimeSeriesRecorder(numOfChildren, 4096);
+		accuracy.setDownsampling(accuracyDownsampling);
 		System.out.println("Beginning Parent --> Child Learning.");
 		for (int i = 0; i < numOfChildLearning; i++) {
 			totalNumberOfCyclesSoFar++;
 			model.learnFromDistribution();
-			
+			endCycle();
 		}
 		for (int i = 0; i < network.getNetworkSize(); i++) {
-			CSVFileCreator fw = new CSVFileCreator(network.getAgent(i).ts,i,1);
+			snapshots.write(network.getAgent(i).ts,network.getAgent(i).getWeights(),network.getAgent(i).getFrequencies(),i,1);
 		}
 		System.out.println("Beginning Child <--> Child Learning.");
 		for (int i = 0; i < numOfAdolLearning; i++) {
 			totalNumberOfCyclesSoFar++;
 			model.learnFromOtherAgents();
-			
+			endCycle();
 		}
 		for (int i = 0; i < network.getNetworkSize(); i++) {
-			CSVFileCreator fw = new CSVFileCreator(network.getAgent(i).ts,i,2);
-			PercentageFileCreator pfw = new PercentageFileCreator();
+			snapshots.write(network.getAgent(i).ts,network.getAgent(i).getWeights(),network.getAgent(i).getFrequencies(),i,2);
+		}
+		PercentageFileCreator pfw = new PercentageFileCreator(accuracy);
+		try {
+			snapshots.close();
+			accuracy.close();
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
 		// TODO File output
 	}
+
+	static void endCycle() {
+		try {
+			accuracy.endCycle(totalNumberOfCyclesSoFar);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
 	
 	public SocialNetwork createSocialNetwork(int numOfAgents) {
 		SocialNetwork net = new SocialNetwork();
@@ -87,14 +113,15 @@ public class Main {
 			for (int j = 0; j < network.getNetworkSize(); j++) {
 			Agent currentAgent = network.getAgent(j);
 			TableauSet currentTS = currentAgent.ts;
-			Perceptron learner = new Perceptron(currentTS);
+			Perceptron learner = currentAgent.getLearner();
 			for (int k = 0; k < currentTS.getNumberOfTableaux(); k++) {
 				Tableau currentTableau = currentTS.getTableau(k);
-				Candidate randomCandidate = selectCandidateFromProbDist(currentTableau);
-				learner.perceptronLearn(randomCandidate, currentTableau.findOptimalCandidate());
+				Candidate randomCandidate = selectCandidateFromProbDist(currentAgent, k);
+				Candidate optimalCandidate = currentTableau.getCandidate(currentAgent.optimumIndex(k));
+				learner.perceptronLearn(randomCandidate, optimalCandidate);
 				learner.perceptronSolve();
 			}
-			output[totalNumberOfCyclesSoFar + 1] = Double.toString(percentCorrect(j));
+			accuracy.set(j, percentCorrect(j));
 		}
 	}
 	
@@ -103,26 +130,29 @@ public class Main {
 			for (int j = 0; j < network.getNetworkSize(); j++) {
 			Agent currentAgent = network.getAgent(j);
 			TableauSet currentTS = currentAgent.ts;
-			Perceptron learner = new Perceptron(currentTS);
+			Perceptron learner = currentAgent.getLearner();
 			for (int k = 0; k < currentTS.getNumberOfTableaux(); k++) {
 				Tableau currentTableau = currentTS.getTableau(k);
 				int agentToConnectTo = currentAgent.getRandomConnection();
-				TableauSet connectingTS = network.getAgent(agentToConnectTo).ts;
-				Tableau connectingTableau = connectingTS.getTableau(k);
-				Candidate newCandidate = connectingTableau.findOptimalCandidate();
-				learner.perceptronLearn(newCandidate, currentTableau.findOptimalCandidate());
+				Agent connectingAgent = network.getAgent(agentToConnectTo);
+				Tableau connectingTableau = connectingAgent.ts.getTableau(k);
+				Candidate newCandidate = connectingTableau.getCandidate(connectingAgent.optimumIndex(k));
+				Candidate optimalCandidate = currentTableau.getCandidate(currentAgent.optimumIndex(k));
+				learner.perceptronLearn(newCandidate, optimalCandidate);
 				learner.perceptronSolve();
 			}	
-			output[totalNumberOfCyclesSoFar + 1] = Double.toString(percentCorrect(j));
+			accuracy.set(j, percentCorrect(j));
 		}
 	}
 	
-	// Selects a random candidate based on a probability distribution.
-	public Candidate selectCandidateFromProbDist(Tableau tab) {
+	// Selects a random candidate based on the agent's probability distribution
+	// for tableau k.
+	public Candidate selectCandidateFromProbDist(Agent agent, int k) {
+		Tableau tab = agent.ts.getTableau(k);
 		ArrayList<Candidate> distribution = new ArrayList<Candidate>();
 		for (int i = 0; i < tab.getCandidates().size(); i++) {
-			if (!(tab.getCandidate(i).getFrequency() <= 0)) {
-				for (int j = 0; j < tab.getCandidate(i).getFrequency(); j++) {
+			if (!(agent.getFrequency(k, i) <= 0)) {
+				for (int j = 0; j < agent.getFrequency(k, i); j++) {
 					distribution.add(tab.getCandidate(i));
 				}
 			}
@@ -132,14 +162,17 @@ public class Main {
 	}
 
 	public double percentCorrect(int agentToCheck) { 
-		TableauSet agentTS = network.getAgent(agentToCheck).ts;
+		Agent agent = network.getAgent(agentToCheck);
+		TableauSet agentTS = agent.ts;
 		int numberOfAgentTableaux = agentTS.getTableaux().size();
 		int numberOfCorrectOutputs = 0;
 		for (int i = 0; i < numberOfAgentTableaux; i++) {
 			//System.out.println(agentTS.getTableau(i).getInput().toString());
 			//System.out.println(agentTS.getTableau(i).findOptimalCandidate().getOutput().toString());
 			//System.out.println("------");
-			if (agentTS.getTableau(i).getInput().toString().equals(agentTS.getTableau(i).findOptimalCandidate().getOutput().toString())) {
+			Tableau tableau = agentTS.getTableau(i);
+			Candidate optimalCandidate = tableau.getCandidate(agent.optimumIndex(i));
+			if (tableau.getInput().toString().equals(optimalCandidate.getOutput().toString())) {
 				numberOfCorrectOutputs++;				
 			}
 		}
@@ -0,0 +1,423 @@
+package model.systemicSimplicity;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import perceptron.*;
+
+/**
+ * <p>
+ * Writes snapshots of agents' grammars to files on a thread of its own, so
+ * that the simulation doesn't wait for the disk. write() copies the weights
+ * and puts the snapshot on a bounded queue; if the writer falls that far
+ * behind, write() waits for room. Each snapshot goes to its own file,
+ * SysSimpOutput_agent[n]_stage[s], through one reused buffer.
+ * </p>
+ *
+ * <p>
+ * In the TEXT format a snapshot is laid out as CSVFileCreator used to: a row
+ * of rounded weights, a row of short constraint names, then one row per
+ * candidate with its input, output, frequency and violations. The BINARY
+ * format leaves out the names and the violations, which are the same in
+ * every snapshot of a grammar (CompiledGrammar can store them), and writes
+ * big-endian: the magic number PTKS, the version, the agent and stage, the
+ * number of constraints and their weights, the number of tableaux, and for
+ * each tableau its number of candidates and their frequencies.
+ * </p>
+ *
+ * <p>
+ * The tableaux are read by the writer's thread, so they must not change
+ * until the snapshot is written: a frozen TableauSet, as agents share, is
+ * always safe. A snapshot that can't be written is skipped, and the first
+ * such error is thrown by close(); if the thread itself stops, write() and
+ * close() fail rather than wait for it.
+ * </p>
+ */
+public class SnapshotWriter {
+
+	/*
+	 * ================================================================= Class
+	 * variables
+	 * =================================================================
+	 */
+
+	/** The tab-separated layout of CSVFileCreator, in a .txt file. */
+	public final static int TEXT = 0;
+
+	/** Weights and frequencies only, in a .bin file. */
+	public final static int BINARY = 1;
+
+	/** "PTKS". */
+	public final static int MAGIC = 0x50544B53;
+
+	public final static int VERSION = 1;
+
+	public static String newline = System.getProperty("line.separator");
+
+	private final static int BUFFER_SIZE = 1 << 16;
+
+	/** Put on the queue by close(): there is nothing more to write. */
+	private final static Snapshot END = new Snapshot(null, null, null, 0, 0);
+
+	private BlockingQueue<Snapshot> queue;
+
+	private Thread thread;
+
+	private int format;
+
+	/** Whether to print text snapshots on System.out as well. */
+	private boolean echo;
+
+	private File directory;
+
+	private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+	private CharsetEncoder encoder = Charset.defaultCharset().newEncoder();
+
+	private StringBuilder line = new StringBuilder();
+
+	/** The first error, if any. */
+	private volatile IOException error;
+
+	private boolean closed;
+
+	/**
+	 * Start a writer.
+	 *
+	 * @param capacity
+	 *            How many snapshots may wait to be written.
+	 * @param format
+	 *            TEXT or BINARY.
+	 * @param echo
+	 *            Whether to print text snapshots on System.out too.
+	 */
+	public SnapshotWriter(int capacity, int format, boolean echo) {
+		this.queue = new ArrayBlockingQueue<Snapshot>(capacity);
+		this.format = format;
+		this.echo = echo;
+		this.thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					drain();
+				} catch (Error e) {
+					fail(new IOException("The SnapshotWriter stopped.", e));
+					throw e;
+				}
+			}
+		}, "SnapshotWriter");
+		this.thread.start();
+	}
+
+	/** A grammar as it was at one moment. */
+	private static class Snapshot {
+
+		final TableauSet ts;
+
+		final double[] weights;
+
+		/** The agent's own frequencies, or null for those of ts. */
+		final double[][] frequencies;
+
+		final int agent, stage;
+
+		Snapshot(TableauSet ts, double[] weights, double[][] frequencies,
+				int agent, int stage) {
+			this.ts = ts;
+			this.weights = weights;
+			this.frequencies = frequencies;
+			this.agent = agent;
+			this.stage = stage;
+		}
+
+		/** The frequency of candidate j of tableau i. */
+		double getFrequency(int i, int j) {
+			if (this.frequencies != null && this.frequencies[i] != null) {
+				return this.frequencies[i][j];
+			}
+			return this.ts.getTableau(i).getCandidate(j).getFrequency();
+		}
+	}
+
+	/*
+	 * =================================================================
+	 * The simulation's side
+	 * =================================================================
+	 */
+
+	/**
+	 * Queue a snapshot of a grammar. The weights are copied now; the tableaux
+	 * are read later.
+	 *
+	 * @param ts
+	 *            The tableaux.
+	 * @param weights
+	 *            The weights, one per constraint.
+	 * @param agentNumber
+	 *            Which agent.
+	 * @param stageNumber
+	 *            Which stage of the simulation.
+	 */
+	public void write(TableauSet ts, double[] weights, int agentNumber,
+			int stageNumber) {
+		this.write(ts, weights, null, agentNumber, stageNumber);
+	}
+
+	/**
+	 * Same as write(TableauSet, double[], int, int), for an agent with
+	 * frequencies of their own, which are copied now too.
+	 *
+	 * @param frequencies
+	 *            The agent's frequencies by tableau and candidate, null for a
+	 *            tableau that uses those of ts; or null altogether.
+	 */
+	public void write(TableauSet ts, double[] weights,
+			double[][] frequencies, int agentNumber, int stageNumber) {
+		if (this.closed) {
+			throw new IllegalStateException("The SnapshotWriter is closed.");
+		}
+		double[] copy = new double[ts.constraintCount()];
+		System.arraycopy(weights, 0, copy, 0, copy.length);
+		double[][] freqCopy = null;
+		if (frequencies != null) {
+			freqCopy = new double[frequencies.length][];
+			for (int i = 0; i < frequencies.length; i++) {
+				if (frequencies[i] != null) {
+					freqCopy[i] = frequencies[i].clone();
+				}
+			}
+		}
+		if (!this.put(new Snapshot(ts, copy, freqCopy, agentNumber,
+				stageNumber))) {
+			throw new IllegalStateException(
+					"The SnapshotWriter's thread has stopped.", this.error);
+		}
+	}
+
+	/**
+	 * Wait for room on the queue, as long as the writer's thread is there to
+	 * make it.
+	 *
+	 * @return false if the thread has stopped.
+	 */
+	private boolean put(Snapshot snapshot) {
+		boolean interrupted = false;
+		boolean queued = false;
+		while (!queued && this.thread.isAlive()) {
+			try {
+				queued = this.queue.offer(snapshot, 100, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		return queued;
+	}
+
+	/**
+	 * Write whatever is still queued and stop the writer's thread.
+	 *
+	 * @throws IOException
+	 *             The first error the writer met, if any.
+	 */
+	public void close() throws IOException {
+		if (!this.closed) {
+			this.closed = true;
+			if (!this.put(END) && this.error == null) {
+				this.error = new IOException(
+						"The SnapshotWriter's thread stopped before closing.");
+			}
+			boolean interrupted = false;
+			while (this.thread.isAlive()) {
+				try {
+					this.thread.join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (this.error != null) {
+			throw this.error;
+		}
+	}
+
+	/** Write snapshots into this directory rather than the current one. */
+	public boolean setDirectory(File directory) {
+		this.directory = directory;
+		return true;
+	}
+
+	/*
+	 * =================================================================
+	 * The writer's side
+	 * =================================================================
+	 */
+
+	private void drain() {
+		while (true) {
+			Snapshot snapshot;
+			try {
+				snapshot = this.queue.take();
+			} catch (InterruptedException e) {
+				continue;
+			}
+			if (snapshot == END) {
+				return;
+			}
+			try {
+				this.writeSnapshot(snapshot);
+			} catch (IOException e) {
+				this.fail(e);
+				e.printStackTrace();
+			} catch (RuntimeException e) {
+				this.fail(new IOException("The snapshot of agent "
+						+ snapshot.agent + " at stage " + snapshot.stage
+						+ " could not be written.", e));
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/** Keep the first error, for close() to throw. */
+	private void fail(IOException e) {
+		if (this.error == null) {
+			this.error = e;
+		}
+	}
+
+	private void writeSnapshot(Snapshot s) throws IOException {
+		String name = "SysSimpOutput_agent" + s.agent + "_stage" + s.stage
+				+ ((this.format == BINARY) ? ".bin" : ".txt");
+		File file = new File(this.directory, name);
+		FileOutputStream stream = new FileOutputStream(file);
+		FileChannel out = stream.getChannel();
+		try {
+			this.buffer.clear();
+			if (this.format == BINARY) {
+				this.writeBinary(s, out);
+			} else {
+				this.writeText(s, out);
+			}
+			this.flush(out);
+		} finally {
+			stream.close();
+		}
+		if (this.echo) {
+			System.out.println("Output file successfully created.");
+		}
+	}
+
+	private void writeText(Snapshot s, FileChannel out) throws IOException {
+		TableauSet ts = s.ts;
+		StringBuilder sb = this.line;
+		sb.setLength(0);
+		sb.append("\t\t\t");
+		for (int i = 0; i < ts.constraintCount(); i++) {
+			// Three decimals, whatever the locale.
+			sb.append(Math.round(s.weights[i] * 1000) / 1000.0).append('\t');
+		}
+		sb.append(newline);
+		sb.append("\t\t\t");
+		for (int i = 0; i < ts.constraintCount(); i++) {
+			sb.append(ts.getConstraint(i).getShortName() + "\t");
+		}
+		sb.append(newline);
+		this.putLine(out);
+		for (int i = 0; i < ts.size(); i++) {
+			Tableau tableau = ts.getTableau(i);
+			for (int j = 0; j < tableau.candidateCount(); j++) {
+				Candidate cand = tableau.getCandidate(j);
+				sb.setLength(0);
+				if (j == 0) {
+					sb.append(tableau.getInput().toString()).append('\t');
+				} else {
+					sb.append('\t');
+				}
+				sb.append(cand.getName()).append('\t');
+				sb.append(s.getFrequency(i, j)).append('\t');
+				for (int k = 0; k < cand.violationCount(); k++) {
+					sb.append(cand.getViolation(k)).append('\t');
+				}
+				sb.append(newline);
+				this.putLine(out);
+			}
+		}
+	}
+
+	/** Encode the current line into the buffer, and print it if echoing. */
+	private void putLine(FileChannel out) throws IOException {
+		if (this.echo) {
+			System.out.print(this.line);
+		}
+		CharBuffer chars = CharBuffer.wrap(this.line);
+		this.encoder.reset();
+		while (true) {
+			CoderResult result = this.encoder.encode(chars, this.buffer, true);
+			if (result.isOverflow()) {
+				this.flush(out);
+			} else if (result.isError()) {
+				// Unmappable: write a question mark instead, as a Writer would.
+				chars.position(chars.position() + result.length());
+				this.room(out, 1);
+				this.buffer.put((byte) '?');
+			} else {
+				break;
+			}
+		}
+	}
+
+	private void writeBinary(Snapshot s, FileChannel out) throws IOException {
+		TableauSet ts = s.ts;
+		this.room(out, 24);
+		this.buffer.putInt(MAGIC);
+		this.buffer.putInt(VERSION);
+		this.buffer.putInt(s.agent);
+		this.buffer.putInt(s.stage);
+		this.buffer.putInt(s.weights.length);
+		for (int i = 0; i < s.weights.length; i++) {
+			this.room(out, 8);
+			this.buffer.putDouble(s.weights[i]);
+		}
+		this.room(out, 4);
+		this.buffer.putInt(ts.size());
+		for (int i = 0; i < ts.size(); i++) {
+			Tableau tableau = ts.getTableau(i);
+			this.room(out, 4);
+			this.buffer.putInt(tableau.candidateCount());
+			for (int j = 0; j < tableau.candidateCount(); j++) {
+				this.room(out, 8);
+				this.buffer.putDouble(s.getFrequency(i, j));
+			}
+		}
+	}
+
+	/** Make room for n more bytes in the buffer. */
+	private void room(FileChannel out, int n) throws IOException {
+		if (this.buffer.remaining() < n) {
+			this.flush(out);
+		}
+	}
+
+	private void flush(FileChannel out) throws IOException {
+		this.buffer.flip();
+		while (this.buffer.hasRemaining()) {
+			out.write(this.buffer);
+		}
+		this.buffer.clear();
+	}
+
+}
@@ -0,0 +1,294 @@
+package model.systemicSimplicity;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p>
+ * Records one number per series (e.g. per agent) per cycle of a simulation,
+ * as plain doubles. Rows are kept in memory in chunks of a fixed size; when a
+ * chunk is full it is appended to a scratch file and the memory reused, so a
+ * run can be as long as the disk allows.
+ * </p>
+ *
+ * <pre>
+ * TimeSeriesRecorder accuracy = new TimeSeriesRecorder(agents, 4096);
+ * ...
+ * accuracy.set(agent, percentCorrect(agent)); // for every agent
+ * accuracy.endCycle(cycle);
+ * ...
+ * accuracy.export(new File(&quot;SysSimpOutputGraph.txt&quot;));
+ * accuracy.close();
+ * </pre>
+ *
+ * <p>
+ * With setDownsampling(k), a row is kept for every k cycles, holding the
+ * mean of each series over those cycles and numbered with the last of them.
+ * A series that isn't set in a cycle is left out of that cycle's mean.
+ * </p>
+ */
+public class TimeSeriesRecorder {
+
+	/*
+	 * ================================================================= Class
+	 * variables
+	 * =================================================================
+	 */
+
+	public static String newline = System.getProperty("line.separator");
+
+	private int seriesCount;
+
+	private int chunkSize;
+
+	/** The rows of the current chunk: values[s][r] is series s in row r. */
+	private double[][] values;
+
+	/** The cycle of each row of the current chunk. */
+	private long[] cycles;
+
+	/** The number of rows in the current chunk. */
+	private int rows;
+
+	/** The number of rows already in the scratch file. */
+	private long spilledRows;
+
+	private File scratch;
+
+	private FileChannel spill;
+
+	private ByteBuffer buffer;
+
+	/** Cycles per row. */
+	private int downsampling = 1;
+
+	/** The sums and counts of the cycles of the row being collected. */
+	private double[] sums;
+
+	private int[] counts;
+
+	private int cyclesInRow;
+
+	private long lastCycle;
+
+	/**
+	 * A recorder for the given number of series.
+	 *
+	 * @param seriesCount
+	 *            The number of series, e.g. of agents.
+	 * @param chunkSize
+	 *            The number of rows kept in memory.
+	 */
+	public TimeSeriesRecorder(int seriesCount, int chunkSize) {
+		this.seriesCount = seriesCount;
+		this.chunkSize = Math.max(1, chunkSize);
+		this.values = new double[seriesCount][this.chunkSize];
+		this.cycles = new long[this.chunkSize];
+		this.sums = new double[seriesCount];
+		this.counts = new int[seriesCount];
+	}
+
+	/*
+	 * =================================================================
+	 * Recording
+	 * =================================================================
+	 */
+
+	/**
+	 * Record the value of a series in the current cycle.
+	 *
+	 * @param series
+	 *            Which series.
+	 * @param value
+	 *            Its value.
+	 */
+	public void set(int series, double value) {
+		this.sums[series] += value;
+		this.counts[series]++;
+	}
+
+	/**
+	 * End the current cycle. Every downsampling-th call adds a row.
+	 *
+	 * @param cycle
+	 *            The number of the cycle that ended.
+	 * @throws IOException
+	 *             If a full chunk can't be written to the scratch file.
+	 */
+	public void endCycle(long cycle) throws IOException {
+		this.lastCycle = cycle;
+		if (++this.cyclesInRow >= this.downsampling) {
+			this.addRow();
+		}
+	}
+
+	/** Turn the collected cycles into a row. */
+	private void addRow() throws IOException {
+		if (this.rows == this.chunkSize) {
+			this.spillChunk();
+		}
+		for (int s = 0; s < this.seriesCount; s++) {
+			this.values[s][this.rows] = (this.counts[s] == 0) ? Double.NaN
+					: this.sums[s] / this.counts[s];
+			this.sums[s] = 0.0;
+			this.counts[s] = 0;
+		}
+		this.cycles[this.rows] = this.lastCycle;
+		this.rows++;
+		this.cyclesInRow = 0;
+	}
+
+	/** Append the current chunk to the scratch file. */
+	private void spillChunk() throws IOException {
+		if (this.spill == null) {
+			this.scratch = File.createTempFile("ptkmodel-series", ".bin");
+			this.scratch.deleteOnExit();
+			this.spill = new FileOutputStream(this.scratch).getChannel();
+			this.buffer = ByteBuffer.allocateDirect(this.rowBytes() * 64);
+		}
+		this.buffer.clear();
+		for (int r = 0; r < this.rows; r++) {
+			if (this.buffer.remaining() < this.rowBytes()) {
+				this.write(this.spill);
+			}
+			this.buffer.putLong(this.cycles[r]);
+			for (int s = 0; s < this.seriesCount; s++) {
+				this.buffer.putDouble(this.values[s][r]);
+			}
+		}
+		this.write(this.spill);
+		this.spilledRows += this.rows;
+		this.rows = 0;
+	}
+
+	private void write(FileChannel out) throws IOException {
+		this.buffer.flip();
+		while (this.buffer.hasRemaining()) {
+			out.write(this.buffer);
+		}
+		this.buffer.clear();
+	}
+
+	private int rowBytes() {
+		return 8 * (this.seriesCount + 1);
+	}
+
+	/*
+	 * =================================================================
+	 * Export
+	 * =================================================================
+	 */
+
+	/**
+	 * Write every row to a file, one line per row: the value of each series,
+	 * then the cycle, separated by tabs.
+	 *
+	 * @param file
+	 *            The file.
+	 * @throws IOException
+	 *             If the file can't be written.
+	 */
+	public void export(File file) throws IOException {
+		Writer out = new BufferedWriter(new FileWriter(file), 1 << 16);
+		try {
+			this.export(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Write every row, as export(File) does, reading the spilled rows back one
+	 * buffer at a time. A row still being collected is written as well.
+	 *
+	 * @param out
+	 *            Where to write.
+	 * @throws IOException
+	 *             If writing fails.
+	 */
+	public void export(Writer out) throws IOException {
+		if (this.cyclesInRow > 0) {
+			this.addRow();
+		}
+		StringBuilder line = new StringBuilder();
+		if (this.spilledRows > 0) {
+			FileInputStream in = new FileInputStream(this.scratch);
+			try {
+				FileChannel channel = in.getChannel();
+				this.buffer.clear();
+				long left = this.spilledRows;
+				while (left > 0) {
+					if (channel.read(this.buffer) < 0) {
+						throw new IOException("The recorded series are truncated.");
+					}
+					this.buffer.flip();
+					while (left > 0 && this.buffer.remaining() >= this.rowBytes()) {
+						line.setLength(0);
+						long cycle = this.buffer.getLong();
+						for (int s = 0; s < this.seriesCount; s++) {
+							line.append(this.buffer.getDouble()).append('\t');
+						}
+						line.append(cycle).append(newline);
+						out.append(line);
+						left--;
+					}
+					this.buffer.compact();
+				}
+			} finally {
+				in.close();
+			}
+		}
+		for (int r = 0; r < this.rows; r++) {
+			line.setLength(0);
+			for (int s = 0; s < this.seriesCount; s++) {
+				line.append(this.values[s][r]).append('\t');
+			}
+			line.append(this.cycles[r]).append(newline);
+			out.append(line);
+		}
+	}
+
+	/** Delete the scratch file. The recorder can't be used afterwards. */
+	public void close() throws IOException {
+		if (this.spill != null) {
+			this.spill.close();
+			this.spill = null;
+			this.scratch.delete();
+		}
+	}
+
+	/*
+	 * =================================================================
+	 * Getters and setters
+	 * =================================================================
+	 */
+
+	/**
+	 * Keep one row, of means, for every k cycles. Set this before recording.
+	 */
+	public boolean setDownsampling(int k) {
+		this.downsampling = Math.max(1, k);
+		return true;
+	}
+
+	public int getDownsampling() {
+		return this.downsampling;
+	}
+
+	public int getSeriesCount() {
+		return this.seriesCount;
+	}
+
+	/** The number of rows recorded so far. */
+	public long size() {
+		return this.spilledRows + this.rows;
+	}
+
+}
@@ -2,8 +2,7 @@ package perceptron;
 
 import java.text.DecimalFormat;
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.Random;
+import java.util.Arrays;
 
 /**
  * Candidate objects.
@@ -27,12 +26,25 @@ public class Candidate {
 	/** The frequencies. If positive, then this is a winner, else it's a loser. */
 	private double frequency;
 
-	/** The list of violations, as a list of Cell objects. */
-	private ArrayList<Cell> violationVector;
-
 	/** Specifies which tableau this candidate belongs to. */
 	private Tableau parent;
 
+	/**
+	 * The row of the parent tableau's violation matrix that holds this
+	 * candidate's violations, or -1 while the candidate hasn't been added to
+	 * its tableau yet.
+	 */
+	private int row = -1;
+
+	/** The number of violation marks. */
+	private int length;
+
+	/**
+	 * Violation marks collected before the candidate is added to a tableau.
+	 * Moved into the tableau's matrix by Tableau.addCandidate().
+	 */
+	private double[] marks = new double[0];
+
 	/*
 	 * =================================================================
 	 * Constructor
@@ -113,16 +125,35 @@ public class Candidate {
 	 * @return weight The weight, a double
 	 */
 	// TODO: This should really be called get getHarmony().
-	public Double getWeight() {
-		Double weight = 0.0;
-		Iterator viol = this.getViolationVector().iterator();
-		// System.out.println(this.parent.toString());
-		// System.out.println(this.parent.getCon().size());
-		Iterator con = this.parent.getCon().iterator();
-		while (viol.hasNext() && con.hasNext()) {
-			Cell cell = (Cell) viol.next();
-			LinguisticConstraint constraint = (LinguisticConstraint) con.next();
-			weight += cell.getViolation() * constraint.getWeight();
+	public double getWeight() {
+		int n = Math.min(this.length, this.parent.constraintCount());
+		if (this.row >= 0) {
+			return this.parent.dot(this.row, this.parent.getParent()
+					.getWeightVector(), n);
+		}
+		double weight = 0.0;
+		for (int i = 0; i < n; i++) {
+			weight += this.marks[i] * this.parent.getCon().get(i).getWeight();
+		}
+		return weight;
+	}
+
+	/**
+	 * Same as getWeight, but with the given weights in place of the
+	 * constraints' own. A learner that keeps its own weights uses this.
+	 * 
+	 * @param weights
+	 *            One weight per constraint.
+	 * @return weight The weight, a double
+	 */
+	public double getWeight(double[] weights) {
+		int n = Math.min(this.length, this.parent.constraintCount());
+		if (this.row >= 0) {
+			return this.parent.dot(this.row, weights, n);
+		}
+		double weight = 0.0;
+		for (int i = 0; i < n; i++) {
+			weight += this.marks[i] * weights[i];
 		}
 		return weight;
 	}
@@ -139,15 +170,60 @@ public class Candidate {
 	 */
 
 	// Once again, this should be called getHarmonyWithNoise().
-	public Double getWeightWithNoise(int stdDev) {
-		Double weight = 0.0;
-		Iterator viol = this.getViolationVector().iterator();
-		Iterator con = this.parent.getCon().iterator();
-		while (viol.hasNext() && con.hasNext()) {
-			Cell cell = (Cell) viol.next();
-			LinguisticConstraint constraint = (LinguisticConstraint) con.next();
-			weight += cell.getViolation()
-					* (constraint.getWeight() + this.getNoise(stdDev));
+	public double getWeightWithNoise(int stdDev) {
+		int n = Math.min(this.length, this.parent.constraintCount());
+		ArrayList<LinguisticConstraint> con = this.parent.getCon();
+		NoiseGenerator generator = NoiseGenerator.current();
+		double weight = 0.0;
+		for (int i = 0; i < n; i++) {
+			weight += this.getViolation(i)
+					* (con.get(i).getWeight() + this.getNoise(generator, stdDev));
+		}
+		return weight;
+	}
+
+	/**
+	 * Same as getWeight, except that noise[i] is added to the weight of
+	 * constraint i. The noise is drawn beforehand, once for all the candidates
+	 * that are being compared, with TableauSet.sampleNoise().
+	 * 
+	 * @param noise
+	 *            One noise value per constraint.
+	 * @return weight The weight, a double
+	 * @see TableauSet#sampleNoise(double[])
+	 */
+	public double getWeightWithNoise(double[] noise) {
+		int n = Math.min(this.length, this.parent.constraintCount());
+		if (this.row >= 0) {
+			return this.parent.dotWithNoise(this.row, this.parent.getParent()
+					.getWeightVector(), noise, n);
+		}
+		double weight = 0.0;
+		for (int i = 0; i < n; i++) {
+			weight += this.marks[i]
+					* (this.parent.getCon().get(i).getWeight() + noise[i]);
+		}
+		return weight;
+	}
+
+	/**
+	 * Same as getWeightWithNoise, but with the given weights in place of the
+	 * constraints' own.
+	 * 
+	 * @param weights
+	 *            One weight per constraint.
+	 * @param noise
+	 *            One noise value per constraint.
+	 * @return weight The weight, a double
+	 */
+	public double getWeightWithNoise(double[] weights, double[] noise) {
+		int n = Math.min(this.length, this.parent.constraintCount());
+		if (this.row >= 0) {
+			return this.parent.dotWithNoise(this.row, weights, noise, n);
+		}
+		double weight = 0.0;
+		for (int i = 0; i < n; i++) {
+			weight += this.marks[i] * (weights[i] + noise[i]);
 		}
 		return weight;
 	}
@@ -183,17 +259,60 @@ public class Candidate {
 	 * @return violations The violation count for the cell in question
 	 */
 	public double getViolation(int i) {
-		Cell cell = getViolationVector().get(i);
-		return cell.getViolation();
+		if (i < 0 || i >= this.length) {
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: "
+					+ this.length);
+		}
+		if (this.row >= 0) {
+			return this.parent.getViolation(this.row, i);
+		}
+		return this.marks[i];
 	}
 
 	/**
-	 * Get the full list of Cells.
+	 * Set the violation count for constraint indexed i.
 	 * 
-	 * @return this.violationVector An ArrayList of Cells.
+	 * @param i
+	 *            The index of the constraint.
+	 * @param viol
+	 *            The new violation count.
+	 * @return true
+	 */
+	public boolean setViolation(int i, double viol) {
+		if (i < 0 || i >= this.length) {
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: "
+					+ this.length);
+		}
+		if (this.row >= 0) {
+			this.parent.setViolation(this.row, i, viol);
+		} else {
+			this.marks[i] = viol;
+		}
+		return true;
+	}
+
+	/**
+	 * The number of violation marks this candidate has.
+	 * 
+	 * @return this.length The length of the violation vector.
+	 */
+	public int violationCount() {
+		return this.length;
+	}
+
+	/**
+	 * Get the full list of Cells. The cells are views onto the parent
+	 * tableau's violation matrix, so setting a cell's violation changes the
+	 * candidate. Code on a hot path should use getViolation(int) instead.
+	 * 
+	 * @return An ArrayList of Cells.
 	 */
 	public ArrayList<Cell> getViolationVector() {
-		return this.violationVector;
+		ArrayList<Cell> cells = new ArrayList<Cell>(this.length);
+		for (int i = 0; i < this.length; i++) {
+			cells.add(new Cell(this, i));
+		}
+		return cells;
 	}
 
 	/**
@@ -204,13 +323,96 @@ public class Candidate {
 	 * @return true
 	 */
 	public boolean addViolation(Cell cell) {
-		if (this.violationVector == null) {
-			this.violationVector = new ArrayList<Cell>();
+		double viol = cell.getViolation();
+		if (this.row >= 0) {
+			this.parent.setViolation(this.row, this.length, viol);
+		} else {
+			if (this.length == this.marks.length) {
+				this.marks = Arrays.copyOf(this.marks, Math.max(8,
+						2 * this.length));
+			}
+			this.marks[this.length] = viol;
 		}
-		this.violationVector.add(cell);
+		cell.bind(this, this.length);
+		this.length++;
 		return true;
 	}
 
+	/**
+	 * Add a times this candidate's marks, scaled constraint by constraint, to
+	 * a vector: y[i] += a * scale[i] * getViolation(i), for i below n and
+	 * violationCount(). Only the non-zero marks are visited.
+	 */
+	void addScaledTo(double a, double[] scale, double[] y, int n) {
+		n = Math.min(n, this.length);
+		if (this.row >= 0) {
+			this.parent.addScaledRow(this.row, a, scale, y, n);
+			return;
+		}
+		for (int i = 0; i < n; i++) {
+			if (this.marks[i] != 0) {
+				y[i] += a * this.marks[i] * scale[i];
+			}
+		}
+	}
+
+	/**
+	 * Set the first n violation marks from an array, before the candidate is
+	 * added to its tableau. The array is copied.
+	 */
+	void setViolations(double[] viol, int n) {
+		if (this.row >= 0) {
+			for (int i = 0; i < n; i++) {
+				this.setViolation(i, viol[i]);
+			}
+			return;
+		}
+		this.marks = Arrays.copyOf(viol, n);
+		this.length = n;
+	}
+
+	/** A copy of the violation marks. */
+	double[] getViolations() {
+		double[] copy = new double[this.length];
+		for (int i = 0; i < this.length; i++) {
+			copy[i] = this.getViolation(i);
+		}
+		return copy;
+	}
+
+	/**
+	 * Called by Tableau.addCandidate(): from now on the violations live in
+	 * the given row of the tableau's matrix.
+	 */
+	void bind(Tableau tableau, int r, int len) {
+		this.parent = tableau;
+		this.row = r;
+		this.length = len;
+		this.marks = null;
+	}
+
+	/**
+	 * The row of the parent tableau's violation matrix, or -1.
+	 * 
+	 * @return this.row The row index.
+	 */
+	int getRow() {
+		return this.row;
+	}
+
+	/**
+	 * The number of this candidate across its TableauSet, counting from 1.
+	 * 
+	 * @return The number, or 0 if it isn't in a TableauSet.
+	 * @see TableauSet#getCandidateNumber(Candidate)
+	 */
+	public int getNumber() {
+		if (this.parent == null || this.parent.getParent() == null) {
+			return 0;
+		}
+		return this.parent.getParent().getCandidateNumber(this);
+	}
+
 	/*
 	 * =================================================================
 	 * Frequencies (winner or loser?)
@@ -225,6 +427,10 @@ public class Candidate {
 	 * @return true
 	 */
 	public boolean setFrequency(double freq) {
+		double old = this.frequency;
+		if (this.row >= 0) {
+			this.parent.frequencyChanged(this.row, old, freq);
+		}
 		this.frequency = freq;
 		return true;
 	}
@@ -258,18 +464,16 @@ public class Candidate {
 
 	/**
 	 * Generates a noise offset from the normal distribution with a mean of 0
-	 * and a user-supplied standard deviation
+	 * and a variance of stdDev (the sum of stdDev standard normal draws).
 	 * 
+	 * @param generator
+	 *            the source of random numbers
 	 * @param stdDev
 	 *            the (integer) standard deviation
 	 * @return noise
 	 */
-	private double getNoise(int stdDev) {
-		Random r = new Random();
-		double result = 0;
-		for (int i = 0; i < stdDev; i++)
-			result += r.nextGaussian();
-		return result;
+	private double getNoise(NoiseGenerator generator, int stdDev) {
+		return generator.nextGaussian() * Math.sqrt(stdDev);
 	}
 
 }
@@ -8,6 +8,12 @@ package perceptron;
  * </p>
  * 
  * <p>
+ * Once a cell has been added to a candidate it is a view onto the candidate's
+ * row of the tableau's violation matrix: reading and setting the violation
+ * go through to the matrix.
+ * </p>
+ * 
+ * <p>
  * One day, this class will get extended to a more advanced thing that holds a
  * list of Violation object (see the Violation class for detail).
  * </p>
@@ -24,9 +30,15 @@ public class Cell {
 	 * =================================================================
 	 */
 
-	/** The violation count, initialized to 0. */
+	/** The violation count, initialized to 0. Unused once the cell is bound. */
 	private double violations = 0;
 
+	/** The candidate this cell belongs to, if any. */
+	private Candidate owner;
+
+	/** The constraint index of this cell within the owner's violations. */
+	private int index;
+
 	/*
 	 * =================================================================
 	 * Constructor
@@ -38,6 +50,17 @@ public class Cell {
 		this.violations = i;
 	}
 
+	/** Construct a view onto violation i of a candidate. */
+	Cell(Candidate cand, int i) {
+		this.bind(cand, i);
+	}
+
+	/** Make this cell a view onto violation i of a candidate. */
+	void bind(Candidate cand, int i) {
+		this.owner = cand;
+		this.index = i;
+	}
+
 	/*
 	 * =================================================================
 	 * Violations
@@ -50,6 +73,9 @@ public class Cell {
 	 * @return violations The number of violations.
 	 */
 	public double getViolation() {
+		if (this.owner != null) {
+			return this.owner.getViolation(this.index);
+		}
 		return violations;
 	}
 
@@ -61,6 +87,9 @@ public class Cell {
 	 * @return true
 	 */
 	public boolean setViolation(double viol) {
+		if (this.owner != null) {
+			return this.owner.setViolation(this.index, viol);
+		}
 		this.violations = viol;
 		return true;
 	}
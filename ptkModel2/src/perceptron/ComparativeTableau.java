@@ -1,7 +1,16 @@
 package perceptron;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 public class ComparativeTableau {
 
@@ -9,63 +18,407 @@ public class ComparativeTableau {
 	public final static int NO_RANKING_FOUND = 1;
 	public final static int RANKING_FOUND = 2;
 
+	/** Below this many tableaux, the ERCs are made on one thread. */
+	private final static int PARALLEL_THRESHOLD = 256;
+
 	private int status = UNRANKED;
-	private ArrayList<ERC> ercs;
+	private ERCList ercs;
 	private ArrayList<LinguisticConstraint> con;
 
+	/** The tableaux the ERCs were read from, if they were; see refresh(). */
+	private TableauSet ts;
+
+	/** Kept from one call to rank() to the next. */
+	private RecursiveConstraintDemotion rcd;
+
+	private ERCStore store;
+
+	/**
+	 * Where the ERCs of each input are in the list, as {from, to}; null if the
+	 * ERCs of some input are apart.
+	 */
+	private IdentityHashMap<LinguisticForm, int[]> byInput;
+
+	/** Whether byInput has been made at all. */
+	private boolean indexed;
+
+	/** The list's modification count when byInput was made. */
+	private int indexedModCount;
+
+	/**
+	 * The ERCs of every tableau with a unique winner, in tableau order. Many
+	 * tableaux are read in parallel, which is safe as long as the TableauSet
+	 * isn't changed meanwhile.
+	 */
 	public ComparativeTableau(TableauSet ts) {
+		this.ts = ts;
 		this.con = ts.getConstraints();
-		if (ts.getTableaux() != null) {
-			Iterator it = ts.getTableaux().iterator();
-			while (it.hasNext()) {
-				Tableau tabl = (Tableau) it.next();
-				readTableau(tabl);
+		ArrayList<Tableau> tableaux = ts.getTableaux();
+		if (tableaux != null) {
+			if (tableaux.size() < PARALLEL_THRESHOLD) {
+				Iterator it = tableaux.iterator();
+				while (it.hasNext()) {
+					Tableau tabl = (Tableau) it.next();
+					readTableau(tabl);
+				}
+			} else {
+				this.ercs = new ERCList(ForkJoinPool.commonPool().invoke(
+						new ReadTableaux(tableaux, 0, tableaux.size())));
 			}
 		}
+		this.regroup();
+	}
+
+	/** Makes the ERCs of a range of tableaux, splitting it in two if large. */
+	private static class ReadTableaux extends RecursiveTask<ArrayList<ERC>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final ArrayList<Tableau> tableaux;
+
+		private final int from, to;
+
+		ReadTableaux(ArrayList<Tableau> tableaux, int from, int to) {
+			this.tableaux = tableaux;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected ArrayList<ERC> compute() {
+			if (this.to - this.from <= PARALLEL_THRESHOLD / 4) {
+				ArrayList<ERC> out = new ArrayList<ERC>();
+				for (int t = this.from; t < this.to; t++) {
+					Tableau tabl = this.tableaux.get(t);
+					if (tabl.hasUniqueWinner()) {
+						makeERCs(tabl, tabl.getWinner(), out);
+					}
+				}
+				return out;
+			}
+			int mid = (this.from + this.to) >>> 1;
+			ReadTableaux right = new ReadTableaux(this.tableaux, mid, this.to);
+			right.fork();
+			ArrayList<ERC> out = new ReadTableaux(this.tableaux, this.from, mid)
+					.compute();
+			out.addAll(right.join());
+			return out;
+		}
+	}
+
+	/**
+	 * The ERCs of a language, made without touching the frequencies of the
+	 * TableauSet, so that any number of threads can each have one.
+	 * 
+	 * @param ts
+	 *            The tableaux.
+	 * @param language
+	 *            One winner per tableau.
+	 */
+	public ComparativeTableau(TableauSet ts, Language language) {
+		this.ts = ts;
+		this.con = ts.getConstraints();
+		this.setLanguage(language);
+	}
+
+	/**
+	 * Start over with the ERCs of another language, each winner over the
+	 * other candidates of its tableau. The status goes back to UNRANKED.
+	 */
+	public void setLanguage(Language language) {
+		this.getERCs().clear();
+		this.status = UNRANKED;
+		Iterator it = language.getCandidates().iterator();
+		while (it.hasNext()) {
+			Candidate winner = (Candidate) it.next();
+			readTableau(winner.getParent(), winner);
+		}
 	}
 
 	public void readTableau(Tableau tabl) {
 		if (tabl.hasUniqueWinner()) {
-			Candidate winner = tabl.getWinners().get(0);
-			Iterator it = tabl.getCandidates().iterator();
-			while (it.hasNext()) {
-				Candidate cand = (Candidate) it.next();
-				if (cand != winner
-						&& cand.getViolationVector().size() == winner
-								.getViolationVector().size()) {
-
-					ERC erc = new ERC();
-					erc.setWinner(winner);
-					erc.setLoser(cand);
-					erc.setInput(tabl.getInput());
-					double[] lv = new double[winner.getViolationVector().size()];
-					for (int i = 0; i < winner.getViolationVector().size(); i++) {
-						int mark = ERC.E;
-						if (winner.getViolation(i) < cand.getViolation(i))
-							mark = ERC.W;
-						if (winner.getViolation(i) > cand.getViolation(i))
-							mark = ERC.L;
-						lv[i] = mark;
-					}
-					erc.setLearningVector(lv);
-					this.addERC(erc);
+			readTableau(tabl, tabl.getWinner());
+		}
+	}
+
+	/**
+	 * The ERCs of the given winner over the other candidates, after any the
+	 * input already has.
+	 */
+	private void readTableau(Tableau tabl, Candidate winner) {
+		ArrayList<ERC> fresh = new ArrayList<ERC>();
+		makeERCs(tabl, winner, fresh);
+		this.insertERCs(tabl.getInput(), fresh);
+	}
+
+	private static void makeERCs(Tableau tabl, Candidate winner,
+			ArrayList<ERC> out) {
+		Iterator it = tabl.getCandidates().iterator();
+		while (it.hasNext()) {
+			Candidate cand = (Candidate) it.next();
+			if (cand != winner
+					&& cand.violationCount() == winner.violationCount()) {
 
+				ERC erc = new ERC();
+				erc.setWinner(winner);
+				erc.setLoser(cand);
+				erc.setInput(tabl.getInput());
+				double[] lv = new double[winner.violationCount()];
+				for (int i = 0; i < winner.violationCount(); i++) {
+					int mark = ERC.E;
+					if (winner.getViolation(i) < cand.getViolation(i))
+						mark = ERC.W;
+					if (winner.getViolation(i) > cand.getViolation(i))
+						mark = ERC.L;
+					lv[i] = mark;
 				}
+				erc.setLearningVector(lv);
+				out.add(erc);
+
 			}
 		}
 	}
 
+	/** The ERCs of the given input, in order. */
 	public ArrayList<ERC> getERCsForInput(LinguisticForm form) {
-		ArrayList<ERC> currErcs = new ArrayList<ERC>();
-		if (this.getERCs() != null) {
-			Iterator it = this.getERCs().iterator();
+		IdentityHashMap<LinguisticForm, int[]> index = this.indexInputs();
+		if (index != null) {
+			int[] range = index.get(form);
+			if (range == null) {
+				return new ArrayList<ERC>();
+			}
+			return new ArrayList<ERC>(this.getERCs().subList(range[0],
+					range[1]));
+		}
+		ArrayList<ERC> found = new ArrayList<ERC>();
+		ArrayList<ERC> list = this.getERCs();
+		for (int e = 0; e < list.size(); e++) {
+			if (list.get(e).getInput() == form) {
+				found.add(list.get(e));
+			}
+		}
+		return found;
+	}
+
+	/** The number of ERCs of the given input. */
+	public int countERCsForInput(LinguisticForm form) {
+		IdentityHashMap<LinguisticForm, int[]> index = this.indexInputs();
+		if (index != null) {
+			int[] range = index.get(form);
+			return (range == null) ? 0 : range[1] - range[0];
+		}
+		int count = 0;
+		ArrayList<ERC> list = this.getERCs();
+		for (int e = 0; e < list.size(); e++) {
+			if (list.get(e).getInput() == form) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Bring the ERCs of each input together, in the order the inputs first
+	 * come, if they are apart. The ERCs this comparative tableau makes itself
+	 * already are; ERCs put into the list from outside might not be.
+	 */
+	public void groupByInput() {
+		this.regroup();
+	}
+
+	/**
+	 * Find where each input's ERCs are, without moving any. Made again only
+	 * after the list has been changed.
+	 * 
+	 * @return null if the ERCs of some input are apart.
+	 */
+	private IdentityHashMap<LinguisticForm, int[]> indexInputs() {
+		ArrayList<ERC> list = this.getERCs();
+		if (this.indexed && this.indexedModCount == this.ercs.getModCount()) {
+			return this.byInput;
+		}
+		IdentityHashMap<LinguisticForm, int[]> index = new IdentityHashMap<LinguisticForm, int[]>();
+		LinguisticForm prevInput = null;
+		for (int e = 0; e < list.size(); e++) {
+			LinguisticForm input = list.get(e).getInput();
+			if (e == 0 || input != prevInput) {
+				if (index.containsKey(input)) {
+					index = null;
+					break;
+				}
+				index.put(input, new int[] { e, e + 1 });
+			} else {
+				index.get(input)[1] = e + 1;
+			}
+			prevInput = input;
+		}
+		this.byInput = index;
+		this.indexed = true;
+		this.indexedModCount = this.ercs.getModCount();
+		return index;
+	}
+
+	/**
+	 * Find where each input's ERCs are, first bringing them together in the
+	 * order the inputs first come, if they are apart.
+	 */
+	private IdentityHashMap<LinguisticForm, int[]> regroup() {
+		IdentityHashMap<LinguisticForm, int[]> index = this.indexInputs();
+		if (index != null) {
+			return index;
+		}
+		ArrayList<ERC> list = this.getERCs();
+		IdentityHashMap<LinguisticForm, ArrayList<ERC>> groups = new IdentityHashMap<LinguisticForm, ArrayList<ERC>>();
+		ArrayList<ArrayList<ERC>> order = new ArrayList<ArrayList<ERC>>();
+		for (int e = 0; e < list.size(); e++) {
+			ERC erc = list.get(e);
+			ArrayList<ERC> group = groups.get(erc.getInput());
+			if (group == null) {
+				group = new ArrayList<ERC>();
+				groups.put(erc.getInput(), group);
+				order.add(group);
+			}
+			group.add(erc);
+		}
+		index = new IdentityHashMap<LinguisticForm, int[]>();
+		list.clear();
+		for (int g = 0; g < order.size(); g++) {
+			ArrayList<ERC> group = order.get(g);
+			index.put(group.get(0).getInput(), new int[] { list.size(),
+					list.size() + group.size() });
+			list.addAll(group);
+		}
+		this.byInput = index;
+		this.indexedModCount = this.ercs.getModCount();
+		return index;
+	}
+
+	/**
+	 * Put ERCs of an input after those it already has, or at the end if it
+	 * has none, and move the ranges of the inputs after it.
+	 */
+	private void insertERCs(LinguisticForm input, List<ERC> fresh) {
+		if (fresh.isEmpty()) {
+			return;
+		}
+		ArrayList<ERC> list = this.getERCs();
+		IdentityHashMap<LinguisticForm, int[]> index = this.regroup();
+		int[] range = index.get(input);
+		if (range == null) {
+			range = new int[] { list.size(), list.size() };
+			index.put(input, range);
+		}
+		int at = range[1];
+		list.addAll(at, fresh);
+		if (at + fresh.size() < list.size()) {
+			Iterator<int[]> it = index.values().iterator();
 			while (it.hasNext()) {
-				ERC erc = (ERC) it.next();
-				if (erc.getInput() == form)
-					currErcs.add(erc);
+				int[] other = it.next();
+				if (other[0] >= at && other != range) {
+					other[0] += fresh.size();
+					other[1] += fresh.size();
+				}
 			}
 		}
-		return currErcs;
+		range[1] = at + fresh.size();
+		this.indexedModCount = this.ercs.getModCount();
+	}
+
+	/**
+	 * The list of ERCs, counting every change to it, set() included, so that
+	 * the index of inputs can tell when it is out of date.
+	 */
+	private static class ERCList extends ArrayList<ERC> {
+
+		private static final long serialVersionUID = 1L;
+
+		ERCList() {
+		}
+
+		ERCList(Collection<ERC> ercs) {
+			super(ercs);
+		}
+
+		public ERC set(int index, ERC erc) {
+			this.modCount++;
+			return super.set(index, erc);
+		}
+
+		int getModCount() {
+			return this.modCount;
+		}
+	}
+
+	/**
+	 * One ERC for each set of ERCs that amount to the same thing, in the
+	 * order they first come; the others are set equivalent to it. Generated
+	 * tableaux often give the same ERC many times over, and a ranking or a
+	 * weighting that satisfies one satisfies them all.
+	 * 
+	 * @return The representatives. The list is reused by the next call.
+	 * @see ERCStore
+	 */
+	public ArrayList<ERC> getUniqueERCs() {
+		if (this.store == null) {
+			this.store = new ERCStore(this.getERCs().size());
+		} else {
+			this.store.clear();
+		}
+		this.store.internAll(this.getERCs());
+		return this.store.getRepresentatives();
+	}
+
+	/**
+	 * Recursive Constraint Demotion: rank the constraints in strata, each as
+	 * high as the ERCs not yet accounted for allow, until every ERC has a W
+	 * on a constraint ranked above its L's. Only the unique ERCs are ranked.
+	 * Sets the status, but leaves the constraints alone, so that comparative
+	 * tableaux over shared constraints can be ranked at the same time.
+	 * 
+	 * @return RANKING_FOUND or NO_RANKING_FOUND.
+	 * @see RecursiveConstraintDemotion
+	 */
+	public int rank() {
+		return this.rank(this.getUniqueERCs());
+	}
+
+	/**
+	 * Rank the given ERCs over this tableau's constraints, as rank() does;
+	 * e.g. the unique ERCs, if getUniqueERCs() has just been called.
+	 */
+	public int rank(List<ERC> ercs) {
+		if (this.rcd == null
+				|| this.rcd.getConstraintCount() != this.getCon().size()) {
+			this.rcd = new RecursiveConstraintDemotion(this.getCon().size());
+		}
+		return this.status = this.rcd.rank(ercs) ? RANKING_FOUND
+				: NO_RANKING_FOUND;
+	}
+
+	/**
+	 * Rank, as rank() does, and give each constraint its stratum (1 at the
+	 * top) with setStratum(); if there is no ranking, the constraints that
+	 * were ranked before it ran out get theirs, and the rest 0.
+	 * 
+	 * @return The ERCs that couldn't be accounted for, equivalent ones
+	 *         included; empty if a ranking was found.
+	 */
+	public ArrayList<ERC> rankConstraints() {
+		this.rank();
+		int[] strata = this.rcd.getStrata();
+		for (int k = 0; k < strata.length; k++) {
+			this.getCon().get(k).setStratum(strata[k]);
+		}
+		HashSet<ERC> unresolved = new HashSet<ERC>(this.rcd.getUnresolved());
+		ArrayList<ERC> all = new ArrayList<ERC>();
+		if (!unresolved.isEmpty()) {
+			for (int e = 0; e < this.getERCs().size(); e++) {
+				ERC erc = this.getERCs().get(e);
+				if (unresolved.contains(erc.getRepresentative())) {
+					all.add(erc);
+				}
+			}
+		}
+		return all;
 	}
 
 	public int getStatus() {
@@ -84,89 +437,243 @@ public class ComparativeTableau {
 
 	public ArrayList<ERC> getERCs() {
 		if (this.ercs == null)
-			this.ercs = new ArrayList<ERC>();
+			this.ercs = new ERCList();
 		return this.ercs;
 	}
 
+	/** Add an ERC after any others of its input. */
 	public boolean addERC(ERC erc) {
-		return this.getERCs().add(erc);
+		this.insertERCs(erc.getInput(), Collections.singletonList(erc));
+		return true;
 	}
 
 	public String toString() {
-		StringBuffer sb = new StringBuffer();
-
-		String TABLEO = "<TABLE class='tableau' border='1'>";
-		String TABLEC = "</TABLE>";
-		String TRO = "<TR>";
-		String TRC = "</TR>";
-		String TDO = "<TD>";
-		String TDOnormal = TDO;
-		String TDOunaccounted = "<TD class='unaccountedfor'>";
-		String TDC = "</TD>";
+		StringBuilder sb = new StringBuilder();
+		try {
+			this.write(sb);
+		} catch (IOException e) {
+			// A StringBuilder doesn't throw.
+		}
+		return sb.toString();
+	}
 
-		sb.append(TABLEO + TRO + TDO + " input " + TDC + TDO
-				+ " winner ~ loser " + TDC);
+	/**
+	 * Write the comparative tableau as HTML, one ERC row at a time.
+	 * 
+	 * @param out
+	 *            Where the content ends up.
+	 * @throws IOException
+	 *             If out does.
+	 * @see TableauSetRenderer#renderERCs(ComparativeTableau, Appendable)
+	 */
+	public void write(Appendable out) throws IOException {
+		TableauSetRenderer.renderERCs(this, out);
+	}
 
-		Iterator it = this.getCon().iterator();
-		while (it.hasNext()) {
-			LinguisticConstraint cons = (LinguisticConstraint) it.next();
-			sb.append(TDO + cons.getHTMLName() + TDC);
+	/**
+	 * Remove the given ERCs, every occurrence of each, in one pass over the
+	 * list. A ranking found before still holds afterwards; otherwise the
+	 * status goes back to UNRANKED.
+	 * 
+	 * @param ercs
+	 *            The ERCs to remove, told apart by identity.
+	 * @return true if every one of them was found.
+	 */
+	public boolean removeERCs(ArrayList<ERC> ercs) {
+		if (ercs == null || ercs.isEmpty()) {
+			return true;
 		}
-
-		LinguisticForm prevInput = null;
-		it = this.getERCs().iterator();
-		while (it.hasNext()) {
-			ERC erc = (ERC) it.next();
-			if (!erc.isAccountedFor()) {
-				TDO = TDOunaccounted;
+		Set<ERC> doomed = Collections
+				.newSetFromMap(new IdentityHashMap<ERC, Boolean>());
+		doomed.addAll(ercs);
+		Set<ERC> found = Collections
+				.newSetFromMap(new IdentityHashMap<ERC, Boolean>());
+		ArrayList<ERC> list = this.getERCs();
+		int kept = 0;
+		for (int e = 0; e < list.size(); e++) {
+			ERC erc = list.get(e);
+			if (doomed.contains(erc)) {
+				found.add(erc);
+			} else {
+				list.set(kept++, erc);
 			}
-			sb.append(TRO);
-			if (erc.getInput() != prevInput) {
-				sb.append("<TD ROWSPAN="
-						+ this.getERCsForInput(erc.getInput()).size() + ">"
-						+ erc.getInput() + TDC);
+		}
+		if (kept < list.size()) {
+			list.subList(kept, list.size()).clear();
+			if (this.status != RANKING_FOUND) {
+				this.status = UNRANKED;
 			}
-			prevInput = erc.getInput();
-
-			sb.append(TDO + erc.getWinner().getOutput() + " ~ ");
+		}
+		return found.size() == doomed.size();
+	}
 
-			sb.append("<A STYLE='color:333399;' href='HaLP:manualComparative("
-					+ erc.getLoser().getParent().getParent()
-							.getCandidateNumber(erc.getLoser()) + ")'>"
-					+ erc.getLoser().getOutput() + "</a>");
+	/*
+	 * =================================================================
+	 * Changing winners
+	 * =================================================================
+	 */
 
-			sb.append(TDC);
+	/**
+	 * Make a candidate the winner of its tableau, as TableauSet.makeWinner()
+	 * does, and make that tableau's ERCs again; the rest are left alone.
+	 * 
+	 * @return false if the candidate isn't in this comparative tableau's
+	 *         TableauSet.
+	 */
+	public boolean makeWinner(Candidate cand) {
+		if (this.ts == null || !this.ts.makeWinner(cand)) {
+			return false;
+		}
+		this.updateTableau(cand.getParent());
+		return true;
+	}
 
-			for (int i = 0; i < erc.getLearningVector().length; i++) {
-				String mark = "";
-				if (erc.getLearningVector()[i] == ERC.L)
-					mark = "L";
-				if (erc.getLearningVector()[i] == ERC.W)
-					mark = "W";
-				sb.append(TDO + mark + TDC);
+	/**
+	 * Make the ERCs of a tableau again, for its winner now, in place of the
+	 * ones it had; none if it has no unique winner. If a ranking had been
+	 * found by rank() and the new ERCs are satisfied by it, the status stays
+	 * RANKING_FOUND; otherwise it goes back to UNRANKED. A tableau that had
+	 * no ERCs gets them in tableau order, before those of the next tableau
+	 * that has some. Either way the next
+	 * rank() reuses the solver's scratch space.
+	 * 
+	 * @param tabl
+	 *            A tableau whose ERCs are in this comparative tableau, or
+	 *            are to be.
+	 */
+	public void updateTableau(Tableau tabl) {
+		ArrayList<ERC> fresh = new ArrayList<ERC>();
+		if (tabl.hasUniqueWinner()) {
+			makeERCs(tabl, tabl.getWinner(), fresh);
+		}
+		this.replaceERCs(tabl, fresh);
+		if (this.status == RANKING_FOUND && this.rcd != null) {
+			int[] strata = this.rcd.getStrata();
+			for (int e = 0; e < fresh.size(); e++) {
+				if (!satisfies(fresh.get(e), strata)) {
+					this.status = UNRANKED;
+					break;
+				}
 			}
-			sb.append(TRC);
-			TDO = TDOnormal;
+		} else {
+			this.status = UNRANKED;
 		}
-		sb.append(TABLEC);
+	}
 
-		return sb.toString();
+	/**
+	 * Make again the ERCs of each tableau of the TableauSet whose winner isn't
+	 * the one its ERCs were made for: after frequencies were changed
+	 * directly, say, or by setWinners().
+	 * 
+	 * @return The number of tableaux whose ERCs were made again.
+	 */
+	public int refresh() {
+		if (this.ts == null || this.ts.getTableaux() == null) {
+			return 0;
+		}
+		IdentityHashMap<LinguisticForm, int[]> index = this.regroup();
+		int updated = 0;
+		for (int t = 0; t < this.ts.size(); t++) {
+			Tableau tabl = this.ts.getTableau(t);
+			int[] range = index.get(tabl.getInput());
+			boolean stale;
+			if (range == null) {
+				// No ERCs: a winner now would give some, if it has losers.
+				stale = tabl.hasUniqueWinner() && tabl.candidateCount() > 1;
+			} else {
+				stale = !tabl.hasUniqueWinner()
+						|| this.getERCs().get(range[0]).getWinner() != tabl
+								.getWinner();
+			}
+			if (stale) {
+				this.updateTableau(tabl);
+				updated++;
+			}
+		}
+		return updated;
 	}
 
-	public boolean removeERCs(ArrayList<ERC> ercs) {
-		boolean success = true;
-		if (ercs != null) {
-			Iterator it = ercs.iterator();
+	/**
+	 * Put the given ERCs in place of those of a tableau's input, and move the
+	 * ranges of the inputs after it, rather than indexing them all again.
+	 */
+	private void replaceERCs(Tableau tabl, ArrayList<ERC> fresh) {
+		ArrayList<ERC> list = this.getERCs();
+		IdentityHashMap<LinguisticForm, int[]> index = this.regroup();
+		LinguisticForm input = tabl.getInput();
+		int[] range = index.get(input);
+		if (range == null) {
+			if (fresh.isEmpty()) {
+				return;
+			}
+			int at = this.insertionPoint(tabl, index);
+			range = new int[] { at, at };
+			index.put(input, range);
+		}
+		int from = range[0], to = range[1];
+		int common = Math.min(fresh.size(), to - from);
+		for (int i = 0; i < common; i++) {
+			list.set(from + i, fresh.get(i));
+		}
+		int delta = fresh.size() - (to - from);
+		if (delta > 0) {
+			list.addAll(to, fresh.subList(common, fresh.size()));
+		} else if (delta < 0) {
+			list.subList(from + common, to).clear();
+		}
+		if (delta != 0) {
+			Iterator<int[]> it = index.values().iterator();
 			while (it.hasNext()) {
-				ERC erc = (ERC) it.next();
-				if (this.getERCs().contains(erc)) {
-					success = this.getERCs().remove(erc);
-				} else {
-					success = false;
+				int[] other = it.next();
+				if (other[0] >= to && other != range) {
+					other[0] += delta;
+					other[1] += delta;
+				}
+			}
+		}
+		range[1] = to + delta;
+		if (range[0] == range[1]) {
+			index.remove(input);
+		}
+		this.indexedModCount = this.ercs.getModCount();
+	}
+
+	/**
+	 * Where the ERCs of a tableau that has none go: where those of the next
+	 * tableau with some begin, or at the end.
+	 */
+	private int insertionPoint(Tableau tabl,
+			IdentityHashMap<LinguisticForm, int[]> index) {
+		int t = tabl.getIndex();
+		if (this.ts != null && t >= 0 && this.ts.getTableaux() != null
+				&& t < this.ts.size() && this.ts.getTableau(t) == tabl) {
+			for (int next = t + 1; next < this.ts.size(); next++) {
+				int[] range = index.get(this.ts.getTableau(next).getInput());
+				if (range != null) {
+					return range[0];
 				}
 			}
 		}
-		return success;
+		return this.getERCs().size();
+	}
+
+	/**
+	 * Whether a ranking, given as the stratum of each constraint (1 at the
+	 * top), satisfies an ERC: some W is ranked above every L.
+	 */
+	private static boolean satisfies(ERC erc, int[] strata) {
+		int bestW = Integer.MAX_VALUE, bestL = Integer.MAX_VALUE;
+		double[] lv = erc.getLearningVector();
+		int n = Math.min(lv.length, strata.length);
+		for (int k = 0; k < n; k++) {
+			if (lv[k] == ERC.W) {
+				bestW = Math.min(bestW, strata[k]);
+			} else if (lv[k] == ERC.L) {
+				bestL = Math.min(bestL, strata[k]);
+			}
+		}
+		return bestW < bestL || (bestW == Integer.MAX_VALUE
+				&& bestL == Integer.MAX_VALUE);
 	}
 
 }
@@ -0,0 +1,536 @@
+package perceptron;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * <p>
+ * A TableauSet in a compact binary file, for grammars that are loaded over and
+ * over. The file is laid out in columns, so that it can be mapped into memory
+ * and read in place: no text is parsed, and a tableau is only built when it is
+ * first asked for.
+ * </p>
+ *
+ * <pre>
+ * CompiledGrammar.write(ts, new File(&quot;grammar.ptkg&quot;));
+ * ...
+ * TableauSet copy = new TableauSet();
+ * copy.readCompiledGrammar(new File(&quot;grammar.ptkg&quot;));
+ * </pre>
+ *
+ * <p>
+ * All numbers are big-endian. The file starts with a header: the magic number
+ * PTKG, the format version, the counts, the offset of each section, and the
+ * settings of the TableauSet. Then come
+ * </p>
+ * <ul>
+ * <li>the constraints, in fixed 64-byte records;</li>
+ * <li>the string pool: the offset of each string, then the strings in UTF-8.
+ * Inputs, outputs and constraint names refer to strings by number, and each
+ * distinct string is stored once;</li>
+ * <li>the tableaux, in 24-byte records: input, first candidate, number of
+ * candidates and winner mass;</li>
+ * <li>the candidates, in 32-byte records: output, length of the violation
+ * vector, first mark, number of marks and frequency;</li>
+ * <li>the non-zero violation marks of all candidates: first their columns,
+ * then their values.</li>
+ * </ul>
+ *
+ * <p>
+ * A file written by another version of the format is refused.
+ * </p>
+ *
+ * @see TableauSet#readCompiledGrammar(File)
+ */
+public class CompiledGrammar {
+
+	/*
+	 * ================================================================= Class
+	 * variables
+	 * =================================================================
+	 */
+
+	/** "PTKG". */
+	public final static int MAGIC = 0x50544B47;
+
+	public final static int VERSION = 1;
+
+	private final static int HEADER_SIZE = 144;
+
+	private final static int CONSTRAINT_SIZE = 64;
+
+	private final static int TABLEAU_SIZE = 24;
+
+	private final static int CANDIDATE_SIZE = 32;
+
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+
+	private ByteBuffer buffer;
+
+	private int constraintCount;
+
+	private int tableauCount;
+
+	private int candidateCount;
+
+	private int stringCount;
+
+	private long markCount;
+
+	private int constraints, strings, stringBytes, tableaux, candidates,
+			columns, values;
+
+	private CompiledGrammar(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	/*
+	 * =================================================================
+	 * Writing
+	 * =================================================================
+	 */
+
+	/**
+	 * Write a TableauSet to a file.
+	 *
+	 * @param ts
+	 *            The grammar.
+	 * @param file
+	 *            The file to write.
+	 * @throws IOException
+	 *             If the file can't be written.
+	 */
+	public static void write(TableauSet ts, File file) throws IOException {
+		int nc = ts.constraintCount();
+		int nt = ts.size();
+
+		// First pass: the string pool and the counts.
+		HashMap<String, Integer> ids = new HashMap<String, Integer>();
+		ArrayList<byte[]> pool = new ArrayList<byte[]>();
+		long poolBytes = 0;
+		int[] conNames = new int[3 * nc];
+		for (int k = 0; k < nc; k++) {
+			LinguisticConstraint cons = ts.getConstraint(k);
+			conNames[3 * k] = intern(cons.getName(), ids, pool);
+			conNames[3 * k + 1] = intern(cons.getShortName(), ids, pool);
+			conNames[3 * k + 2] = intern(cons.getHTMLName(), ids, pool);
+		}
+		int[] inputs = new int[nt];
+		int nCand = 0;
+		long nMarks = 0;
+		for (int t = 0; t < nt; t++) {
+			Tableau tabl = ts.getTableau(t);
+			inputs[t] = intern(text(tabl.getInput()), ids, pool);
+			nCand += tabl.candidateCount();
+			for (int r = 0; r < tabl.candidateCount(); r++) {
+				nMarks += nonZeros(tabl, r);
+			}
+		}
+		int[] outputs = new int[nCand];
+		int c = 0;
+		for (int t = 0; t < nt; t++) {
+			Tableau tabl = ts.getTableau(t);
+			for (int r = 0; r < tabl.candidateCount(); r++) {
+				outputs[c++] = intern(text(tabl.getCandidate(r).getOutput()),
+						ids, pool);
+			}
+		}
+		for (int s = 0; s < pool.size(); s++) {
+			poolBytes += pool.get(s).length;
+		}
+
+		// The sections, in order, each starting on an 8-byte boundary.
+		long constraintsAt = HEADER_SIZE;
+		long stringsAt = constraintsAt + (long) CONSTRAINT_SIZE * nc;
+		long tableauxAt = align(stringsAt + 4L * (pool.size() + 1) + poolBytes);
+		long candidatesAt = tableauxAt + (long) TABLEAU_SIZE * nt;
+		long columnsAt = candidatesAt + (long) CANDIDATE_SIZE * nCand;
+		long valuesAt = align(columnsAt + 4L * nMarks);
+		long end = valuesAt + 8L * nMarks;
+		if (end > Integer.MAX_VALUE) {
+			throw new IOException("The grammar is too large to compile.");
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file), 1 << 16));
+		try {
+			// Header.
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(nc);
+			out.writeInt(nt);
+			out.writeInt(nCand);
+			out.writeInt(pool.size());
+			out.writeLong(nMarks);
+			out.writeLong(constraintsAt);
+			out.writeLong(stringsAt);
+			out.writeLong(tableauxAt);
+			out.writeLong(candidatesAt);
+			out.writeLong(columnsAt);
+			out.writeLong(valuesAt);
+			out.writeDouble(ts.getMinConstraintWeight());
+			out.writeDouble(ts.getRate());
+			out.writeDouble(ts.getOutputStage());
+			out.writeDouble(ts.getNoise());
+			out.writeDouble(ts.getMarkMultiplier());
+			out.writeDouble(ts.getIOFaithMultiplier());
+			out.writeDouble(ts.getOOFaithMultiplier());
+			out.writeByte(ts.isLexicallySpecificConstraints() ? 1 : 0);
+			pad(out, 7);
+
+			// Constraints.
+			for (int k = 0; k < nc; k++) {
+				LinguisticConstraint cons = ts.getConstraint(k);
+				out.writeInt(conNames[3 * k]);
+				out.writeInt(conNames[3 * k + 1]);
+				out.writeInt(conNames[3 * k + 2]);
+				out.writeInt(cons.getType());
+				out.writeDouble(cons.getWeight());
+				out.writeDouble(cons.getInitialRanking());
+				out.writeDouble(cons.getLocalNoise());
+				out.writeDouble(cons.getBias());
+				out.writeDouble(cons.getLocalMinConstraintWeight());
+				out.writeByte(cons.isUseLocalNoise() ? 1 : 0);
+				out.writeByte(cons.isUseLocalMinConstraintWeight() ? 1 : 0);
+				pad(out, 2);
+				out.writeInt(cons.getStratum());
+			}
+
+			// String pool.
+			int offset = 0;
+			for (int s = 0; s < pool.size(); s++) {
+				out.writeInt(offset);
+				offset += pool.get(s).length;
+			}
+			out.writeInt(offset);
+			for (int s = 0; s < pool.size(); s++) {
+				out.write(pool.get(s));
+			}
+			pad(out, (int) (tableauxAt - (stringsAt + 4L * (pool.size() + 1) + poolBytes)));
+
+			// Tableaux.
+			int first = 0;
+			for (int t = 0; t < nt; t++) {
+				Tableau tabl = ts.getTableau(t);
+				out.writeInt(inputs[t]);
+				out.writeInt(first);
+				out.writeInt(tabl.candidateCount());
+				out.writeInt(0);
+				out.writeDouble(tabl.getWinnerMass());
+				first += tabl.candidateCount();
+			}
+
+			// Candidates.
+			long mark = 0;
+			c = 0;
+			for (int t = 0; t < nt; t++) {
+				Tableau tabl = ts.getTableau(t);
+				for (int r = 0; r < tabl.candidateCount(); r++) {
+					Candidate cand = tabl.getCandidate(r);
+					int nnz = nonZeros(tabl, r);
+					out.writeInt(outputs[c++]);
+					out.writeInt(cand.violationCount());
+					out.writeLong(mark);
+					out.writeInt(nnz);
+					out.writeInt(0);
+					out.writeDouble(cand.getFrequency());
+					mark += nnz;
+				}
+			}
+
+			// Marks: the columns, then the values.
+			for (int t = 0; t < nt; t++) {
+				Tableau tabl = ts.getTableau(t);
+				for (int r = 0; r < tabl.candidateCount(); r++) {
+					int n = tabl.getCandidate(r).violationCount();
+					for (int k = 0; k < n; k++) {
+						if (tabl.getViolation(r, k) != 0) {
+							out.writeInt(k);
+						}
+					}
+				}
+			}
+			pad(out, (int) (valuesAt - (columnsAt + 4L * nMarks)));
+			for (int t = 0; t < nt; t++) {
+				Tableau tabl = ts.getTableau(t);
+				for (int r = 0; r < tabl.candidateCount(); r++) {
+					int n = tabl.getCandidate(r).violationCount();
+					for (int k = 0; k < n; k++) {
+						double v = tabl.getViolation(r, k);
+						if (v != 0) {
+							out.writeDouble(v);
+						}
+					}
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/** The number of string s in the pool, adding it if it is new. */
+	private static int intern(String s, HashMap<String, Integer> ids,
+			ArrayList<byte[]> pool) {
+		if (s == null) {
+			return -1;
+		}
+		Integer id = ids.get(s);
+		if (id == null) {
+			id = Integer.valueOf(pool.size());
+			ids.put(s, id);
+			pool.add(s.getBytes(UTF8));
+		}
+		return id.intValue();
+	}
+
+	private static String text(LinguisticForm form) {
+		return (form == null) ? null : form.getText();
+	}
+
+	/** The number of non-zero marks in row r. */
+	private static int nonZeros(Tableau tabl, int r) {
+		int n = tabl.getCandidate(r).violationCount();
+		int nnz = 0;
+		for (int k = 0; k < n; k++) {
+			if (tabl.getViolation(r, k) != 0) {
+				nnz++;
+			}
+		}
+		return nnz;
+	}
+
+	private static long align(long offset) {
+		return (offset + 7) & ~7L;
+	}
+
+	private static void pad(DataOutputStream out, int n) throws IOException {
+		for (int i = 0; i < n; i++) {
+			out.writeByte(0);
+		}
+	}
+
+	/*
+	 * =================================================================
+	 * Reading
+	 * =================================================================
+	 */
+
+	/**
+	 * Map a compiled grammar into memory and check its header. Nothing else
+	 * is read yet. A compressed grammar is first inflated into a temporary
+	 * file, which is mapped instead.
+	 *
+	 * @param file
+	 *            The file written by write().
+	 * @return The grammar.
+	 * @throws IOException
+	 *             If the file can't be read, or isn't a compiled grammar of
+	 *             this version.
+	 */
+	public static CompiledGrammar open(File file) throws IOException {
+		if (CompressedInput.isCompressed(file)) {
+			File inflated = CompressedInput.inflateToTemporaryFile(file);
+			try {
+				return open(inflated, file);
+			} finally {
+				// Where a mapped file can't be deleted, deleteOnExit() will.
+				inflated.delete();
+			}
+		}
+		return open(file, file);
+	}
+
+	/** Map a file, naming the given one in errors. */
+	private static CompiledGrammar open(File mapped, File file)
+			throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(mapped, "r");
+		MappedByteBuffer map;
+		try {
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException(file + " is too large to map.");
+			}
+			if (size < HEADER_SIZE) {
+				throw new IOException(file + " is not a compiled grammar.");
+			}
+			// The mapping stays valid after the channel is closed.
+			map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		} finally {
+			raf.close();
+		}
+		CompiledGrammar grammar = new CompiledGrammar(map);
+		grammar.readHeader(file);
+		return grammar;
+	}
+
+	private void readHeader(File file) throws IOException {
+		ByteBuffer b = this.buffer;
+		if (b.getInt(0) != MAGIC) {
+			throw new IOException(file + " is not a compiled grammar.");
+		}
+		if (b.getInt(4) != VERSION) {
+			throw new IOException(file + " is a compiled grammar of version "
+					+ b.getInt(4) + "; this program reads version " + VERSION
+					+ ".");
+		}
+		this.constraintCount = b.getInt(8);
+		this.tableauCount = b.getInt(12);
+		this.candidateCount = b.getInt(16);
+		this.stringCount = b.getInt(20);
+		this.markCount = b.getLong(24);
+		this.constraints = this.section(32, (long) CONSTRAINT_SIZE
+				* this.constraintCount, file);
+		this.strings = this.section(40, 4L * (this.stringCount + 1), file);
+		this.tableaux = this.section(48, (long) TABLEAU_SIZE
+				* this.tableauCount, file);
+		this.candidates = this.section(56, (long) CANDIDATE_SIZE
+				* this.candidateCount, file);
+		this.columns = this.section(64, 4L * this.markCount, file);
+		this.values = this.section(72, 8L * this.markCount, file);
+		this.stringBytes = this.strings + 4 * (this.stringCount + 1);
+		if (this.constraintCount < 0 || this.tableauCount < 0
+				|| this.candidateCount < 0 || this.stringCount < 0
+				|| this.stringBytes + (long) b.getInt(this.stringBytes - 4) > b
+						.limit()) {
+			throw new IOException(file + " is damaged.");
+		}
+	}
+
+	/** The start of a section, checked to lie within the file. */
+	private int section(int at, long length, File file) throws IOException {
+		long start = this.buffer.getLong(at);
+		if (start < HEADER_SIZE || length < 0
+				|| start + length > this.buffer.limit()) {
+			throw new IOException(file + " is damaged.");
+		}
+		return (int) start;
+	}
+
+	/**
+	 * Give a TableauSet the settings and constraints of this grammar, and
+	 * its tableaux, to be built as they are asked for. Whatever constraints
+	 * and tableaux the set had are replaced.
+	 *
+	 * @param ts
+	 *            The TableauSet.
+	 */
+	public void loadInto(TableauSet ts) {
+		ByteBuffer b = this.buffer;
+		ts.setMinConstraintWeight(b.getDouble(80));
+		ts.setRate(b.getDouble(88));
+		ts.setOutputStage(b.getDouble(96));
+		ts.setNoise(b.getDouble(104));
+		ts.setMarkMultiplier(b.getDouble(112));
+		ts.setIOFaithMultiplier(b.getDouble(120));
+		ts.setOOFaithMultiplier(b.getDouble(128));
+		ts.setLexicallySpecificConstraints(b.get(136) != 0);
+
+		ArrayList<LinguisticConstraint> con = new ArrayList<LinguisticConstraint>(
+				this.constraintCount);
+		for (int k = 0; k < this.constraintCount; k++) {
+			int at = this.constraints + k * CONSTRAINT_SIZE;
+			LinguisticConstraint cons = new LinguisticConstraint(ts);
+			cons.setName(this.string(b.getInt(at)));
+			cons.setShortName(this.string(b.getInt(at + 4)));
+			cons.setHTMLName(this.string(b.getInt(at + 8)));
+			cons.setType(b.getInt(at + 12));
+			cons.setWeight(b.getDouble(at + 16));
+			cons.setInitialRanking(b.getDouble(at + 24));
+			cons.setUseLocalNoise(true);
+			cons.setNoise(b.getDouble(at + 32));
+			cons.setUseLocalNoise(b.get(at + 56) != 0);
+			cons.setRawBias(b.getDouble(at + 40));
+			cons.setUseLocalMinConstraintWeight(true);
+			cons.setMinConstraintWeight(b.getDouble(at + 48));
+			cons.setUseLocalMinConstraintWeight(b.get(at + 57) != 0);
+			cons.setStratum(b.getInt(at + 60));
+			con.add(cons);
+		}
+		ts.setConstraints(con);
+		ts.setSource(this);
+	}
+
+	/** The number of tableaux. */
+	public int tableauCount() {
+		return this.tableauCount;
+	}
+
+	/** The winner mass of tableau t, without building it. */
+	public double winnerMass(int t) {
+		return this.buffer.getDouble(this.tableaux + t * TABLEAU_SIZE + 16);
+	}
+
+	/**
+	 * Build tableau t. It is not added to the TableauSet.
+	 *
+	 * @param t
+	 *            Which tableau.
+	 * @param ts
+	 *            The TableauSet it will belong to.
+	 * @return The tableau.
+	 */
+	public Tableau buildTableau(int t, TableauSet ts) {
+		ByteBuffer b = this.buffer;
+		int at = this.tableaux + t * TABLEAU_SIZE;
+		Tableau tableau = new Tableau(ts);
+		tableau.setInput(new LinguisticForm(this.string(b.getInt(at))));
+		int first = b.getInt(at + 4);
+		int count = b.getInt(at + 8);
+		Candidate[] cands = new Candidate[count];
+		int[] lengths = new int[count];
+		int[] start = new int[count + 1];
+		int c = this.candidates + first * CANDIDATE_SIZE;
+		int from = (count == 0) ? 0 : (int) b.getLong(c + 8);
+		for (int r = 0; r < count; r++, c += CANDIDATE_SIZE) {
+			Candidate candidate = new Candidate(tableau);
+			candidate.setOutput(new LinguisticForm(this.string(b.getInt(c))));
+			candidate.setFrequency(b.getDouble(c + 24));
+			cands[r] = candidate;
+			lengths[r] = b.getInt(c + 4);
+			start[r] = (int) b.getLong(c + 8) - from;
+			start[r + 1] = start[r] + b.getInt(c + 16);
+		}
+		int nnz = start[count];
+		int[] cols = new int[nnz];
+		double[] vals = new double[nnz];
+		for (int m = 0; m < nnz; m++) {
+			cols[m] = b.getInt(this.columns + 4 * (from + m));
+			vals[m] = b.getDouble(this.values + 8 * (from + m));
+		}
+		tableau.setSparseCandidates(cands, lengths, start, cols, vals);
+		tableau.compress();
+		return tableau;
+	}
+
+	/**
+	 * String s of the pool.
+	 *
+	 * @param s
+	 *            Its number, or -1.
+	 * @return The string, or null for -1.
+	 */
+	public String string(int s) {
+		if (s < 0) {
+			return null;
+		}
+		int from = this.stringBytes + this.buffer.getInt(this.strings + 4 * s);
+		int to = this.stringBytes + this.buffer.getInt(this.strings + 4 * s + 4);
+		byte[] bytes = new byte[to - from];
+		ByteBuffer slice = this.buffer.duplicate();
+		slice.position(from);
+		slice.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+}
@@ -0,0 +1,215 @@
+package perceptron;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * <p>
+ * Opens grammar files whether or not they are compressed. The format is told
+ * from the first bytes of the file, not from its name: gzip, zip (the first
+ * file in the archive is read) and zlib are inflated as they are read, with
+ * the codecs of java.util.zip; anything else is read as it is. Nothing is
+ * inflated in memory beyond a buffer.
+ * </p>
+ *
+ * <pre>
+ * ReadableByteChannel in = CompressedInput.openChannel(file);
+ * </pre>
+ */
+public final class CompressedInput {
+
+	/*
+	 * ================================================================= Class
+	 * variables
+	 * =================================================================
+	 */
+
+	/** Not compressed. */
+	public final static int PLAIN = 0;
+
+	public final static int GZIP = 1;
+
+	public final static int ZIP = 2;
+
+	public final static int ZLIB = 3;
+
+	private final static int BUFFER_SIZE = 1 << 16;
+
+	private CompressedInput() {
+	}
+
+	/*
+	 * =================================================================
+	 * Detection
+	 * =================================================================
+	 */
+
+	/**
+	 * The compression of a file.
+	 *
+	 * @param file
+	 *            The file.
+	 * @return PLAIN, GZIP, ZIP or ZLIB.
+	 * @throws IOException
+	 *             If the file can't be read.
+	 */
+	public static int compression(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] head = new byte[4];
+			int n = 0, r;
+			while (n < head.length
+					&& (r = in.read(head, n, head.length - n)) > 0) {
+				n += r;
+			}
+			return compression(head, n);
+		} finally {
+			in.close();
+		}
+	}
+
+	/** The compression told by the first n bytes of a file. */
+	static int compression(byte[] head, int n) {
+		int b0 = (n > 0) ? head[0] & 0xFF : -1;
+		int b1 = (n > 1) ? head[1] & 0xFF : -1;
+		if (b0 == 0x1F && b1 == 0x8B) {
+			return GZIP;
+		}
+		if (n >= 4 && b0 == 'P' && b1 == 'K' && head[2] == 3
+				&& head[3] == 4) {
+			return ZIP;
+		}
+		// Only the zlib headers that zlib itself writes, with a 32K window.
+		// Any other valid one could as well be the first two characters of a
+		// text file, such as (r or x?.
+		if (b0 == 0x78 && (b1 == 0x01 || b1 == 0x9C || b1 == 0xDA)) {
+			return ZLIB;
+		}
+		return PLAIN;
+	}
+
+	public static boolean isCompressed(File file) throws IOException {
+		return compression(file) != PLAIN;
+	}
+
+	/*
+	 * =================================================================
+	 * Opening
+	 * =================================================================
+	 */
+
+	/**
+	 * A stream of the file's contents, inflated as it is read if the file is
+	 * compressed.
+	 *
+	 * @param file
+	 *            The file.
+	 * @return The stream; the caller closes it.
+	 * @throws IOException
+	 *             If the file can't be opened, or a zip archive holds no file.
+	 */
+	public static InputStream openStream(File file) throws IOException {
+		InputStream raw = new BufferedInputStream(new FileInputStream(file),
+				BUFFER_SIZE);
+		try {
+			raw.mark(4);
+			byte[] head = new byte[4];
+			int n = 0, r;
+			while (n < head.length
+					&& (r = raw.read(head, n, head.length - n)) > 0) {
+				n += r;
+			}
+			raw.reset();
+			switch (compression(head, n)) {
+			case GZIP:
+				return new GZIPInputStream(raw, BUFFER_SIZE);
+			case ZIP:
+				ZipInputStream zip = new ZipInputStream(raw);
+				ZipEntry entry;
+				while ((entry = zip.getNextEntry()) != null) {
+					if (!entry.isDirectory()) {
+						return zip;
+					}
+				}
+				throw new IOException(file + " is an empty zip archive.");
+			case ZLIB:
+				return new InflaterInputStream(raw, new Inflater(), BUFFER_SIZE);
+			default:
+				return raw;
+			}
+		} catch (IOException e) {
+			raw.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * A channel of the file's contents: the file's own channel if it isn't
+	 * compressed, else a channel over the inflating stream.
+	 */
+	public static ReadableByteChannel openChannel(File file)
+			throws IOException {
+		if (compression(file) == PLAIN) {
+			return new FileInputStream(file).getChannel();
+		}
+		return Channels.newChannel(openStream(file));
+	}
+
+	/**
+	 * The file's text, in the platform's default encoding, as FileReader
+	 * reads it.
+	 */
+	public static BufferedReader openReader(File file) throws IOException {
+		return new BufferedReader(new InputStreamReader(openStream(file)));
+	}
+
+	/**
+	 * The inflated contents of a compressed file, in a temporary file that is
+	 * deleted when the program ends; for formats that must be mapped, such as
+	 * compiled grammars. The file is inflated a buffer at a time.
+	 *
+	 * @param file
+	 *            The compressed file.
+	 * @return The temporary file.
+	 * @throws IOException
+	 *             If either file can't be read or written.
+	 */
+	public static File inflateToTemporaryFile(File file) throws IOException {
+		File inflated = File.createTempFile("ptkmodel-inflated", ".tmp");
+		inflated.deleteOnExit();
+		InputStream in = openStream(file);
+		try {
+			OutputStream out = new FileOutputStream(inflated);
+			try {
+				byte[] buffer = new byte[BUFFER_SIZE];
+				int n;
+				while ((n = in.read(buffer)) > 0) {
+					out.write(buffer, 0, n);
+				}
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			inflated.delete();
+			throw e;
+		} finally {
+			in.close();
+		}
+		return inflated;
+	}
+
+}
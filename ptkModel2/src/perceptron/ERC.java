@@ -1,5 +1,7 @@
 package perceptron;
 
+import java.util.Arrays;
+
 public class ERC {
 
 	private Candidate winner;
@@ -8,6 +10,15 @@ public class ERC {
 	private double[] learningVector;
 	private LinguisticForm input;
 
+	/*
+	 * The learning vector as bitsets, made by setLearningVector(): bit k of
+	 * wMask is set if constraint k prefers the winner, of lMask if it prefers
+	 * the loser.
+	 */
+	private long[] wMask;
+	private long[] lMask;
+	private int patternHash;
+
 	private ERC equivalentTo;
 	private boolean accountedFor = false;
 
@@ -43,43 +54,66 @@ public class ERC {
 		return this.learningVector;
 	}
 
+	/**
+	 * Set the marks, ERC.W, ERC.E or ERC.L for each constraint. The array
+	 * must not be changed afterwards, since it is packed into bitsets here.
+	 */
 	public double[] setLearningVector(double[] lv) {
-		return this.learningVector = lv;
+		this.learningVector = lv;
+		int words = (lv.length + 63) >>> 6;
+		this.wMask = new long[words];
+		this.lMask = new long[words];
+		for (int i = 0; i < lv.length; i++) {
+			if (lv[i] == ERC.W) {
+				this.wMask[i >>> 6] |= 1L << i;
+			} else if (lv[i] == ERC.L) {
+				this.lMask[i >>> 6] |= 1L << i;
+			}
+		}
+		this.patternHash = 31 * (31 * lv.length + Arrays.hashCode(this.wMask))
+				+ Arrays.hashCode(this.lMask);
+		return lv;
+	}
+
+	/** The constraints that prefer the winner, as a bitset. */
+	public long[] getWMask() {
+		return this.wMask;
+	}
+
+	/** The constraints that prefer the loser, as a bitset. */
+	public long[] getLMask() {
+		return this.lMask;
+	}
+
+	/**
+	 * A hash of the marks, the same for any two ERCs that amount to the same
+	 * thing.
+	 */
+	public int patternHash() {
+		return this.patternHash;
 	}
 
 	public boolean hasL() {
-		boolean success = false;
-		for (int i = 0; i < this.getLearningVector().length; i++) {
-			if (this.getLearningVector()[i] == ERC.L) {
-				success = true;
-				break;
-			}
-		}
-		return success;
+		return !isEmpty(this.lMask);
 	}
 
 	public boolean hasW() {
-		boolean success = false;
-		for (int i = 0; i < this.getLearningVector().length; i++) {
-			if (this.getLearningVector()[i] == ERC.W) {
-				success = true;
-				break;
+		return !isEmpty(this.wMask);
+	}
+
+	private static boolean isEmpty(long[] mask) {
+		for (int i = 0; i < mask.length; i++) {
+			if (mask[i] != 0L) {
+				return false;
 			}
 		}
-		return success;
+		return true;
 	}
 
 	public boolean amountsTo(ERC erc) {
-		boolean identical = true;
-		if (this.getLearningVector().length == erc.getLearningVector().length) {
-			for (int i = 0; i < this.getLearningVector().length; i++) {
-				if (this.getLearningVector()[i] != erc.getLearningVector()[i])
-					identical = false;
-			}
-		} else {
-			identical = false;
-		}
-		return identical;
+		return this.learningVector.length == erc.learningVector.length
+				&& Arrays.equals(this.wMask, erc.wMask)
+				&& Arrays.equals(this.lMask, erc.lMask);
 	}
 
 	public boolean setAccountedFor(boolean bool) {
@@ -98,6 +132,16 @@ public class ERC {
 		this.equivalentTo = erc;
 	}
 
+	/**
+	 * The ERC that stands for this one's equivalence class: the one it is
+	 * equivalent to, if any, else itself.
+	 * 
+	 * @see ERCStore
+	 */
+	public ERC getRepresentative() {
+		return (this.equivalentTo == null) ? this : this.equivalentTo;
+	}
+
 	public String toString() {
 		String str = this.getWinner().getOutput() + " ~ "
 				+ this.getLoser().getOutput();
@@ -0,0 +1,196 @@
+package perceptron;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>
+ * Sorts ERCs into equivalence classes by their marks. ERCs that amount to the
+ * same thing ask the same of a ranking or a weighting, so the solvers need
+ * only one of each class: its representative, the first ERC of the class to
+ * be interned. Every other ERC of the class is set equivalent to it with
+ * setEquivalent().
+ * </p>
+ *
+ * <pre>
+ * ERCStore store = new ERCStore();
+ * store.internAll(ct.getERCs());
+ * ArrayList&lt;ERC&gt; unique = store.getRepresentatives();
+ * </pre>
+ *
+ * <p>
+ * The classes are found with a hash table on ERC.patternHash(), probed
+ * linearly, so interning n ERCs takes time in n rather than n squared.
+ * </p>
+ *
+ * @see ERC#getRepresentative()
+ * @see ComparativeTableau#getUniqueERCs()
+ */
+public class ERCStore {
+
+	/*
+	 * ================================================================= Class
+	 * variables
+	 * =================================================================
+	 */
+
+	/** The representative of each class, in the order they were found. */
+	private ArrayList<ERC> representatives = new ArrayList<ERC>();
+
+	/** The number of ERCs interned into each class. */
+	private int[] counts;
+
+	/** 1 + the class in each slot; 0 for an empty slot. */
+	private int[] table;
+
+	private int ercCount;
+
+	public ERCStore() {
+		this(16);
+	}
+
+	/**
+	 * A store with room for the given number of classes before it must grow.
+	 */
+	public ERCStore(int expected) {
+		int size = 16;
+		while (size < 2 * expected) {
+			size <<= 1;
+		}
+		this.table = new int[size];
+		this.counts = new int[Math.max(16, expected)];
+	}
+
+	/*
+	 * =================================================================
+	 * Interning
+	 * =================================================================
+	 */
+
+	/**
+	 * Put an ERC into its class, starting a new one if there is none. An ERC
+	 * that joins a class is set equivalent to its representative; one that
+	 * starts a class is set equivalent to nothing.
+	 *
+	 * @param erc
+	 *            The ERC; its learning vector must be set.
+	 * @return The representative of its class.
+	 */
+	public ERC intern(ERC erc) {
+		int mask = this.table.length - 1;
+		int slot = spread(erc.patternHash()) & mask;
+		while (this.table[slot] != 0) {
+			int c = this.table[slot] - 1;
+			ERC rep = this.representatives.get(c);
+			if (rep == erc || rep.amountsTo(erc)) {
+				if (rep != erc) {
+					erc.setEquivalent(rep);
+				}
+				this.counts[c]++;
+				this.ercCount++;
+				return rep;
+			}
+			slot = (slot + 1) & mask;
+		}
+		int c = this.representatives.size();
+		this.representatives.add(erc);
+		erc.setEquivalent(null);
+		if (c == this.counts.length) {
+			int[] bigger = new int[2 * c];
+			System.arraycopy(this.counts, 0, bigger, 0, c);
+			this.counts = bigger;
+		}
+		this.counts[c] = 1;
+		this.ercCount++;
+		this.table[slot] = c + 1;
+		if (2 * this.representatives.size() > this.table.length) {
+			this.rehash();
+		}
+		return erc;
+	}
+
+	/** Intern each of the ERCs, in order. */
+	public void internAll(List<ERC> ercs) {
+		for (int e = 0; e < ercs.size(); e++) {
+			this.intern(ercs.get(e));
+		}
+	}
+
+	/**
+	 * The class of the ERC's marks, without interning it.
+	 *
+	 * @return The index of the class in getRepresentatives(), or -1.
+	 */
+	public int indexOf(ERC erc) {
+		int mask = this.table.length - 1;
+		int slot = spread(erc.patternHash()) & mask;
+		while (this.table[slot] != 0) {
+			int c = this.table[slot] - 1;
+			if (this.representatives.get(c).amountsTo(erc)) {
+				return c;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Empty the store, to be used again. The ERCs keep the equivalents they
+	 * were given.
+	 */
+	public void clear() {
+		this.representatives.clear();
+		Arrays.fill(this.table, 0);
+		this.ercCount = 0;
+	}
+
+	private void rehash() {
+		int[] bigger = new int[2 * this.table.length];
+		int mask = bigger.length - 1;
+		for (int c = 0; c < this.representatives.size(); c++) {
+			int slot = spread(this.representatives.get(c).patternHash()) & mask;
+			while (bigger[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			bigger[slot] = c + 1;
+		}
+		this.table = bigger;
+	}
+
+	/** Mix the high bits of a hash into the low ones, which pick the slot. */
+	private static int spread(int h) {
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/*
+	 * =================================================================
+	 * Getters
+	 * =================================================================
+	 */
+
+	/**
+	 * One ERC of each class, in the order the classes were found. This is the
+	 * live list.
+	 */
+	public ArrayList<ERC> getRepresentatives() {
+		return this.representatives;
+	}
+
+	/** The number of classes. */
+	public int size() {
+		return this.representatives.size();
+	}
+
+	/** The number of ERCs interned since the store was made or cleared. */
+	public int getERCCount() {
+		return this.ercCount;
+	}
+
+	/** The number of ERCs interned into class c. */
+	public int getClassSize(int c) {
+		return this.counts[c];
+	}
+
+}
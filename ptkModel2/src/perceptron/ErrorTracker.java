@@ -0,0 +1,261 @@
+package perceptron;
+
+import java.util.BitSet;
+
+/**
+ * <p>
+ * Keeps count of the tableaux whose winner is not the optimal candidate under
+ * the current weights, so that a learner can tell at any step whether it has
+ * converged without re-evaluating the whole TableauSet.
+ * </p>
+ *
+ * <p>
+ * The tracker caches the harmony of every candidate. When sync() finds that
+ * the weight of constraint k moved by d, it adds d times the violation of
+ * each candidate on k to that candidate's harmony, and only re-examines the
+ * tableaux that have a mark on k. A tableau counts as an error when some
+ * candidate that Perceptron compares with the first winner (any but the
+ * winner and its homophones, other winners included) has a lower weight than
+ * the winner: exactly when Perceptron, without noise, would learn from that
+ * tableau. Tableaux without winners never count, and a tableau with free
+ * variation that the weights can't settle stays in error.
+ * </p>
+ *
+ * <p>
+ * The cache is built from the frequencies as they are at construction or at
+ * the last refresh(); call refresh() after changing winners.
+ * </p>
+ *
+ * @see Trainer
+ */
+public class ErrorTracker {
+
+	/** Recompute everything from scratch this often, to shed rounding drift. */
+	private final static int REFRESH_INTERVAL = 1 << 16;
+
+	private TableauSet ts;
+
+	/** The weights being tracked: usually the TableauSet's own. */
+	private double[] weights;
+
+	/** The weights as of the last sync. */
+	private double[] seen;
+
+	/** For each constraint, the tableaux with a non-zero mark on it. */
+	private int[][] columns;
+
+	/** For each tableau, the harmony of each candidate. */
+	private double[][] harmonies;
+
+	/** For each tableau, which candidates are compared with the winner. */
+	private BitSet[] rivals;
+
+	/** The winner of each tableau, or -1. */
+	private int[] winners;
+
+	/** The tableaux that are currently in error. */
+	private BitSet errors = new BitSet();
+
+	/** The number of bits set in errors. */
+	private int errorCount;
+
+	/** Scratch: tableaux touched by the current sync. */
+	private BitSet dirty = new BitSet();
+
+	private int syncs;
+
+	/**
+	 * Track the TableauSet's own weights.
+	 *
+	 * @param ts
+	 *            The TableauSet.
+	 */
+	public ErrorTracker(TableauSet ts) {
+		this(ts, ts.getWeightVector());
+	}
+
+	/**
+	 * Track the given weights over the TableauSet's tableaux.
+	 *
+	 * @param ts
+	 *            The TableauSet.
+	 * @param weights
+	 *            One weight per constraint.
+	 */
+	public ErrorTracker(TableauSet ts, double[] weights) {
+		this.ts = ts;
+		this.weights = weights;
+		this.refresh();
+	}
+
+	/**
+	 * Rebuild everything from the current tableaux, frequencies and weights.
+	 */
+	public void refresh() {
+		int n = this.ts.constraintCount();
+		int size = (this.ts.getTableaux() == null) ? 0 : this.ts.size();
+		this.seen = new double[n];
+		System.arraycopy(this.weights, 0, this.seen, 0, n);
+		this.harmonies = new double[size][];
+		this.rivals = new BitSet[size];
+		this.winners = new int[size];
+		this.errors.clear();
+		this.errorCount = 0;
+
+		int[] counts = new int[n];
+		int[][] marks = new int[n][];
+		for (int k = 0; k < n; k++) {
+			marks[k] = new int[4];
+		}
+		for (int t = 0; t < size; t++) {
+			Tableau tabl = this.ts.getTableau(t);
+			int cands = tabl.candidateCount();
+			this.harmonies[t] = new double[cands];
+			this.rivals[t] = new BitSet(cands);
+			this.winners[t] = tabl.getWinnerIndex();
+			Candidate winner = (this.winners[t] < 0) ? null : tabl
+					.getCandidate(this.winners[t]);
+			for (int r = 0; r < cands; r++) {
+				if (winner != null
+						&& Perceptron.isCompared(winner, tabl.getCandidate(r))) {
+					this.rivals[t].set(r);
+				}
+			}
+			for (int k = 0; k < n; k++) {
+				for (int r = 0; r < cands; r++) {
+					Candidate cand = tabl.getCandidate(r);
+					if (k < cand.violationCount() && cand.getViolation(k) != 0) {
+						if (counts[k] == marks[k].length) {
+							int[] grown = new int[2 * counts[k]];
+							System.arraycopy(marks[k], 0, grown, 0, counts[k]);
+							marks[k] = grown;
+						}
+						marks[k][counts[k]++] = t;
+						break;
+					}
+				}
+			}
+			this.recompute(t);
+		}
+		this.columns = new int[n][];
+		for (int k = 0; k < n; k++) {
+			this.columns[k] = new int[counts[k]];
+			System.arraycopy(marks[k], 0, this.columns[k], 0, counts[k]);
+		}
+		this.syncs = 0;
+	}
+
+	/**
+	 * Catch up with the weights: find the constraints whose weight changed
+	 * since the last sync and update the affected tableaux.
+	 *
+	 * @return The number of tableaux in error.
+	 */
+	public int sync() {
+		if (++this.syncs >= REFRESH_INTERVAL) {
+			this.refresh();
+			return this.getErrorCount();
+		}
+		for (int k = 0; k < this.seen.length; k++) {
+			double delta = this.weights[k] - this.seen[k];
+			if (delta != 0) {
+				this.seen[k] = this.weights[k];
+				int[] col = this.columns[k];
+				for (int c = 0; c < col.length; c++) {
+					int t = col[c];
+					Tableau tabl = this.ts.getTableau(t);
+					double[] h = this.harmonies[t];
+					for (int r = 0; r < h.length; r++) {
+						if (k < tabl.getCandidate(r).violationCount()) {
+							h[r] += tabl.getViolation(r, k) * delta;
+						}
+					}
+					this.dirty.set(t);
+				}
+			}
+		}
+		for (int t = this.dirty.nextSetBit(0); t >= 0; t = this.dirty
+				.nextSetBit(t + 1)) {
+			this.check(t);
+		}
+		this.dirty.clear();
+		return this.getErrorCount();
+	}
+
+	/** Recompute the harmonies of tableau t from scratch. */
+	private void recompute(int t) {
+		Tableau tabl = this.ts.getTableau(t);
+		double[] h = this.harmonies[t];
+		int n = this.seen.length;
+		for (int r = 0; r < h.length; r++) {
+			h[r] = tabl.dot(r, this.weights, Math.min(n, tabl.getCandidate(r)
+					.violationCount()));
+		}
+		this.check(t);
+	}
+
+	/** Decide whether tableau t is in error. */
+	private void check(int t) {
+		int w = this.winners[t];
+		boolean error = false;
+		if (w >= 0) {
+			double[] h = this.harmonies[t];
+			BitSet rival = this.rivals[t];
+			for (int r = rival.nextSetBit(0); r >= 0; r = rival.nextSetBit(r + 1)) {
+				if (h[r] < h[w]) {
+					error = true;
+					break;
+				}
+			}
+		}
+		if (error != this.errors.get(t)) {
+			this.errors.set(t, error);
+			this.errorCount += error ? 1 : -1;
+		}
+	}
+
+	/**
+	 * The number of tableaux whose winner is beaten by another candidate, as of the
+	 * last sync.
+	 *
+	 * @return The error count.
+	 */
+	public int getErrorCount() {
+		return this.errorCount;
+	}
+
+	/**
+	 * Whether every tableau's winner is optimal, as of the last sync.
+	 *
+	 * @return true if there are no errors.
+	 */
+	public boolean isConverged() {
+		return (this.errorCount == 0);
+	}
+
+	/**
+	 * Whether tableau t is in error, as of the last sync.
+	 */
+	public boolean isError(int t) {
+		return this.errors.get(t);
+	}
+
+	/**
+	 * The fraction of tableaux with a winner whose winner is optimal.
+	 *
+	 * @return A number between 0 and 1.
+	 */
+	public double getAccuracy() {
+		int scored = 0;
+		for (int t = 0; t < this.winners.length; t++) {
+			if (this.winners[t] >= 0) {
+				scored++;
+			}
+		}
+		if (scored == 0) {
+			return 1.0;
+		}
+		return 1.0 - (double) this.getErrorCount() / scored;
+	}
+
+}
@@ -0,0 +1,243 @@
+package perceptron;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * <p>
+ * Draws an index with probability proportional to its weight. TableauSet uses
+ * this to pick the tableau to learn from, the weight of a tableau being the
+ * total frequency of its winners.
+ * </p>
+ *
+ * <p>
+ * The weights are kept in a Fenwick tree, so changing one weight and drawing
+ * an index both cost O(log n). When the weights stay put for a while (as they
+ * do during learning), an alias table is built and draws become O(1). Any
+ * change to a weight throws the alias table away; it is rebuilt once enough
+ * draws have been made to pay for it.
+ * </p>
+ *
+ * <p>
+ * Not thread-safe for updates. Once prepare() has been called, concurrent
+ * calls to sample() are safe as long as no weight changes.
+ * </p>
+ *
+ * @see TableauSet#randomTableau()
+ */
+class FrequencySampler {
+
+	/*
+	 * ================================================================= Class
+	 * variables
+	 * =================================================================
+	 */
+
+	/** The weights, by index. */
+	private double[] weights = new double[16];
+
+	/** The Fenwick tree over the weights, 1-based. */
+	private double[] tree = new double[17];
+
+	/** The number of indices. */
+	private int size;
+
+	/** The alias table, or null if the weights changed since it was built. */
+	private volatile AliasTable alias;
+
+	/** Draws made through the Fenwick tree since the last change. */
+	private int slowDraws;
+
+	/*
+	 * =================================================================
+	 * Weights
+	 * =================================================================
+	 */
+
+	/** The number of indices. */
+	int size() {
+		return this.size;
+	}
+
+	/** Add a new index with the given weight. */
+	void add(double weight) {
+		if (this.size == this.weights.length) {
+			this.weights = Arrays.copyOf(this.weights, 2 * this.size);
+			this.tree = Arrays.copyOf(this.tree, 2 * this.size + 1);
+		}
+		int i = ++this.size;
+		this.weights[i - 1] = weight;
+		// tree[i] covers (i - lowbit(i), i].
+		this.tree[i] = weight + this.prefix(i - 1) - this.prefix(i - (i & -i));
+		this.changed();
+	}
+
+	/** Change the weight of index i. */
+	void set(int i, double weight) {
+		double delta = weight - this.weights[i];
+		if (delta == 0) {
+			return;
+		}
+		this.weights[i] = weight;
+		for (int j = i + 1; j <= this.size; j += j & -j) {
+			this.tree[j] += delta;
+		}
+		this.changed();
+	}
+
+	/** The weight of index i. */
+	double get(int i) {
+		return this.weights[i];
+	}
+
+	/** The sum of the weights. */
+	double total() {
+		return this.prefix(this.size);
+	}
+
+	/** The sum of the first i weights. */
+	private double prefix(int i) {
+		double sum = 0.0;
+		for (; i > 0; i -= i & -i) {
+			sum += this.tree[i];
+		}
+		return sum;
+	}
+
+	private void changed() {
+		this.alias = null;
+		this.slowDraws = 0;
+	}
+
+	/*
+	 * =================================================================
+	 * Sampling
+	 * =================================================================
+	 */
+
+	/** Build the alias table now rather than on demand. */
+	void prepare() {
+		if (this.alias == null) {
+			this.alias = new AliasTable(this.weights, this.size);
+		}
+	}
+
+	/**
+	 * Draw an index.
+	 *
+	 * @param generator
+	 *            The source of randomness.
+	 * @return An index with positive weight, or -1 if all weights are zero.
+	 */
+	int sample(Random generator) {
+		AliasTable table = this.alias;
+		if (table != null) {
+			return table.sample(generator);
+		}
+		if (++this.slowDraws > this.size) {
+			this.prepare();
+			return this.alias.sample(generator);
+		}
+		return this.search(generator.nextDouble() * this.total());
+	}
+
+	/** Find the index whose cumulative weight range contains target. */
+	private int search(double target) {
+		if (this.total() <= 0) {
+			return -1;
+		}
+		int pos = 0;
+		for (int step = Integer.highestOneBit(this.size); step > 0; step >>= 1) {
+			int next = pos + step;
+			if (next <= this.size && this.tree[next] <= target) {
+				target -= this.tree[next];
+				pos = next;
+			}
+		}
+		// Rounding can walk us past the last positive weight.
+		while (pos >= this.size || this.weights[pos] <= 0) {
+			if (--pos < 0) {
+				return -1;
+			}
+		}
+		return pos;
+	}
+
+	/**
+	 * Vose's alias table: draw a column uniformly, then either keep it or take
+	 * its alias.
+	 */
+	private static final class AliasTable {
+
+		private final double[] prob;
+
+		private final int[] alias;
+
+		private final int n;
+
+		AliasTable(double[] weights, int n) {
+			this.n = n;
+			this.prob = new double[n];
+			this.alias = new int[n];
+			double total = 0.0;
+			int positive = -1;
+			for (int i = 0; i < n; i++) {
+				total += weights[i];
+				if (weights[i] > 0) {
+					positive = i;
+				}
+			}
+			int[] small = new int[n];
+			int[] large = new int[n];
+			int s = 0, l = 0;
+			double[] scaled = new double[n];
+			for (int i = 0; i < n; i++) {
+				scaled[i] = (total > 0) ? weights[i] * n / total : 0.0;
+				if (scaled[i] < 1.0) {
+					small[s++] = i;
+				} else {
+					large[l++] = i;
+				}
+			}
+			while (s > 0 && l > 0) {
+				int less = small[--s];
+				int more = large[--l];
+				this.prob[less] = scaled[less];
+				this.alias[less] = more;
+				scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+				if (scaled[more] < 1.0) {
+					small[s++] = more;
+				} else {
+					large[l++] = more;
+				}
+			}
+			while (l > 0) {
+				int i = large[--l];
+				this.prob[i] = 1.0;
+				this.alias[i] = i;
+			}
+			// Left over from rounding, or everything is zero. A zero weight
+			// must never be drawn, so it points at some positive one.
+			while (s > 0) {
+				int i = small[--s];
+				if (weights[i] > 0) {
+					this.prob[i] = 1.0;
+					this.alias[i] = i;
+				} else {
+					this.prob[i] = 0.0;
+					this.alias[i] = positive;
+				}
+			}
+		}
+
+		int sample(Random generator) {
+			if (this.n == 0) {
+				return -1;
+			}
+			int i = generator.nextInt(this.n);
+			return (generator.nextDouble() < this.prob[i]) ? i
+					: this.alias[i];
+		}
+	}
+
+}
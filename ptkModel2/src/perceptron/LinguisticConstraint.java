@@ -30,9 +30,16 @@ public class LinguisticConstraint {
 
 	// private String constraintFamily ; // mark / faith / ....
 
-	/** The constraint's weight. The default is 10 */
+	/**
+	 * The constraint's weight. The default is 10. Once the constraint has been
+	 * added to a TableauSet, the weight lives in that set's weight vector and
+	 * this field is only used again if the constraint is detached.
+	 */
 	private double weight = 10;
 
+	/** Position in the parent's weight vector, or -1 if not yet added. */
+	private int index = -1;
+
 	private double initialRanking = 0.0;
 	private double noise = 0.0;
 	private boolean useLocalNoise = false;
@@ -66,6 +73,7 @@ public class LinguisticConstraint {
 
 	public void setMarkedness() {
 		this.type = LinguisticConstraint.MARKEDNESS;
+		this.typeChanged();
 	}
 
 	public boolean isIOFaithfulness() {
@@ -74,6 +82,7 @@ public class LinguisticConstraint {
 
 	public void setIOFaithfulness() {
 		this.type = LinguisticConstraint.IOFAITHFULNESS;
+		this.typeChanged();
 	}
 
 	public boolean setNoise(double dbl) {
@@ -88,6 +97,20 @@ public class LinguisticConstraint {
 	public void setUseLocalNoise(boolean b) {
 		this.useLocalNoise = b;
 	}
+
+	/**
+	 * The standard deviation of the evaluation noise for this constraint: its
+	 * own noise if it uses local noise, else the TableauSet's.
+	 * 
+	 * @return The noise, a double.
+	 */
+	public double getNoise() {
+		if (this.useLocalNoise || this.parent == null) {
+			return this.noise;
+		} else {
+			return this.parent.getNoise();
+		}
+	}
 	
 	public boolean isOOFaithfulness() {
 		return (this.type == LinguisticConstraint.OOFAITHFULNESS);
@@ -95,6 +118,7 @@ public class LinguisticConstraint {
 
 	public void setOOFaithfulness() {
 		this.type = LinguisticConstraint.OOFAITHFULNESS;
+		this.typeChanged();
 	}
 
 	public boolean isFaithfulness() {
@@ -108,18 +132,29 @@ public class LinguisticConstraint {
 
 	public boolean setType(int i) {
 		this.type = i;
+		this.typeChanged();
 		return true;
 	}
 
+	/** Tell the TableauSet that its multipliers may have changed. */
+	private void typeChanged() {
+		if (this.index >= 0 && this.parent != null) {
+			this.parent.constraintTypeChanged();
+		}
+	}
+
 	/*
 	 * ================================================================= Weights
 	 * =================================================================
 	 */
 
 	/**
-	 * Get the constraint's weight. return weight A Double.
+	 * Get the constraint's weight. return weight A double.
 	 */
-	public Double getWeight() {
+	public double getWeight() {
+		if (this.index >= 0) {
+			return this.parent.getWeightVector()[this.index];
+		}
 		return this.weight;
 	}
 
@@ -144,11 +179,43 @@ public class LinguisticConstraint {
 	 *            The new weight.
 	 * @return true
 	 */
-	public boolean setWeight(Double weight) {
-		this.weight = weight;
+	public boolean setWeight(double weight) {
+		if (this.index >= 0) {
+			this.parent.getWeightVector()[this.index] = weight;
+		} else {
+			this.weight = weight;
+		}
 		return true;
 	}
 
+	/**
+	 * The position of this constraint in the parent TableauSet's constraint
+	 * list and weight vector.
+	 * 
+	 * @return index The index, or -1 if the constraint hasn't been added.
+	 */
+	public int getIndex() {
+		return this.index;
+	}
+
+	/**
+	 * Called by TableauSet when the constraint is added at position i: the
+	 * weight moves into the set's weight vector.
+	 */
+	void attach(TableauSet ts, int i) {
+		double current = this.getWeight();
+		this.index = -1;
+		this.parent = ts;
+		this.index = i;
+		this.setWeight(current);
+	}
+
+	/** Pull the weight back out of the parent's weight vector. */
+	void detach() {
+		this.weight = this.getWeight();
+		this.index = -1;
+	}
+
 	public double getMinConstraintWeight() {
 		if (this.useLocalMinConstraintWeight) {
 			return this.minConstraintWeight;
@@ -175,6 +242,7 @@ public class LinguisticConstraint {
 	}
 
 	public void setParent(TableauSet tabs) {
+		this.detach();
 		this.parent = tabs;
 	}
 
@@ -286,5 +354,42 @@ public class LinguisticConstraint {
 		this.initialRanking = dbl;
 		return true;
 	}
+
+	/*
+	 * =================================================================
+	 * Raw fields, for CompiledGrammar
+	 * =================================================================
+	 */
+
+	int getType() {
+		return this.type;
+	}
+
+	double getInitialRanking() {
+		return this.initialRanking;
+	}
+
+	/** The local noise, whether or not it is in use. */
+	double getLocalNoise() {
+		return this.noise;
+	}
+
+	boolean isUseLocalNoise() {
+		return this.useLocalNoise;
+	}
+
+	/** The local minimum weight, whether or not it is in use. */
+	double getLocalMinConstraintWeight() {
+		return this.minConstraintWeight;
+	}
+
+	boolean isUseLocalMinConstraintWeight() {
+		return this.useLocalMinConstraintWeight;
+	}
+
+	/** Set the bias as stored, without the sign flip of setBias(double). */
+	void setRawBias(double bias) {
+		this.bias = bias;
+	}
 	
 }
@@ -0,0 +1,203 @@
+package perceptron;
+
+import java.util.Random;
+
+/**
+ * <p>
+ * A fast source of evaluation noise. Gaussian numbers are drawn with the
+ * Ziggurat method of Marsaglia and Tsang (2000) from a xorshift* generator, so
+ * that drawing a number costs a table lookup and a multiplication most of the
+ * time, and never allocates or synchronizes.
+ * </p>
+ *
+ * <p>
+ * This is a java.util.Random, so it can be handed to anything that wants one,
+ * but unlike java.util.Random it is not thread-safe: each thread should use
+ * its own instance, which is what {@link #current()} gives you.
+ * </p>
+ *
+ * @see TableauSet#sampleNoise(double[])
+ */
+public class NoiseGenerator extends Random {
+
+	private static final long serialVersionUID = 1L;
+
+	/*
+	 * ================================================================= Class
+	 * variables
+	 * =================================================================
+	 */
+
+	/** The start of the right tail of the Ziggurat. */
+	private static final double R = 3.442619855899;
+
+	/** Ziggurat tables: the 128 layers, filled in once. */
+	private static final int[] kn = new int[128];
+	private static final double[] wn = new double[128];
+	private static final double[] fn = new double[128];
+
+	static {
+		double m1 = 2147483648.0;
+		double dn = R, tn = dn, vn = 9.91256303526217e-3;
+		double q = vn / Math.exp(-.5 * dn * dn);
+		kn[0] = (int) ((dn / q) * m1);
+		kn[1] = 0;
+		wn[0] = q / m1;
+		wn[127] = dn / m1;
+		fn[0] = 1.0;
+		fn[127] = Math.exp(-.5 * dn * dn);
+		for (int i = 126; i >= 1; i--) {
+			dn = Math.sqrt(-2 * Math.log(vn / dn + Math.exp(-.5 * dn * dn)));
+			kn[i + 1] = (int) ((dn / tn) * m1);
+			tn = dn;
+			fn[i] = Math.exp(-.5 * dn * dn);
+			wn[i] = dn / m1;
+		}
+	}
+
+	/** One generator per thread. */
+	private static final ThreadLocal<NoiseGenerator> perThread = new ThreadLocal<NoiseGenerator>() {
+		protected NoiseGenerator initialValue() {
+			return new NoiseGenerator();
+		}
+	};
+
+	/** The xorshift* state. Never zero. */
+	private long state;
+
+	/*
+	 * =================================================================
+	 * Constructors
+	 * =================================================================
+	 */
+
+	/** A generator seeded from the clock and the current thread. */
+	public NoiseGenerator() {
+		this(System.nanoTime() ^ (Thread.currentThread().getId() << 32));
+	}
+
+	/** A generator with a fixed seed, for reproducible runs. */
+	public NoiseGenerator(long seed) {
+		super(seed); // calls setSeed(seed)
+	}
+
+	/**
+	 * The generator that belongs to the current thread.
+	 *
+	 * @return The thread's NoiseGenerator.
+	 */
+	public static NoiseGenerator current() {
+		return perThread.get();
+	}
+
+	/*
+	 * ================================================================= Random
+	 * numbers
+	 * =================================================================
+	 */
+
+	/**
+	 * Reseed the generator. The seed is scrambled with SplitMix64, so nearby
+	 * seeds (0, 1, 2, ...) give unrelated streams.
+	 */
+	public void setSeed(long seed) {
+		long z = mix(seed);
+		this.state = (z == 0) ? 0x9E3779B97F4A7C15L : z;
+	}
+
+	/**
+	 * One step of SplitMix64: a well-scrambled function of a seed. Use it to
+	 * derive the seeds of many generators from one, e.g.
+	 * mix(seed + mix(i)) for the i-th replication.
+	 */
+	public static long mix(long seed) {
+		long z = seed + 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/** The next 64 random bits. */
+	public long nextLong() {
+		long x = this.state;
+		x ^= x >>> 12;
+		x ^= x << 25;
+		x ^= x >>> 27;
+		this.state = x;
+		return x * 0x2545F4914F6CDD1DL;
+	}
+
+	protected int next(int bits) {
+		return (int) (this.nextLong() >>> (64 - bits));
+	}
+
+	public double nextDouble() {
+		return (this.nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	/** A uniform number in (0, 1], safe to take the log of. */
+	private double nextOpenDouble() {
+		return ((this.nextLong() >>> 11) + 1) * 0x1.0p-53;
+	}
+
+	/**
+	 * A normally distributed number with mean 0 and standard deviation 1.
+	 */
+	public double nextGaussian() {
+		int hz = (int) (this.nextLong() >> 32);
+		int iz = hz & 127;
+		if (Math.abs(hz) < kn[iz]) {
+			return hz * wn[iz];
+		}
+		return this.tail(hz, iz);
+	}
+
+	/** The slow path of nextGaussian(): the tail and the wedges. */
+	private double tail(int hz, int iz) {
+		for (;;) {
+			double x = hz * wn[iz];
+			if (iz == 0) {
+				double y;
+				do {
+					x = -Math.log(this.nextOpenDouble()) / R;
+					y = -Math.log(this.nextOpenDouble());
+				} while (y + y < x * x);
+				return (hz > 0) ? R + x : -R - x;
+			}
+			if (fn[iz] + this.nextDouble() * (fn[iz - 1] - fn[iz]) < Math.exp(-.5
+					* x * x)) {
+				return x;
+			}
+			hz = (int) (this.nextLong() >> 32);
+			iz = hz & 127;
+			if (Math.abs(hz) < kn[iz]) {
+				return hz * wn[iz];
+			}
+		}
+	}
+
+	/*
+	 * ================================================================= Noise
+	 * buffers
+	 * =================================================================
+	 */
+
+	/**
+	 * Fill the first n slots of a buffer with noise of one standard deviation.
+	 *
+	 * @param buffer
+	 *            The buffer to fill.
+	 * @param n
+	 *            How many slots to fill.
+	 * @param stdDev
+	 *            The standard deviation.
+	 * @return buffer
+	 */
+	public double[] fill(double[] buffer, int n, double stdDev) {
+		for (int i = 0; i < n; i++) {
+			buffer[i] = this.nextGaussian() * stdDev;
+		}
+		return buffer;
+	}
+
+}
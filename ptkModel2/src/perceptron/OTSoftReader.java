@@ -0,0 +1,602 @@
+package perceptron;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ * Reads an OTSoft file straight into a TableauSet, in one pass and without
+ * holding on to the text. It reads the same files as getPrunedFile() followed
+ * by readOTSoftFile(ArrayList), and reports the same errors, but the lines are
+ * split at the tabs by hand, the numbers are parsed in place, and each
+ * candidate goes into its tableau as soon as its line has been read. Only the
+ * current line is kept in memory.
+ * </p>
+ *
+ * <p>
+ * As with getPrunedFile(), lines containing "/**" are comments, blank lines
+ * are skipped, and anything in angled brackets is escaped for HTML. The header
+ * lines and the advanced options after [end of tableaux] are handed to the
+ * TableauSet, which reads them as it always has.
+ * </p>
+ *
+ * @see TableauSet#readOTSoftFile(File)
+ */
+public class OTSoftReader {
+
+	/*
+	 * ================================================================= Class
+	 * variables
+	 * =================================================================
+	 */
+
+	private final static int BUFFER_SIZE = 1 << 16;
+
+	/** Powers of ten that are exact doubles. */
+	private final static double[] POWERS_OF_TEN = new double[23];
+
+	static {
+		POWERS_OF_TEN[0] = 1.0;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	/** The largest mantissa that is an exact double. */
+	private final static long MAX_EXACT = 1L << 53;
+
+	private final static Pattern falseTag = Pattern.compile("<([^>]*)>");
+
+	private TableauSet ts;
+
+	/** The current line, without its line terminator. */
+	private char[] line = new char[256];
+
+	private int length;
+
+	/** The number of the current line, counting from 1. */
+	private int lineNumber;
+
+	/** Whether the last character seen was a carriage return. */
+	private boolean afterCR;
+
+	/**
+	 * The fields of the current line: field i runs from start[i] to end[i]
+	 * (exclusive). Field 0 stands for the line number, as in getPrunedFile(),
+	 * so field i is what readOTSoftFile() calls currLine[i].
+	 */
+	private int[] start = new int[16];
+
+	private int[] end = new int[16];
+
+	/** The number of fields, including field 0; trailing empty ones dropped. */
+	private int fields;
+
+	/** The number of non-blank, non-comment lines seen so far. */
+	private int contentLines;
+
+	private String[] header;
+
+	private boolean headerRead;
+
+	private boolean reachedEndOfTableaux;
+
+	private boolean readSuccessfully = true;
+
+	/** The violation marks of the candidate being read. */
+	private double[] marks = new double[16];
+
+	/**
+	 * When reading a chunk for ParallelOTSoftLoader, the tableaux and errors
+	 * read, which go into the TableauSet later; else null.
+	 */
+	private ArrayList<Tableau> chunk;
+
+	private ArrayList<String> chunkErrors;
+
+	/** The tableau that candidates go to before the chunk has one. */
+	private Tableau previous;
+
+	/*
+	 * =================================================================
+	 * Constructor
+	 * =================================================================
+	 */
+
+	/**
+	 * A reader that adds what it reads to the given TableauSet.
+	 *
+	 * @param ts
+	 *            The TableauSet to fill; usually a new one.
+	 */
+	public OTSoftReader(TableauSet ts) {
+		this.ts = ts;
+	}
+
+	/**
+	 * A reader for a chunk of the tableaux of a file whose header the
+	 * TableauSet has already read. What it reads is kept until absorb().
+	 *
+	 * @param ts
+	 *            The TableauSet the tableaux are for.
+	 * @param previous
+	 *            The tableau before the chunk, or null.
+	 * @param firstLine
+	 *            The number of the chunk's first line in the file.
+	 */
+	OTSoftReader(TableauSet ts, Tableau previous, int firstLine) {
+		this.ts = ts;
+		this.previous = previous;
+		this.lineNumber = firstLine - 1;
+		this.contentLines = 2;
+		this.headerRead = true;
+		this.chunk = new ArrayList<Tableau>();
+		this.chunkErrors = new ArrayList<String>();
+	}
+
+	/*
+	 * =================================================================
+	 * Reading
+	 * =================================================================
+	 */
+
+	/**
+	 * Read an OTSoft file, inflating it as it goes if it is compressed.
+	 *
+	 * @param file
+	 *            The file.
+	 * @return true if the file was read correctly, else false; the problems
+	 *         are in the TableauSet's errors.
+	 * @throws IOException
+	 *             If the file can't be read.
+	 */
+	public boolean read(File file) throws IOException {
+		ReadableByteChannel in = CompressedInput.openChannel(file);
+		try {
+			return this.read(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Read an OTSoft file from a channel, in the platform's default encoding.
+	 * The channel is not closed.
+	 *
+	 * @param in
+	 *            The channel.
+	 * @return true if the file was read correctly, else false.
+	 * @throws IOException
+	 *             If the channel can't be read.
+	 */
+	public boolean read(ReadableByteChannel in) throws IOException {
+		CharsetDecoder decoder = Charset.defaultCharset().newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+		boolean eof = false;
+		while (!eof) {
+			eof = (in.read(bytes) < 0);
+			bytes.flip();
+			for (;;) {
+				CoderResult result = decoder.decode(bytes, chars, eof);
+				this.scan(chars);
+				if (result.isUnderflow()) {
+					break;
+				}
+			}
+			bytes.compact();
+		}
+		while (decoder.flush(chars).isOverflow()) {
+			this.scan(chars);
+		}
+		this.scan(chars);
+		if (this.length > 0) {
+			this.endLine(); // the last line had no line terminator
+		}
+		return this.finish();
+	}
+
+	/**
+	 * Read part of a decoded file, which must start at the beginning of a
+	 * line. The parts must be read in order, or setLineNumber() used.
+	 */
+	void read(char[] text, int from, int to) {
+		CharBuffer chars = CharBuffer.wrap(text, from, to - from).slice();
+		chars.position(to - from);
+		this.scan(chars);
+	}
+
+	/** The end of a decoded file. */
+	boolean endOfText() {
+		if (this.length > 0) {
+			this.endLine();
+		}
+		return this.finish();
+	}
+
+	/** The end of a chunk: its last tableau is complete. */
+	void endOfChunk() {
+		if (this.length > 0) {
+			this.endLine();
+		}
+		if (this.chunk.size() > 0) {
+			this.chunk.get(this.chunk.size() - 1).compress();
+		}
+	}
+
+	/**
+	 * Add what a chunk reader has read to the TableauSet: its errors, then
+	 * its tableaux.
+	 */
+	void absorb(OTSoftReader chunkReader) {
+		for (int i = 0; i < chunkReader.chunkErrors.size(); i++) {
+			this.ts.addError(chunkReader.chunkErrors.get(i));
+		}
+		for (int i = 0; i < chunkReader.chunk.size(); i++) {
+			this.ts.addTableau(chunkReader.chunk.get(i));
+		}
+		if (!chunkReader.readSuccessfully) {
+			this.readSuccessfully = false;
+		}
+	}
+
+	/** Make the next line read line n. */
+	void setLineNumber(int n) {
+		this.lineNumber = n - 1;
+	}
+
+	boolean isHeaderRead() {
+		return this.headerRead;
+	}
+
+	/** Cut decoded text into lines. Leaves the buffer empty. */
+	private void scan(CharBuffer chars) {
+		chars.flip();
+		char[] text = chars.array();
+		int from = chars.arrayOffset() + chars.position();
+		int to = chars.arrayOffset() + chars.limit();
+		int run = from;
+		for (int i = from; i < to; i++) {
+			char c = text[i];
+			if (c == '\n' || c == '\r') {
+				this.append(text, run, i);
+				run = i + 1;
+				if (c == '\n' && this.afterCR) {
+					this.afterCR = false; // the second half of \r\n
+				} else {
+					this.endLine();
+					this.afterCR = (c == '\r');
+				}
+			} else {
+				this.afterCR = false;
+			}
+		}
+		this.append(text, run, to);
+		chars.clear();
+	}
+
+	private void append(char[] text, int from, int to) {
+		int n = to - from;
+		if (n <= 0) {
+			return;
+		}
+		if (this.length + n > this.line.length) {
+			char[] longer = new char[Math.max(2 * this.line.length,
+					this.length + n)];
+			System.arraycopy(this.line, 0, longer, 0, this.length);
+			this.line = longer;
+		}
+		System.arraycopy(text, from, this.line, this.length, n);
+		this.length += n;
+	}
+
+	/** Deal with the line that has just been read. */
+	private void endLine() {
+		this.lineNumber++;
+		if (this.isContent()) {
+			this.escapeTags();
+			this.split();
+			this.readLine();
+		}
+		this.length = 0;
+	}
+
+	/** Whether the line is neither blank nor a comment. */
+	private boolean isContent() {
+		return isContent(this.line, 0, this.length);
+	}
+
+	/** Whether text[from..to) is neither blank nor a comment. */
+	static boolean isContent(char[] text, int from, int to) {
+		boolean blank = true;
+		for (int i = from; i < to; i++) {
+			char c = text[i];
+			if (c == '/' && i + 2 < to && text[i + 1] == '*'
+					&& text[i + 2] == '*') {
+				return false;
+			}
+			if (blank && c != ' ' && c != '\t' && c != '\n' && c != 0x0B
+					&& c != '\f' && c != '\r') {
+				blank = false;
+			}
+		}
+		return !blank;
+	}
+
+	/**
+	 * Phonologists tend to put things in angled brackets, and these don't
+	 * show up in HTML output --- they are treated as tags.
+	 */
+	private void escapeTags() {
+		for (int i = 0; i < this.length; i++) {
+			if (this.line[i] == '<') {
+				String escaped = falseTag.matcher(
+						new String(this.line, 0, this.length)).replaceAll(
+						"&lt;$1&gt;");
+				this.length = 0;
+				this.append(escaped.toCharArray(), 0, escaped.length());
+				return;
+			}
+		}
+	}
+
+	/** Split the line at the tabs. */
+	private void split() {
+		int f = 1;
+		int from = 0;
+		for (int i = 0; i <= this.length; i++) {
+			if (i == this.length || this.line[i] == '\t') {
+				if (f == this.start.length) {
+					int[] s = new int[2 * f], e = new int[2 * f];
+					System.arraycopy(this.start, 0, s, 0, f);
+					System.arraycopy(this.end, 0, e, 0, f);
+					this.start = s;
+					this.end = e;
+				}
+				this.start[f] = from;
+				this.end[f] = i;
+				f++;
+				from = i + 1;
+			}
+		}
+		// Like String.split(), drop the empty fields at the end.
+		while (f > 1 && this.start[f - 1] == this.end[f - 1]) {
+			f--;
+		}
+		this.fields = f;
+	}
+
+	/** Read one line of the file. */
+	private void readLine() {
+		this.contentLines++;
+		if (this.contentLines == 1) {
+			this.header = this.toStrings();
+			return;
+		}
+		if (this.contentLines == 2) {
+			this.headerRead = this.ts.readOTSoftHeader(this.header, this
+					.toStrings());
+			if (!this.headerRead) {
+				this.readSuccessfully = false;
+			}
+			return;
+		}
+		if (!this.headerRead) {
+			return;
+		}
+
+		if (this.field(1).equalsIgnoreCase("[end of tableaux]")) {
+			this.reachedEndOfTableaux = true;
+		}
+		if (this.reachedEndOfTableaux) {
+			this.ts.readOTSoftOption(this.toStrings());
+			return;
+		}
+
+		// tab-position 3 is the first place an output can sit
+		if (this.fields < 3) {
+			this.addError("Line no. " + this.lineNumber
+					+ " of you OTSoft file could not be read.");
+			this.readSuccessfully = false;
+		} else if (!this.isEmpty(1)) {
+			/// Found input, make new tableau.
+			Tableau last = this.lastTableau();
+			if (last != null) {
+				// The last tableau is complete.
+				last.compress();
+			}
+			Tableau tableau = new Tableau(this.ts);
+			tableau.setInput(new LinguisticForm(this.field(1)));
+			tableau.addCandidate(this.readCandidate(tableau));
+			this.addTableau(tableau);
+		} else if (this.lastTableau() == null) {
+			this.addError("Line no. " + this.lineNumber
+					+ " in your OTSoft file could not be associated with any input.");
+		} else {
+			/// Add candidate to the last tableau.
+			Tableau tableau = this.lastTableau();
+			tableau.addCandidate(this.readCandidate(tableau));
+		}
+	}
+
+	/** The tableau read last, or null. */
+	private Tableau lastTableau() {
+		if (this.chunk == null) {
+			return (this.ts.size() > 0) ? this.ts.getTableau(this.ts.size() - 1)
+					: null;
+		}
+		return (this.chunk.size() > 0) ? this.chunk.get(this.chunk.size() - 1)
+				: this.previous;
+	}
+
+	private void addTableau(Tableau tableau) {
+		if (this.chunk == null) {
+			this.ts.addTableau(tableau);
+		} else {
+			this.chunk.add(tableau);
+		}
+	}
+
+	private void addError(String error) {
+		if (this.chunk == null) {
+			this.ts.addError(error);
+		} else {
+			this.chunkErrors.add(error);
+		}
+	}
+
+	/** Read a candidate: output, frequency and violation marks. */
+	private Candidate readCandidate(Tableau tableau) {
+		Candidate candidate = new Candidate(tableau);
+		candidate.setOutput(new LinguisticForm(this.trimmedField(2)));
+		if (this.fields > 3) {
+			if (!this.isEmpty(3)) {
+				candidate.setFrequency(this.number(3));
+			}
+		} else {
+			candidate.setFrequency(0);
+		}
+		int count = Math.max(this.fields - 4, this.ts.constraintCount());
+		if (count > this.marks.length) {
+			this.marks = new double[Math.max(count, 2 * this.marks.length)];
+		}
+		int n = 0;
+		for (int i = 4; i < this.fields; i++) {
+			this.marks[n++] = this.number(i);
+		}
+		// Zeros as necessary to make the violation vector as big as the
+		// constraint set.
+		while (n < count) {
+			this.marks[n++] = 0.0;
+		}
+		candidate.setViolations(this.marks, n);
+		return candidate;
+	}
+
+	/** The end of the file. */
+	private boolean finish() {
+		if (this.contentLines < 2) {
+			this.ts.addError("No constraint names were found in your OTSoft file");
+			this.readSuccessfully = false;
+		} else if (this.headerRead && this.ts.size() == 0) {
+			this.ts.addWarning("No tableaux were found in your OTSoft file.");
+		}
+		this.ts.checkOTSoftFile();
+		return this.readSuccessfully;
+	}
+
+	/*
+	 * =================================================================
+	 * Fields
+	 * =================================================================
+	 */
+
+	/** Field i as a string. */
+	private String field(int i) {
+		return new String(this.line, this.start[i], this.end[i]
+				- this.start[i]);
+	}
+
+	/** Field i without leading and trailing white space. */
+	private String trimmedField(int i) {
+		int s = this.trimStart(i), e = this.trimEnd(i);
+		return new String(this.line, s, Math.max(e - s, 0));
+	}
+
+	/** Whether field i is empty once trimmed. */
+	private boolean isEmpty(int i) {
+		return this.trimStart(i) >= this.trimEnd(i);
+	}
+
+	private int trimStart(int i) {
+		int s = this.start[i];
+		while (s < this.end[i] && this.line[s] <= ' ') {
+			s++;
+		}
+		return s;
+	}
+
+	private int trimEnd(int i) {
+		int e = this.end[i];
+		while (e > this.start[i] && this.line[e - 1] <= ' ') {
+			e--;
+		}
+		return e;
+	}
+
+	/** The line as readOTSoftFile() would have split it. */
+	private String[] toStrings() {
+		String[] strings = new String[this.fields];
+		strings[0] = Integer.toString(this.lineNumber);
+		for (int i = 1; i < this.fields; i++) {
+			strings[i] = this.field(i);
+		}
+		return strings;
+	}
+
+	/**
+	 * Field i as a number, the way TableauSet.readDouble() reads it: 0 if it
+	 * isn't one. Plain decimals are parsed in place; anything else goes to
+	 * Double.parseDouble().
+	 */
+	private double number(int i) {
+		int s = this.trimStart(i), e = this.trimEnd(i);
+		if (s >= e) {
+			return 0.0;
+		}
+		int p = s;
+		boolean negative = false;
+		if (this.line[p] == '-' || this.line[p] == '+') {
+			negative = (this.line[p] == '-');
+			p++;
+		}
+		long mantissa = 0;
+		int digits = 0, decimals = 0;
+		boolean point = false;
+		for (; p < e; p++) {
+			char c = this.line[p];
+			if (c >= '0' && c <= '9') {
+				if (digits == 18) {
+					return this.slowNumber(s, e);
+				}
+				mantissa = 10 * mantissa + (c - '0');
+				digits++;
+				if (point) {
+					decimals++;
+				}
+			} else if (c == '.' && !point) {
+				point = true;
+			} else {
+				return this.slowNumber(s, e);
+			}
+		}
+		if (digits == 0 || mantissa > MAX_EXACT
+				|| decimals >= POWERS_OF_TEN.length) {
+			return this.slowNumber(s, e);
+		}
+		// Both are exact, so the one division rounds correctly, just as
+		// Double.parseDouble() would.
+		double value = mantissa / POWERS_OF_TEN[decimals];
+		return negative ? -value : value;
+	}
+
+	private double slowNumber(int s, int e) {
+		try {
+			return Double.parseDouble(new String(this.line, s, e - s));
+		} catch (NumberFormatException exc) {
+			return 0.0;
+		}
+	}
+
+}
@@ -0,0 +1,432 @@
+package perceptron;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <p>
+ * Reads large OTSoft files, and directories of them, on several threads. A
+ * file is decoded whole, then scanned once, quickly, for the lines that start
+ * a tableau; the tableaux between [end of tableaux] and the header are cut
+ * into chunks at such lines, and the chunks are read in parallel by
+ * OTSoftReaders on a ForkJoinPool. The chunks' tableaux are then added to the
+ * TableauSet in the order of the file, with their errors in line order, so the
+ * result is the same as that of OTSoftReader.read(File): the same tableaux,
+ * and the same errors and warnings, with the same line numbers.
+ * </p>
+ *
+ * <p>
+ * The header and the advanced options are read on the calling thread. Files
+ * too small to be worth cutting up, and compressed files, which can't be
+ * inflated in pieces, are read as OTSoftReader reads them.
+ * </p>
+ *
+ * @see OTSoftReader
+ */
+public class ParallelOTSoftLoader {
+
+	/*
+	 * ================================================================= Class
+	 * variables
+	 * =================================================================
+	 */
+
+	/** Files with fewer characters than this are read in one piece. */
+	private final static int MIN_CHUNK = 1 << 18;
+
+	private final static String END_OF_TABLEAUX = "[end of tableaux]";
+
+	private ForkJoinPool pool;
+
+	/** Chunks per thread, so that a slow chunk doesn't hold up the rest. */
+	private int chunksPerThread = 4;
+
+	/** Reads on the common pool. */
+	public ParallelOTSoftLoader() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/** Reads on the given pool. */
+	public ParallelOTSoftLoader(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/*
+	 * =================================================================
+	 * Loading
+	 * =================================================================
+	 */
+
+	/**
+	 * Read an OTSoft file into a new TableauSet. Problems, including a file
+	 * that can't be read at all, are in the TableauSet's errors.
+	 *
+	 * @param file
+	 *            The file.
+	 * @return The TableauSet, named after the file.
+	 */
+	public TableauSet load(File file) {
+		TableauSet ts = new TableauSet();
+		ts.setFileName(file.getPath());
+		try {
+			this.read(file, ts);
+		} catch (IOException e) {
+			ts.addError("Your OTSoft file could not be read: "
+					+ e.getMessage());
+		}
+		return ts;
+	}
+
+	/**
+	 * Read every file in a directory, several at a time.
+	 *
+	 * @param directory
+	 *            The directory.
+	 * @return One TableauSet per file, in the order of the file names.
+	 * @throws IOException
+	 *             If the directory can't be listed.
+	 */
+	public TableauSet[] loadDirectory(File directory) throws IOException {
+		return this.loadDirectory(directory, new FileFilter() {
+			public boolean accept(File file) {
+				return file.isFile() && !file.isHidden();
+			}
+		});
+	}
+
+	/**
+	 * Read the files in a directory that the filter accepts, several at a
+	 * time.
+	 *
+	 * @param directory
+	 *            The directory.
+	 * @param filter
+	 *            Which files to read.
+	 * @return One TableauSet per file, in the order of the file names.
+	 * @throws IOException
+	 *             If the directory can't be listed.
+	 */
+	public TableauSet[] loadDirectory(File directory, FileFilter filter)
+			throws IOException {
+		File[] files = directory.listFiles(filter);
+		if (files == null) {
+			throw new IOException("The directory " + directory
+					+ " could not be read.");
+		}
+		Arrays.sort(files);
+		return this.loadAll(files);
+	}
+
+	/**
+	 * Read several OTSoft files at once.
+	 *
+	 * @param files
+	 *            The files.
+	 * @return One TableauSet per file, in the same order.
+	 */
+	public TableauSet[] loadAll(File[] files) {
+		TableauSet[] sets = new TableauSet[files.length];
+		List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+		for (int i = 0; i < files.length; i++) {
+			tasks.add(new FileTask(files[i], sets, i));
+		}
+		this.invokeAll(tasks);
+		return sets;
+	}
+
+	/**
+	 * Read an OTSoft file into a TableauSet, as OTSoftReader.read(File) does.
+	 *
+	 * @param file
+	 *            The file.
+	 * @param ts
+	 *            The TableauSet to fill; usually a new one.
+	 * @return true if the file was read correctly, else false; the problems
+	 *         are in the TableauSet's errors.
+	 * @throws IOException
+	 *             If the file can't be read.
+	 */
+	public boolean read(File file, TableauSet ts) throws IOException {
+		if (file.length() < MIN_CHUNK || file.length() > Integer.MAX_VALUE
+				|| CompressedInput.isCompressed(file)) {
+			return new OTSoftReader(ts).read(file);
+		}
+		CharBuffer decoded = decode(file);
+		char[] text = decoded.array();
+		int from = decoded.arrayOffset() + decoded.position();
+		int to = decoded.arrayOffset() + decoded.limit();
+
+		// The header: the first two lines that aren't blank or comments.
+		OTSoftReader reader = new OTSoftReader(ts);
+		LineScanner lines = new LineScanner(text, from, to);
+		int contentLines = 0;
+		while (contentLines < 2 && lines.next()) {
+			if (OTSoftReader.isContent(text, lines.start, lines.end)) {
+				contentLines++;
+			}
+		}
+		reader.read(text, from, lines.next);
+		if (!reader.isHeaderRead()) {
+			// Nothing after a bad header is read; let the reader skip it.
+			reader.read(text, lines.next, to);
+			return reader.endOfText();
+		}
+
+		// The tableaux, cut into chunks at the start of a tableau.
+		int parts = Math.max(1, this.pool.getParallelism()
+				* this.chunksPerThread);
+		int chunkSize = Math.max(MIN_CHUNK / 4, (to - lines.next) / parts);
+		List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+		List<OTSoftReader> readers = new ArrayList<OTSoftReader>();
+		int chunkStart = lines.next, chunkLine = lines.number + 1;
+		int tail = to, tailLine = -1;
+		while (lines.next()) {
+			if (!lines.startsTableau() && !lines.endsTableaux()) {
+				continue;
+			}
+			if (!OTSoftReader.isContent(text, lines.start, lines.end)) {
+				continue;
+			}
+			if (lines.endsTableaux()) {
+				tail = lines.start;
+				tailLine = lines.number;
+				break;
+			}
+			if (lines.start - chunkStart >= chunkSize) {
+				this.addChunk(ts, text, chunkStart, lines.start, chunkLine,
+						tasks, readers);
+				chunkStart = lines.start;
+				chunkLine = lines.number;
+			}
+		}
+		this.addChunk(ts, text, chunkStart, tail, chunkLine, tasks, readers);
+		this.invokeAll(tasks);
+		for (int i = 0; i < readers.size(); i++) {
+			reader.absorb(readers.get(i));
+		}
+
+		// The advanced options, if any.
+		if (tailLine > 0) {
+			reader.setLineNumber(tailLine);
+			reader.read(text, tail, to);
+		}
+		return reader.endOfText();
+	}
+
+	private void addChunk(TableauSet ts, char[] text, int from, int to,
+			int firstLine, List<RecursiveAction> tasks,
+			List<OTSoftReader> readers) {
+		// Lines before the first input of the file belong to the last
+		// tableau already in the set, if there is one.
+		Tableau previous = null;
+		if (readers.isEmpty() && ts.size() > 0) {
+			previous = ts.getTableau(ts.size() - 1);
+		}
+		OTSoftReader chunkReader = new OTSoftReader(ts, previous, firstLine);
+		readers.add(chunkReader);
+		tasks.add(new ChunkTask(chunkReader, text, from, to));
+	}
+
+	/** Run the tasks, on the pool, and wait for them all. */
+	private void invokeAll(final List<RecursiveAction> tasks) {
+		if (ForkJoinTask.inForkJoinPool()) {
+			ForkJoinTask.invokeAll(tasks);
+		} else {
+			this.pool.invoke(new RecursiveAction() {
+				protected void compute() {
+					ForkJoinTask.invokeAll(tasks);
+				}
+			});
+		}
+	}
+
+	/** A whole file, decoded as OTSoftReader decodes it. */
+	private static CharBuffer decode(File file) throws IOException {
+		CharsetDecoder decoder = Charset.defaultCharset().newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY,
+					0, channel.size());
+			return decoder.decode(bytes);
+		} finally {
+			in.close();
+		}
+	}
+
+	/*
+	 * =================================================================
+	 * Getters and setters
+	 * =================================================================
+	 */
+
+	/**
+	 * How many chunks to cut a file into per thread of the pool. More chunks
+	 * balance the threads better, but each costs a little to stitch.
+	 */
+	public boolean setChunksPerThread(int chunksPerThread) {
+		this.chunksPerThread = Math.max(1, chunksPerThread);
+		return true;
+	}
+
+	public int getChunksPerThread() {
+		return this.chunksPerThread;
+	}
+
+	public ForkJoinPool getPool() {
+		return this.pool;
+	}
+
+	/*
+	 * =================================================================
+	 * Helpers
+	 * =================================================================
+	 */
+
+	/**
+	 * Finds the lines of decoded text as OTSoftReader counts them: \n, \r and
+	 * \r\n each end a line.
+	 */
+	private static class LineScanner {
+
+		final char[] text;
+
+		final int to;
+
+		/** The current line runs from start to end; the next starts at next. */
+		int start, end, next;
+
+		/** The number of the current line, counting from 1. */
+		int number;
+
+		LineScanner(char[] text, int from, int to) {
+			this.text = text;
+			this.to = to;
+			this.next = from;
+		}
+
+		/** Move to the next line; false at the end of the text. */
+		boolean next() {
+			if (this.next >= this.to) {
+				return false;
+			}
+			this.start = this.next;
+			int i = this.start;
+			while (i < this.to && this.text[i] != '\n' && this.text[i] != '\r') {
+				i++;
+			}
+			this.end = i;
+			if (i < this.to && this.text[i] == '\r' && i + 1 < this.to
+					&& this.text[i + 1] == '\n') {
+				i++;
+			}
+			this.next = Math.min(i + 1, this.to);
+			this.number++;
+			return true;
+		}
+
+		/** The end of the first field: the input. */
+		private int inputEnd() {
+			int i = this.start;
+			while (i < this.end && this.text[i] != '\t') {
+				i++;
+			}
+			return i;
+		}
+
+		/**
+		 * Whether the line, if it is content, starts a tableau: it has an
+		 * input, and something after it for the output.
+		 */
+		boolean startsTableau() {
+			int tab = this.inputEnd();
+			boolean input = false;
+			for (int i = this.start; i < tab; i++) {
+				if (this.text[i] > ' ') {
+					input = true;
+					break;
+				}
+			}
+			if (!input) {
+				return false;
+			}
+			for (int i = tab + 1; i < this.end; i++) {
+				if (this.text[i] != '\t') {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/** Whether the line is [end of tableaux]. */
+		boolean endsTableaux() {
+			int n = this.inputEnd() - this.start;
+			return n == END_OF_TABLEAUX.length()
+					&& END_OF_TABLEAUX.regionMatches(true, 0, new String(
+							this.text, this.start, n), 0, n);
+		}
+	}
+
+	/** Reads a chunk of a file. */
+	private static class ChunkTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final OTSoftReader reader;
+
+		private final char[] text;
+
+		private final int from, to;
+
+		ChunkTask(OTSoftReader reader, char[] text, int from, int to) {
+			this.reader = reader;
+			this.text = text;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			this.reader.read(this.text, this.from, this.to);
+			this.reader.endOfChunk();
+		}
+	}
+
+	/** Reads one of several files. */
+	private class FileTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final File file;
+
+		private final TableauSet[] sets;
+
+		private final int index;
+
+		FileTask(File file, TableauSet[] sets, int index) {
+			this.file = file;
+			this.sets = sets;
+			this.index = index;
+		}
+
+		protected void compute() {
+			this.sets[this.index] = load(this.file);
+		}
+	}
+
+}
@@ -11,7 +11,6 @@ import java.io.*;
 import java.util.regex.*;
 import java.math.*;
 
-import model.systemicSimplicity.Main;
 /**
  * Stuff to add: Evaluation Noise Initial plasticity Replications per Plasticity
  * Plasticity decrement Number of Plasticities Relative Plasticity Spreading
@@ -20,30 +19,200 @@ import model.systemicSimplicity.Main;
  */
 public final class Perceptron {
 
-	private static TableauSet ts;
+	private TableauSet ts;
+
+	/**
+	 * The weights being learned, one per constraint, or null to learn the
+	 * TableauSet's own weights (so that learning shows up in the
+	 * constraints).
+	 */
+	private double[] weights;
+
+	/** Where this learner gets its random numbers. */
+	private Random generator;
 
 	/**
 	 * This is the parameter that defines whether or not there will be
 	 * evaluation noise.
 	 */
-	private static boolean withNoise;
-	private static double stdDev;
+	private boolean withNoise;
 
-	public Perceptron(String OTSoftFileName) {
-		// Some preliminary work on the file.
-		ArrayList<String> OTSoftFile = getPrunedFile(OTSoftFileName);
+	/**
+	 * The evaluation noise for the current learning step, one value per
+	 * constraint. Reused from step to step.
+	 */
+	private double[] noise;
 
-		// Make a TableauSet from the OTSoft file.
+	/**
+	 * Frequencies of this learner's own, by tableau and then candidate row,
+	 * or null to learn from the TableauSet's. A null row leaves that tableau
+	 * with the TableauSet's frequencies. See setFrequencies().
+	 */
+	private double[][] frequencies;
+
+	/**
+	 * Picks the tableau to learn from under this learner's own frequencies;
+	 * made when first needed.
+	 */
+	private FrequencySampler sampler;
+
+	public Perceptron(String OTSoftFileName) {
+		// Make a TableauSet from the OTSoft file, after some preliminary
+		// work on the file. If it can't be read, ts says so.
 		ts = new TableauSet();
+		ArrayList<String> OTSoftFile = getPrunedFile(OTSoftFileName, ts);
 		ts.readOTSoftFile(OTSoftFile);
+		generator = new NoiseGenerator();
 		withNoise = true;
 	}
 
 	public Perceptron(TableauSet input) {
 		ts = input;
+		generator = new NoiseGenerator();
 		withNoise = true;
 	}
 
+	/**
+	 * A learner with weights and random numbers of its own, so that any
+	 * number of learners can share one TableauSet, even across threads. The
+	 * TableauSet is only read (call prepareSampler() on it first).
+	 * 
+	 * @param input
+	 *            The tableaux to learn from.
+	 * @param weights
+	 *            The starting weights, one per constraint; learning changes
+	 *            this array.
+	 * @param seed
+	 *            The seed of this learner's NoiseGenerator.
+	 */
+	public Perceptron(TableauSet input, double[] weights, long seed) {
+		ts = input;
+		this.weights = weights;
+		generator = new NoiseGenerator(seed);
+		withNoise = true;
+	}
+
+	public TableauSet getTableauSet() {
+		return ts;
+	}
+
+	/**
+	 * The weights being learned: the TableauSet's own, unless the learner
+	 * was given its own.
+	 */
+	public double[] getWeights() {
+		return (weights == null) ? ts.getWeightVector() : weights;
+	}
+
+	public boolean setWithNoise(boolean withNoise) {
+		this.withNoise = withNoise;
+		return true;
+	}
+
+	public boolean isWithNoise() {
+		return withNoise;
+	}
+
+	/**
+	 * Learn from frequencies of this learner's own rather than from those of
+	 * the TableauSet, which is left alone: this is how learners that share a
+	 * frozen TableauSet can each hear different data. The array is not
+	 * copied; after changing the frequencies of a tableau in it, call
+	 * frequenciesChanged().
+	 * 
+	 * @param frequencies
+	 *            For each tableau, the frequency of each candidate row, or
+	 *            null for the TableauSet's frequencies of that tableau. Null
+	 *            for the TableauSet's frequencies throughout.
+	 */
+	public boolean setFrequencies(double[][] frequencies) {
+		this.frequencies = frequencies;
+		this.sampler = null;
+		return true;
+	}
+
+	public double[][] getFrequencies() {
+		return frequencies;
+	}
+
+	/**
+	 * Take note that this learner's frequencies of tableau t have changed.
+	 */
+	public void frequenciesChanged(int t) {
+		if (sampler != null && t < sampler.size()) {
+			sampler.set(t, winnerMass(t));
+		}
+	}
+
+	/**
+	 * The frequency of candidate r of tableau t that this learner learns
+	 * from.
+	 */
+	public double getFrequency(int t, int r) {
+		if (frequencies != null && t < frequencies.length
+				&& frequencies[t] != null) {
+			return frequencies[t][r];
+		}
+		return ts.getTableau(t).getCandidate(r).getFrequency();
+	}
+
+	/**
+	 * A tableau drawn in proportion to the summed frequency of its winners,
+	 * under this learner's frequencies.
+	 * 
+	 * @return The tableau, or null if there are no winners.
+	 */
+	public Tableau randomTableau() {
+		if (frequencies == null) {
+			return ts.randomTableau(generator);
+		}
+		if (sampler == null || sampler.size() != ts.size()) {
+			FrequencySampler fresh = new FrequencySampler();
+			for (int t = 0; t < ts.size(); t++) {
+				fresh.add(winnerMass(t));
+			}
+			sampler = fresh;
+		}
+		int t = sampler.sample(generator);
+		return (t < 0) ? null : ts.getTableau(t);
+	}
+
+	/**
+	 * The first winner of a tableau of the TableauSet under this learner's
+	 * frequencies: the first candidate with a positive one.
+	 * 
+	 * @return The winner, or null if there is none.
+	 */
+	public Candidate getWinner(Tableau tableau) {
+		int t = tableau.getIndex();
+		if (frequencies == null || t < 0 || t >= frequencies.length
+				|| frequencies[t] == null) {
+			return tableau.getWinner();
+		}
+		double[] row = frequencies[t];
+		for (int r = 0; r < row.length; r++) {
+			if (row[r] > 0) {
+				return tableau.getCandidate(r);
+			}
+		}
+		return null;
+	}
+
+	/** The summed frequency of the winners of tableau t, for the sampler. */
+	private double winnerMass(int t) {
+		if (t >= frequencies.length || frequencies[t] == null) {
+			return ts.getTableau(t).getWinnerMass();
+		}
+		double mass = 0.0;
+		double[] row = frequencies[t];
+		for (int r = 0; r < row.length; r++) {
+			if (row[r] > 0) {
+				mass += row[r];
+			}
+		}
+		return mass;
+	}
+
 	/**
 	 * public static void main(String[] args) throws Exception{
 	 * 
@@ -51,137 +220,136 @@ public final class Perceptron {
 	 * (args != null && args.length > 0) OTSoftFileName = args[0]; }
 	 */
 
+	/**
+	 * A single learning step at a plasticity of 0.1. For longer runs, and
+	 * for their learning curves, see Trainer and TrajectoryRecorder.
+	 */
 	public void perceptronSolve() {
-		String newline = System.getProperty("line.separator");
 		int iterations = 1; // make this a parameter later
-		//int interval = 25; // this too
-		// ArrayList<LinguisticConstraint> currentCon = ts.getConstraints();
-		/*
-		 * File output = new File("output.txt");
-		 * 
-		 * //Write out the first line of the output file try { BufferedWriter
-		 * out = new BufferedWriter(new FileWriter(output)); String line = "\t";
-		 * for(int i = 0; i < ts.getConstraints().size(); i++){ line +=
-		 * ts.getConstraint(i) + "\t"; } line += newline; out.write(line);
-		 * //out.close();
-		 */
-
 		for (int i = 0; i < iterations; i++) {
-			/*
-			 * //Write the weights to the output file if((i + 1) % interval ==
-			 * 0){ line = (i + 1) + "\t"; //adjust the line number, which is one
-			 * more than the counter for(int j = 0; j <
-			 * ts.getConstraints().size(); j++){ line +=
-			 * ts.getConstraint(j).getRoundedWeight() + "\t"; } line += newline;
-			 * out.write(line); }
-			 */
-			Tableau currentTableau = ts.randomTableau();
-			Candidate winner = currentTableau.getWinners().get(0); // there
-																	// should
-																	// only be
-																	// one
-																	// winner
-			// DEBUG
-			// System.out.println(winner);
-
-			for (int j = 0; j < currentTableau.candidateCount(); j++) {
-				Candidate loser = currentTableau.getCandidate(j);
-				// System.out.println(loser);
-				if (!(winner.getName().equals(loser.getName()))) { // sanity
-																	// check
-					if (withNoise) {
-						// TODO
-						if (winner.getWeightWithNoise(1) > loser
-								.getWeightWithNoise(1)) {
-							// DEBUG
-							// System.out.println("learning...");
-							perceptronLearn(winner, loser);
-						}
-					} else if (winner.getWeight() > loser.getWeight()) {
+			perceptronStep(0.1);
+		}
+	}
+
+	/**
+	 * One learning step: pick a tableau in proportion to the frequency of its
+	 * winners, and learn from every candidate that beats its first winner,
+	 * other than the winner and its homophones. Other attested winners are
+	 * compared too, so in a tableau with free variation the first winner
+	 * keeps pulling the weights its way.
+	 * 
+	 * @param plasticity
+	 *            The learning rate for this step.
+	 * @return The number of updates made; 0 if the winner won.
+	 */
+	public int perceptronStep(double plasticity) {
+		Tableau currentTableau = randomTableau();
+		if (currentTableau == null) {
+			return 0; // nothing has a frequency
+		}
+		Candidate winner = getWinner(currentTableau); // there should
+														// only be one
+														// winner
+		// DEBUG
+		// System.out.println(winner);
+
+		if (withNoise) {
+			noise = ts.sampleNoise(noise, generator);
+		}
+
+		double[] weights = getWeights();
+		int updates = 0;
+		for (int j = 0; j < currentTableau.candidateCount(); j++) {
+			Candidate loser = currentTableau.getCandidate(j);
+			// System.out.println(loser);
+			if (isCompared(winner, loser)) { // sanity check
+				if (withNoise) {
+					if (winner.getWeightWithNoise(weights, noise) > loser
+							.getWeightWithNoise(weights, noise)) {
+						// DEBUG
 						// System.out.println("learning...");
-						perceptronLearn(winner, loser);
+						perceptronLearn(winner, loser, plasticity);
+						updates++;
 					}
-
+				} else if (winner.getWeight(weights) > loser
+						.getWeight(weights)) {
+					// System.out.println("learning...");
+					perceptronLearn(winner, loser, plasticity);
+					updates++;
 				}
+
 			}
 		}
-		// out.close();
-		// }// catch (IOException e) {
-		// e.printStackTrace();
-		// }
-
-		// Iterator test = ts.getConstraints().iterator();
-		// while(test.hasNext()){
-		// LinguisticConstraint jjjjj = (LinguisticConstraint)test.next();
-		// System.out.println(jjjjj);
-		// }
-		// return ts;
-	}
-
-	public static void perceptronLearn(Candidate winner, Candidate loser) {
-		// decay
-		double n = 0.1;
-		Iterator winnerViol = winner.getViolationVector().iterator();
-		Iterator loserViol = loser.getViolationVector().iterator();
-
-		Iterator conIter = ts.getConstraints().iterator();
-		while (winnerViol.hasNext()) {
-			LinguisticConstraint currentCon = (LinguisticConstraint) conIter
-					.next();
-			double multiplier = 1.0;
-			if (currentCon.isMarkedness())
-				multiplier = ts.getMarkMultiplier();
-			if (currentCon.isIOFaithfulness())
-				multiplier = ts.getIOFaithMultiplier();
-			if (currentCon.isOOFaithfulness())
-				multiplier = ts.getOOFaithMultiplier();
-
-			Cell c = (Cell) winnerViol.next();
-			currentCon.setWeight(currentCon.getWeight() - c.getViolation() * n
-					* multiplier);
-			// System.out.println(multiplier);
-			// System.out.println(currentCon.getWeight());
-		}
-		conIter = ts.getConstraints().iterator();
-		while (loserViol.hasNext()) {
-			LinguisticConstraint currentCon = (LinguisticConstraint) conIter
-					.next();
-			double multiplier = 1.0;
-			if (currentCon.isMarkedness())
-				multiplier = ts.getMarkMultiplier();
-			if (currentCon.isIOFaithfulness())
-				multiplier = ts.getIOFaithMultiplier();
-			if (currentCon.isOOFaithfulness())
-				multiplier = ts.getOOFaithMultiplier();
-
-			Cell c = (Cell) loserViol.next();
-			// System.out.println("Current Constraint:" + currentCon.getName());
-			// System.out.println("Current weight:" + currentCon.getWeight());
-			// System.out.println("New weight:" + (currentCon.getWeight() +
-			// c.getViolation()*n*multiplier));
-			// System.out.println("-----");
-			currentCon.setWeight(currentCon.getWeight() + c.getViolation() * n
-					* multiplier);
-			// System.out.println(multiplier);
-			// System.out.println(currentCon.getWeight());
-		}
+		return updates;
+	}
+
+	/**
+	 * Whether a learning step compares a candidate with the winner: every
+	 * candidate is, winners included, except the winner itself and the
+	 * candidates with the same output.
+	 * 
+	 * @see ErrorTracker
+	 */
+	static boolean isCompared(Candidate winner, Candidate cand) {
+		return !winner.getName().equals(cand.getName());
+	}
+
+	public void perceptronLearn(Candidate winner, Candidate loser) {
+		perceptronLearn(winner, loser, 0.1);
+	}
 
+	/**
+	 * Move the weights so that the loser gets less harmonic and the winner
+	 * more: each weight moves by the loser's mark minus the winner's, times
+	 * the plasticity and the multiplier of the constraint's family. Only the
+	 * constraints on which the two differ are touched; for two candidates of
+	 * the same tableau the difference is compiled once and reused.
+	 * 
+	 * @param plasticity
+	 *            How far to move them.
+	 */
+	public void perceptronLearn(Candidate winner, Candidate loser,
+			double plasticity) {
+		double[] weights = getWeights();
+		Tableau tableau = winner.getParent();
+		if (tableau != null && tableau == loser.getParent()
+				&& tableau.getParent() == ts && winner.getRow() >= 0
+				&& loser.getRow() >= 0) {
+			tableau.learn(winner.getRow(), loser.getRow(), plasticity, weights);
+			return;
+		}
+		double[] multipliers = ts.getMultiplierVector();
+		int count = ts.constraintCount();
+		loser.addScaledTo(plasticity, multipliers, weights, count);
+		winner.addScaledTo(-plasticity, multipliers, weights, count);
 	}
 
 	public static ArrayList<String> getPrunedFile(String fileName) {
+		return getPrunedFile(fileName, null);
+	}
+
+	/**
+	 * The contentful lines of a file, compressed or not, numbered; lines
+	 * starting with ', $, / or # are comments.
+	 * 
+	 * @param fileName
+	 *            The file.
+	 * @param ts
+	 *            Where to report a file that can't be read, or null to print
+	 *            the problem.
+	 */
+	public static ArrayList<String> getPrunedFile(String fileName,
+			TableauSet ts) {
 
 		Pattern pat1 = Pattern.compile("^[^\\'\\$\\/\\#]");
 		Pattern pat2 = Pattern.compile("^\\s*$");
 
 		ArrayList<String> OTsoftfile = new ArrayList<String>();
 
-		File OTSoft = new File(fileName);
-		if (OTSoft.exists() && OTSoft.isFile() && OTSoft.canRead()) {
-
+		try {
+			BufferedReader input = CompressedInput.openReader(new File(
+					fileName));
 			try {
-
-				BufferedReader input = new BufferedReader(
-						new FileReader(OTSoft));
 				String line = null;
 				int line_number = 0;
 				while ((line = input.readLine()) != null) {
@@ -193,15 +361,11 @@ public final class Perceptron {
 						OTsoftfile.add(line_number + "\t" + line);
 					}
 				}
-			} catch (FileNotFoundException ex) {
-				ex.printStackTrace();
-			} catch (IOException ex) {
-				ex.printStackTrace();
+			} finally {
+				input.close();
 			}
-
-		} else {
-
-			// System.out.println("File not found, or could not be read.");
+		} catch (IOException ex) {
+			TableauSet.reportUnreadable(ts, ex);
 		}
 
 		return OTsoftfile;
@@ -0,0 +1,126 @@
+package perceptron;
+
+/**
+ * <p>
+ * How the plasticity (learning rate) changes over a learning run, in the
+ * terms OTSoft uses: learning goes through a number of plasticities, starting
+ * at the initial plasticity, with a fixed number of learning steps
+ * ("replications") at each one. After each stage the plasticity goes down by
+ * the decrement, either by subtracting it (LINEAR) or by multiplying by it
+ * (GEOMETRIC).
+ * </p>
+ *
+ * <pre>
+ * initial plasticity          2.0
+ * plasticity decrement        0.5       (LINEAR)
+ * number of plasticities      4
+ * replications / plasticity   1000
+ *
+ * steps 0-999: 2.0, 1000-1999: 1.5, 2000-2999: 1.0, 3000-3999: 0.5
+ * </pre>
+ *
+ * @see Trainer
+ */
+public class PlasticitySchedule {
+
+	public final static int LINEAR = 0;
+	public final static int GEOMETRIC = 1;
+
+	private double initialPlasticity;
+	private double decrement;
+	private int numberOfPlasticities;
+	private long replicationsPerPlasticity;
+	private int type;
+
+	/**
+	 * Build a schedule.
+	 *
+	 * @param initial
+	 *            The plasticity of the first stage.
+	 * @param decrement
+	 *            How much the plasticity goes down after each stage.
+	 * @param plasticities
+	 *            The number of stages.
+	 * @param replications
+	 *            The number of learning steps per stage.
+	 * @param type
+	 *            LINEAR or GEOMETRIC.
+	 */
+	public PlasticitySchedule(double initial, double decrement,
+			int plasticities, long replications, int type) {
+		this.initialPlasticity = initial;
+		this.decrement = decrement;
+		this.numberOfPlasticities = plasticities;
+		this.replicationsPerPlasticity = replications;
+		this.type = type;
+	}
+
+	/**
+	 * A schedule that keeps the same plasticity for the given number of steps.
+	 */
+	public static PlasticitySchedule constant(double plasticity, long steps) {
+		return new PlasticitySchedule(plasticity, 0.0, 1, steps, LINEAR);
+	}
+
+	/**
+	 * The plasticity at a given step.
+	 *
+	 * @param step
+	 *            The step, counting from 0.
+	 * @return The plasticity, or 0 once the schedule has run out.
+	 */
+	public double getPlasticity(long step) {
+		if (this.replicationsPerPlasticity <= 0) {
+			return 0.0;
+		}
+		long stage = step / this.replicationsPerPlasticity;
+		if (stage >= this.numberOfPlasticities) {
+			return 0.0;
+		}
+		double plasticity;
+		if (this.type == GEOMETRIC) {
+			plasticity = this.initialPlasticity
+					* Math.pow(this.decrement, stage);
+		} else {
+			plasticity = this.initialPlasticity - stage * this.decrement;
+		}
+		return Math.max(plasticity, 0.0);
+	}
+
+	/**
+	 * The number of steps in the whole schedule.
+	 *
+	 * @return numberOfPlasticities * replicationsPerPlasticity
+	 */
+	public long getTotalSteps() {
+		return this.numberOfPlasticities * this.replicationsPerPlasticity;
+	}
+
+	public double getInitialPlasticity() {
+		return this.initialPlasticity;
+	}
+
+	public double getDecrement() {
+		return this.decrement;
+	}
+
+	public int getNumberOfPlasticities() {
+		return this.numberOfPlasticities;
+	}
+
+	public long getReplicationsPerPlasticity() {
+		return this.replicationsPerPlasticity;
+	}
+
+	public int getType() {
+		return this.type;
+	}
+
+	public String toString() {
+		return "initial plasticity " + this.initialPlasticity + ", decrement "
+				+ this.decrement + (this.type == GEOMETRIC ? " (geometric)" : "")
+				+ ", " + this.numberOfPlasticities + " plasticities x "
+				+ this.replicationsPerPlasticity + " replications";
+	}
+
+}
@@ -0,0 +1,270 @@
+package perceptron;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>
+ * Recursive Constraint Demotion (Tesar and Smolensky) over ERCs packed as
+ * bitsets. The top stratum is made of the constraints that no ERC prefers
+ * the loser on; the ERCs it has a W for are accounted for and set aside; and
+ * so on down, until every ERC is accounted for, or no constraint is left that
+ * can be ranked. The remaining constraints then form the bottom stratum.
+ * </p>
+ *
+ * <p>
+ * A stratum takes one pass over the ERCs still left, with word-wide OR to
+ * gather their L's and AND to find which of them the stratum accounts for.
+ * An ERC with no W and no L asks nothing of the ranking and is ignored.
+ * </p>
+ *
+ * <pre>
+ * RecursiveConstraintDemotion rcd = new RecursiveConstraintDemotion(ts
+ * 		.constraintCount());
+ * if (rcd.rank(ercs)) {
+ * 	int[] strata = rcd.getStrata(); // 1 for the top stratum
+ * } else {
+ * 	ArrayList&lt;ERC&gt; trouble = rcd.getUnresolved();
+ * }
+ * </pre>
+ *
+ * <p>
+ * An instance keeps its scratch space from run to run; it is not for use by
+ * several threads at once.
+ * </p>
+ *
+ * @see ERC#getWMask()
+ * @see ComparativeTableau#rank()
+ */
+public class RecursiveConstraintDemotion {
+
+	/*
+	 * ================================================================= Class
+	 * variables
+	 * =================================================================
+	 */
+
+	private int constraintCount;
+
+	private int words;
+
+	private long[] unranked;
+
+	private long[] losers;
+
+	private long[] stratum;
+
+	/** The indices of the ERCs not yet accounted for. */
+	private int[] alive = new int[16];
+
+	private int aliveCount;
+
+	/** The stratum of each constraint, from 1; 0 if it couldn't be ranked. */
+	private int[] strata;
+
+	private int stratumCount;
+
+	/** The ERCs of the last call to rank(), if that's how it was run. */
+	private List<ERC> ercs;
+
+	/** Masks gathered by rank(). */
+	private long[][] w = new long[16][], l = new long[16][];
+
+	/**
+	 * An engine for the given number of constraints.
+	 *
+	 * @param constraintCount
+	 *            The number of constraints; ERCs may have more marks, but
+	 *            only these constraints are ranked.
+	 */
+	public RecursiveConstraintDemotion(int constraintCount) {
+		this.constraintCount = constraintCount;
+		this.words = (constraintCount + 63) >>> 6;
+		this.unranked = new long[this.words];
+		this.losers = new long[this.words];
+		this.stratum = new long[this.words];
+		this.strata = new int[constraintCount];
+	}
+
+	/*
+	 * =================================================================
+	 * Ranking
+	 * =================================================================
+	 */
+
+	/**
+	 * Rank the constraints so that every ERC is satisfied, if that can be
+	 * done.
+	 *
+	 * @param ercs
+	 *            The ERCs.
+	 * @return true if a ranking was found; getStrata() has it. Else
+	 *         getUnresolved() has the ERCs that couldn't be accounted for.
+	 */
+	public boolean rank(List<ERC> ercs) {
+		int n = ercs.size();
+		if (this.w.length < n) {
+			this.w = new long[Math.max(n, 2 * this.w.length)][];
+			this.l = new long[this.w.length][];
+		}
+		for (int e = 0; e < n; e++) {
+			ERC erc = ercs.get(e);
+			this.w[e] = erc.getWMask();
+			this.l[e] = erc.getLMask();
+		}
+		boolean ranked = this.run(this.w, this.l, n);
+		this.ercs = ercs;
+		return ranked;
+	}
+
+	/**
+	 * Rank the constraints for ERCs given as masks: the first n of w and l.
+	 *
+	 * @param w
+	 *            For each ERC, the constraints that prefer the winner.
+	 * @param l
+	 *            For each ERC, the constraints that prefer the loser.
+	 * @param n
+	 *            The number of ERCs.
+	 * @return true if a ranking was found.
+	 */
+	public boolean run(long[][] w, long[][] l, int n) {
+		this.ercs = null;
+		int bits = this.constraintCount;
+		for (int j = 0; j < this.words; j++) {
+			int left = bits - 64 * j;
+			this.unranked[j] = (left >= 64) ? -1L : (1L << left) - 1;
+		}
+		Arrays.fill(this.strata, 0);
+		if (this.alive.length < n) {
+			this.alive = new int[Math.max(n, 2 * this.alive.length)];
+		}
+		this.aliveCount = 0;
+		for (int e = 0; e < n; e++) {
+			if (!isEmpty(w[e]) || !isEmpty(l[e])) {
+				this.alive[this.aliveCount++] = e;
+			}
+		}
+		int s = 0;
+		while (this.aliveCount > 0) {
+			// The L's of every ERC left.
+			Arrays.fill(this.losers, 0L);
+			for (int a = 0; a < this.aliveCount; a++) {
+				long[] mask = l[this.alive[a]];
+				int m = Math.min(mask.length, this.words);
+				for (int j = 0; j < m; j++) {
+					this.losers[j] |= mask[j];
+				}
+			}
+			boolean any = false;
+			for (int j = 0; j < this.words; j++) {
+				this.stratum[j] = this.unranked[j] & ~this.losers[j];
+				any |= (this.stratum[j] != 0L);
+			}
+			if (!any) {
+				this.stratumCount = s;
+				return false;
+			}
+			s++;
+			this.place(this.stratum, s);
+			// Keep the ERCs that have no W in the new stratum.
+			int kept = 0;
+			for (int a = 0; a < this.aliveCount; a++) {
+				int e = this.alive[a];
+				long[] mask = w[e];
+				int m = Math.min(mask.length, this.words);
+				boolean accounted = false;
+				for (int j = 0; j < m; j++) {
+					if ((mask[j] & this.stratum[j]) != 0L) {
+						accounted = true;
+						break;
+					}
+				}
+				if (!accounted) {
+					this.alive[kept++] = e;
+				}
+			}
+			this.aliveCount = kept;
+		}
+		if (!isEmpty(this.unranked)) {
+			s++;
+			this.place(this.unranked, s);
+		}
+		this.stratumCount = s;
+		return true;
+	}
+
+	/** Put the constraints of the mask in stratum s. */
+	private void place(long[] mask, int s) {
+		for (int j = 0; j < this.words; j++) {
+			long bitsLeft = mask[j];
+			this.unranked[j] &= ~bitsLeft;
+			while (bitsLeft != 0L) {
+				int k = 64 * j + Long.numberOfTrailingZeros(bitsLeft);
+				this.strata[k] = s;
+				bitsLeft &= bitsLeft - 1;
+			}
+		}
+	}
+
+	private static boolean isEmpty(long[] mask) {
+		for (int j = 0; j < mask.length; j++) {
+			if (mask[j] != 0L) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * =================================================================
+	 * Results
+	 * =================================================================
+	 */
+
+	/**
+	 * The stratum of each constraint after the last run, counting from 1 at
+	 * the top; 0 for the constraints that couldn't be ranked. This is the
+	 * live array.
+	 */
+	public int[] getStrata() {
+		return this.strata;
+	}
+
+	/** The number of strata found by the last run. */
+	public int getStratumCount() {
+		return this.stratumCount;
+	}
+
+	/**
+	 * The ERCs the last call to rank() couldn't account for; empty if it
+	 * found a ranking.
+	 */
+	public ArrayList<ERC> getUnresolved() {
+		ArrayList<ERC> unresolved = new ArrayList<ERC>();
+		if (this.ercs != null) {
+			for (int a = 0; a < this.aliveCount; a++) {
+				unresolved.add(this.ercs.get(this.alive[a]));
+			}
+		}
+		return unresolved;
+	}
+
+	/**
+	 * The indices of the ERCs the last run couldn't account for, in the
+	 * first getUnresolvedCount() places. This is the live array.
+	 */
+	public int[] getUnresolvedIndices() {
+		return this.alive;
+	}
+
+	public int getUnresolvedCount() {
+		return this.aliveCount;
+	}
+
+	public int getConstraintCount() {
+		return this.constraintCount;
+	}
+
+}
@@ -0,0 +1,443 @@
+package perceptron;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <p>
+ * Trains many independent copies of one grammar at the same time. Every
+ * replication has its own Perceptron, with its own weights and its own
+ * NoiseGenerator, over the same TableauSet, which is only read while the
+ * replications run. Replication i is seeded with
+ * NoiseGenerator.mix(seed + NoiseGenerator.mix(i)), so a run can be repeated
+ * exactly, whatever the number of threads.
+ * </p>
+ *
+ * <pre>
+ * ReplicationRunner runner = new ReplicationRunner(ts, schedule, 20070219L);
+ * ReplicationRunner.Summary summary = runner.summarize(runner.run(1000));
+ * </pre>
+ *
+ * <p>
+ * With setTrajectories(), each replication also records its learning curve,
+ * in a file of its own: trajectory[i].csv or trajectory[i].bin.
+ * </p>
+ *
+ * <p>
+ * The TableauSet must not be changed while run() is going on.
+ * </p>
+ *
+ * @see Trainer
+ */
+public class ReplicationRunner {
+
+	/*
+	 * ================================================================= Class
+	 * variables
+	 * =================================================================
+	 */
+
+	private TableauSet ts;
+
+	private PlasticitySchedule schedule;
+
+	private long seed;
+
+	/** The weights every replication starts from. */
+	private double[] initialWeights;
+
+	private boolean withNoise = true;
+
+	private long maxSteps;
+
+	private long maxEpochs;
+
+	private boolean stopWhenConverged = true;
+
+	private ForkJoinPool pool;
+
+	/** Where the replications' trajectories go, or null for nowhere. */
+	private File trajectoryDirectory;
+
+	private int trajectoryInterval;
+
+	private int trajectoryFormat;
+
+	/**
+	 * Replications over a TableauSet, starting from its current weights.
+	 *
+	 * @param ts
+	 *            The grammar.
+	 * @param schedule
+	 *            The plasticity schedule of every replication.
+	 * @param seed
+	 *            The seed the replications' seeds are derived from.
+	 */
+	public ReplicationRunner(TableauSet ts, PlasticitySchedule schedule,
+			long seed) {
+		this.ts = ts;
+		this.schedule = schedule;
+		this.seed = seed;
+		int n = ts.constraintCount();
+		this.initialWeights = new double[n];
+		System.arraycopy(ts.getWeightVector(), 0, this.initialWeights, 0, n);
+	}
+
+	/*
+	 * =================================================================
+	 * Running
+	 * =================================================================
+	 */
+
+	/**
+	 * Train the given number of replications, in parallel.
+	 *
+	 * @param replications
+	 *            How many.
+	 * @return The result of each replication, in order.
+	 */
+	public Result[] run(int replications) {
+		// After this the TableauSet is only read.
+		this.ts.buildAll();
+		this.ts.prepareSampler();
+		this.ts.getMultiplierVector();
+		Result[] results = new Result[replications];
+		ForkJoinPool p = (this.pool == null) ? ForkJoinPool.commonPool()
+				: this.pool;
+		p.invoke(new Replications(results, 0, replications));
+		return results;
+	}
+
+	/**
+	 * Train one replication, in the current thread.
+	 *
+	 * @param i
+	 *            Which replication.
+	 * @return The result.
+	 */
+	public Result runOne(int i) {
+		long s = this.seedFor(i);
+		double[] weights = this.initialWeights.clone();
+		Perceptron learner = new Perceptron(this.ts, weights, s);
+		learner.setWithNoise(this.withNoise);
+		Trainer trainer = new Trainer(learner, this.schedule);
+		trainer.setMaxSteps(this.maxSteps);
+		trainer.setMaxEpochs(this.maxEpochs);
+		trainer.setStopWhenConverged(this.stopWhenConverged);
+		if (this.trajectoryDirectory == null) {
+			trainer.train();
+		} else {
+			this.trainRecording(trainer, i);
+		}
+		return new Result(i, s, weights, trainer.getSteps(), trainer
+				.isConverged(), trainer.getErrorCount(), trainer.getAccuracy());
+	}
+
+	/** Train, recording the trajectory of replication i. */
+	private void trainRecording(Trainer trainer, int i) {
+		String name = "trajectory" + i
+				+ ((this.trajectoryFormat == TrajectoryRecorder.BINARY) ? ".bin"
+						: ".csv");
+		try {
+			TrajectoryRecorder trajectory = new TrajectoryRecorder(this.ts,
+					new File(this.trajectoryDirectory, name),
+					this.trajectoryInterval, this.trajectoryFormat);
+			trainer.setTrajectory(trajectory);
+			try {
+				trainer.train();
+			} finally {
+				trajectory.close();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/** The seed of replication i. */
+	public long seedFor(int i) {
+		return NoiseGenerator.mix(this.seed + NoiseGenerator.mix(i));
+	}
+
+	/** Splits a range of replications in two until there is one left. */
+	private class Replications extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Result[] results;
+
+		private final int from, to;
+
+		Replications(Result[] results, int from, int to) {
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (this.to - this.from == 1) {
+				this.results[this.from] = runOne(this.from);
+			} else if (this.to > this.from) {
+				int mid = (this.from + this.to) >>> 1;
+				invokeAll(new Replications(this.results, this.from, mid),
+						new Replications(this.results, mid, this.to));
+			}
+		}
+	}
+
+	/*
+	 * =================================================================
+	 * Results
+	 * =================================================================
+	 */
+
+	/** What became of one replication. */
+	public static class Result {
+
+		private final int replication;
+
+		private final long seed;
+
+		private final double[] weights;
+
+		private final long steps;
+
+		private final boolean converged;
+
+		private final int errorCount;
+
+		private final double accuracy;
+
+		Result(int replication, long seed, double[] weights, long steps,
+				boolean converged, int errorCount, double accuracy) {
+			this.replication = replication;
+			this.seed = seed;
+			this.weights = weights;
+			this.steps = steps;
+			this.converged = converged;
+			this.errorCount = errorCount;
+			this.accuracy = accuracy;
+		}
+
+		public int getReplication() {
+			return this.replication;
+		}
+
+		public long getSeed() {
+			return this.seed;
+		}
+
+		/** The final weights, one per constraint. */
+		public double[] getWeights() {
+			return this.weights;
+		}
+
+		/** The number of learning steps taken. */
+		public long getSteps() {
+			return this.steps;
+		}
+
+		public boolean isConverged() {
+			return this.converged;
+		}
+
+		public int getErrorCount() {
+			return this.errorCount;
+		}
+
+		public double getAccuracy() {
+			return this.accuracy;
+		}
+
+		public String toString() {
+			return this.replication + "\t" + this.steps + "\t"
+					+ this.converged + "\t" + this.accuracy;
+		}
+	}
+
+	/**
+	 * Aggregate the results of a run.
+	 *
+	 * @param results
+	 *            The results of run().
+	 * @return Their summary.
+	 */
+	public Summary summarize(Result[] results) {
+		return new Summary(this.ts, results);
+	}
+
+	/** Means and standard deviations over a set of replications. */
+	public static class Summary {
+
+		private int replications;
+
+		private int converged;
+
+		private double meanSteps;
+
+		/** The mean steps of the replications that converged. */
+		private double meanStepsToConvergence;
+
+		private double meanAccuracy;
+
+		private double[] meanWeights;
+
+		private double[] sdWeights;
+
+		private String[] constraintNames;
+
+		Summary(TableauSet ts, Result[] results) {
+			int n = ts.constraintCount();
+			this.replications = results.length;
+			this.meanWeights = new double[n];
+			this.sdWeights = new double[n];
+			this.constraintNames = new String[n];
+			for (int k = 0; k < n; k++) {
+				this.constraintNames[k] = ts.getConstraint(k).getName();
+			}
+			if (results.length == 0) {
+				return;
+			}
+			double steps = 0.0, convergedSteps = 0.0, accuracy = 0.0;
+			for (int r = 0; r < results.length; r++) {
+				Result result = results[r];
+				steps += result.getSteps();
+				accuracy += result.getAccuracy();
+				if (result.isConverged()) {
+					this.converged++;
+					convergedSteps += result.getSteps();
+				}
+				for (int k = 0; k < n; k++) {
+					this.meanWeights[k] += result.getWeights()[k];
+				}
+			}
+			this.meanSteps = steps / results.length;
+			this.meanAccuracy = accuracy / results.length;
+			this.meanStepsToConvergence = (this.converged == 0) ? Double.NaN
+					: convergedSteps / this.converged;
+			for (int k = 0; k < n; k++) {
+				this.meanWeights[k] /= results.length;
+			}
+			for (int r = 0; r < results.length; r++) {
+				for (int k = 0; k < n; k++) {
+					double d = results[r].getWeights()[k] - this.meanWeights[k];
+					this.sdWeights[k] += d * d;
+				}
+			}
+			for (int k = 0; k < n; k++) {
+				this.sdWeights[k] = Math.sqrt(this.sdWeights[k]
+						/ results.length);
+			}
+		}
+
+		public int getReplications() {
+			return this.replications;
+		}
+
+		/** The number of replications that converged. */
+		public int getConverged() {
+			return this.converged;
+		}
+
+		public double getMeanSteps() {
+			return this.meanSteps;
+		}
+
+		/** NaN if none converged. */
+		public double getMeanStepsToConvergence() {
+			return this.meanStepsToConvergence;
+		}
+
+		public double getMeanAccuracy() {
+			return this.meanAccuracy;
+		}
+
+		public double[] getMeanWeights() {
+			return this.meanWeights;
+		}
+
+		public double[] getWeightStandardDeviations() {
+			return this.sdWeights;
+		}
+
+		public String toString() {
+			String newline = System.getProperty("line.separator");
+			StringBuffer sb = new StringBuffer();
+			sb.append(this.converged + " of " + this.replications
+					+ " replications converged; mean steps " + this.meanSteps
+					+ ", mean accuracy " + this.meanAccuracy + newline);
+			for (int k = 0; k < this.meanWeights.length; k++) {
+				sb.append(this.constraintNames[k] + "\t" + this.meanWeights[k]
+						+ "\t" + this.sdWeights[k] + newline);
+			}
+			return sb.toString();
+		}
+	}
+
+	/*
+	 * =================================================================
+	 * Getters and setters
+	 * =================================================================
+	 */
+
+	/** Use this pool rather than the common one. */
+	public boolean setPool(ForkJoinPool pool) {
+		this.pool = pool;
+		return true;
+	}
+
+	public boolean setWithNoise(boolean withNoise) {
+		this.withNoise = withNoise;
+		return true;
+	}
+
+	/**
+	 * Record every replication's weights every interval steps, into a
+	 * directory; null records nothing.
+	 *
+	 * @param directory
+	 *            Where the files go.
+	 * @param interval
+	 *            The number of steps between samples.
+	 * @param format
+	 *            TrajectoryRecorder.CSV or TrajectoryRecorder.BINARY.
+	 */
+	public boolean setTrajectories(File directory, int interval, int format) {
+		this.trajectoryDirectory = directory;
+		this.trajectoryInterval = interval;
+		this.trajectoryFormat = format;
+		return true;
+	}
+
+	public boolean setMaxSteps(long maxSteps) {
+		this.maxSteps = maxSteps;
+		return true;
+	}
+
+	public boolean setMaxEpochs(long maxEpochs) {
+		this.maxEpochs = maxEpochs;
+		return true;
+	}
+
+	public boolean setStopWhenConverged(boolean stop) {
+		this.stopWhenConverged = stop;
+		return true;
+	}
+
+	/** Start every replication from these weights instead. */
+	public boolean setInitialWeights(double[] weights) {
+		this.initialWeights = weights.clone();
+		return true;
+	}
+
+	public double[] getInitialWeights() {
+		return this.initialWeights;
+	}
+
+	public long getSeed() {
+		return this.seed;
+	}
+
+}
@@ -1,6 +1,8 @@
 package perceptron;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Iterator;
 import java.util.Random;
 
@@ -39,8 +41,55 @@ public class Tableau {
 	/** The candidates for this tableau. */
 	private ArrayList<Candidate> candidates;
 
+	/**
+	 * The violation marks of all candidates, packed row by row: candidate r's
+	 * mark for constraint c is at violations[r * stride + c]. Candidates are
+	 * views onto their row. null while the tableau is stored sparsely.
+	 */
+	private double[] violations = new double[0];
+
+	/** The row length of the violation matrix. */
+	private int stride;
+
+	/**
+	 * Sparse (compressed sparse row) storage, used instead of violations when
+	 * few marks are non-zero: the non-zero marks of row r are
+	 * values[rowStart[r]] to values[rowStart[r + 1] - 1], in the columns
+	 * given by the same stretch of columns, in increasing order. rowStart is
+	 * null while the tableau is dense.
+	 */
+	private int[] rowStart;
+
+	private int[] columns;
+
+	private double[] values;
+
+	/**
+	 * compress() stores a tableau sparsely if fewer than this fraction of its
+	 * marks are non-zero.
+	 */
+	public final static double SPARSE_DENSITY = 0.3;
+
+	/** Compiled learning updates, or null; see learn(). */
+	private volatile UpdateCache updates;
+
 	private TableauSet parent;
 
+	/** This tableau's position in the parent TableauSet, or -1. */
+	private int index = -1;
+
+	/** The rows of the candidates with a positive frequency. */
+	private BitSet winners = new BitSet();
+
+	/** The number of candidates with a positive frequency. */
+	private int winnerCount;
+
+	/**
+	 * The summed frequency of the winners: how likely this tableau is to be
+	 * picked by TableauSet.randomTableau().
+	 */
+	private double winnerMass;
+
 	/*
 	 * =================================================================
 	 * Constructor
@@ -68,6 +117,26 @@ public class Tableau {
 		return this.parent;
 	}
 
+	/**
+	 * The position of this tableau in its TableauSet.
+	 * 
+	 * @return this.index The index, or -1 if it hasn't been added to one.
+	 */
+	public int getIndex() {
+		return this.index;
+	}
+
+	void setIndex(int i) {
+		this.index = i;
+	}
+
+	/** Refuse to change a tableau that belongs to a frozen TableauSet. */
+	private void checkNotFrozen() {
+		if (this.index >= 0 && this.parent != null) {
+			this.parent.checkNotFrozen();
+		}
+	}
+
 	/*
 	 * ================================================================= The
 	 * input =================================================================
@@ -208,56 +277,551 @@ public class Tableau {
 		if (this.candidates == null) {
 			this.candidates = new ArrayList<Candidate>();
 		}
-		return this.candidates.add(cand);
+		this.checkNotFrozen();
+		int row = this.candidates.size();
+		double[] marks = cand.getViolations();
+		this.updates = null;
+		this.ensureCapacity(row + 1, marks.length);
+		System.arraycopy(marks, 0, this.violations, row * this.stride,
+				marks.length);
+		cand.bind(this, row, marks.length);
+		boolean added = this.candidates.add(cand);
+		if (this.index >= 0 && this.parent != null) {
+			this.parent.candidatesChanged();
+		}
+		this.frequencyChanged(row, 0, cand.getFrequency());
+		return added;
 	}
 
-	public Candidate findOptimalCandidate() {
+	/**
+	 * Fill an empty tableau with candidates whose marks are already in
+	 * compressed sparse rows, as laid out in the rowStart, columns and values
+	 * fields. The arrays are kept, not copied. Used by CompiledGrammar.
+	 *
+	 * @param cands
+	 *            The candidates, not yet added to any tableau.
+	 * @param lengths
+	 *            The length of each candidate's violation vector.
+	 * @param start
+	 *            Where each row starts in cols and vals, plus the end.
+	 * @param cols
+	 *            The columns of the non-zero marks, increasing in each row.
+	 * @param vals
+	 *            The non-zero marks.
+	 */
+	void setSparseCandidates(Candidate[] cands, int[] lengths, int[] start,
+			int[] cols, double[] vals) {
+		this.candidates = new ArrayList<Candidate>(cands.length);
+		this.updates = null;
+		int width = 0;
+		for (int r = 0; r < cands.length; r++) {
+			width = Math.max(width, lengths[r]);
+		}
+		this.stride = width;
+		this.rowStart = start;
+		this.columns = cols;
+		this.values = vals;
+		this.violations = null;
+		for (int r = 0; r < cands.length; r++) {
+			cands[r].bind(this, r, lengths[r]);
+			this.candidates.add(cands[r]);
+			this.frequencyChanged(r, 0, cands[r].getFrequency());
+		}
+	}
+
+	/*
+	 * ================================================================= The
+	 * winner frequencies
+	 * =================================================================
+	 */
+
+	/**
+	 * Called by Candidate.setFrequency(): keep the winner mass up to date and
+	 * tell the TableauSet's sampler about it.
+	 */
+	void frequencyChanged(int row, double oldFreq, double newFreq) {
+		if (oldFreq != newFreq) {
+			this.checkNotFrozen();
+		}
+		if (oldFreq > 0) {
+			this.winnerCount--;
+			this.winnerMass -= oldFreq;
+		}
+		if (newFreq > 0) {
+			this.winnerCount++;
+			this.winnerMass += newFreq;
+		}
+		this.winners.set(row, newFreq > 0);
+		if (this.winnerCount == 0) {
+			this.winnerMass = 0.0; // no rounding residue
+		}
+		if (oldFreq > 0 || newFreq > 0) {
+			if (this.index >= 0 && this.parent != null) {
+				this.parent.winnerMassChanged(this);
+			}
+		}
+	}
+
+	/**
+	 * The summed frequency of this tableau's winners.
+	 * 
+	 * @return this.winnerMass A double.
+	 */
+	public double getWinnerMass() {
+		return this.winnerMass;
+	}
 
-		// Keep a running list of possible most harmonic candidates.
-		// In the case of a tie, one will be chosen arbitrarily.
-		ArrayList<Candidate> mostHarmonic = new ArrayList<Candidate>();
+	/*
+	 * =================================================================
+	 * The violation matrix
+	 * =================================================================
+	 */
+
+	/**
+	 * Make room for the given number of rows of the given width, re-packing
+	 * the matrix if the rows have to get wider.
+	 */
+	private void ensureCapacity(int rows, int width) {
+		if (this.rowStart != null) {
+			this.inflate();
+		}
+		if (width > this.stride) {
+			int newStride = width;
+			double[] packed = new double[Math.max(rows, this.candidateCount())
+					* newStride];
+			for (int r = 0; r < this.candidateCount(); r++) {
+				System.arraycopy(this.violations, r * this.stride, packed, r
+						* newStride, this.stride);
+			}
+			this.violations = packed;
+			this.stride = newStride;
+		}
+		if (rows * this.stride > this.violations.length) {
+			this.violations = Arrays.copyOf(this.violations, Math.max(rows,
+					2 * this.candidateCount())
+					* this.stride);
+		}
+	}
+
+	/** The violation mark in the given row and column. */
+	double getViolation(int row, int col) {
+		if (this.rowStart != null) {
+			int k = this.find(row, col);
+			return (k < 0) ? 0.0 : this.values[k];
+		}
+		return this.violations[row * this.stride + col];
+	}
+
+	/**
+	 * Set a violation mark, widening the rows if necessary. Setting a mark
+	 * that was zero in a sparse tableau makes the tableau dense again.
+	 */
+	void setViolation(int row, int col, double viol) {
+		this.checkNotFrozen();
+		this.updates = null;
+		if (this.rowStart != null) {
+			int k = this.find(row, col);
+			if (k >= 0) {
+				this.values[k] = viol;
+				return;
+			}
+		}
+		this.ensureCapacity(this.candidateCount(), col + 1);
+		this.violations[row * this.stride + col] = viol;
+	}
+
+	/** Where the mark in the given row and column is in values, or -1. */
+	private int find(int row, int col) {
+		int lo = this.rowStart[row], hi = this.rowStart[row + 1] - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int c = this.columns[mid];
+			if (c < col) {
+				lo = mid + 1;
+			} else if (c > col) {
+				hi = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Whether the violation marks are stored sparsely.
+	 * 
+	 * @return true if sparse, false if dense.
+	 */
+	public boolean isSparse() {
+		return (this.rowStart != null);
+	}
+
+	/**
+	 * The fraction of violation marks that are not zero.
+	 * 
+	 * @return A number between 0 and 1.
+	 */
+	public double density() {
+		int rows = this.candidateCount();
+		if (rows == 0 || this.stride == 0) {
+			return 0.0;
+		}
+		return (double) this.nonZeroCount() / (rows * this.stride);
+	}
+
+	/** The number of non-zero violation marks. */
+	private int nonZeroCount() {
+		if (this.rowStart != null) {
+			return this.rowStart[this.candidateCount()];
+		}
+		int nnz = 0;
+		int size = this.candidateCount() * this.stride;
+		for (int i = 0; i < size; i++) {
+			if (this.violations[i] != 0) {
+				nnz++;
+			}
+		}
+		return nnz;
+	}
+
+	/**
+	 * Pick the storage that suits this tableau: sparse if fewer than
+	 * SPARSE_DENSITY of the marks are non-zero, else dense. The loader calls
+	 * this once all candidates are in. Adding a candidate or setting a mark
+	 * that was zero makes the tableau dense again.
+	 * 
+	 * @return true if the tableau is now sparse.
+	 */
+	public boolean compress() {
+		this.setSparse(this.density() < SPARSE_DENSITY);
+		return this.isSparse();
+	}
+
+	/**
+	 * Store the violation marks sparsely or densely, whatever their density.
+	 * 
+	 * @param sparse
+	 *            true for sparse storage.
+	 */
+	public void setSparse(boolean sparse) {
+		if (sparse && this.rowStart == null) {
+			this.deflate();
+		} else if (!sparse && this.rowStart != null) {
+			this.inflate();
+		}
+	}
 
-		Iterator candIter = this.getCandidates().iterator();
-		while (candIter.hasNext()) {
+	/** Switch from dense to sparse storage. */
+	private void deflate() {
+		int rows = this.candidateCount();
+		int nnz = this.nonZeroCount();
+		int[] start = new int[rows + 1];
+		int[] cols = new int[nnz];
+		double[] vals = new double[nnz];
+		int k = 0;
+		for (int r = 0; r < rows; r++) {
+			start[r] = k;
+			int base = r * this.stride;
+			for (int c = 0; c < this.stride; c++) {
+				double v = this.violations[base + c];
+				if (v != 0) {
+					cols[k] = c;
+					vals[k++] = v;
+				}
+			}
+		}
+		start[rows] = k;
+		this.rowStart = start;
+		this.columns = cols;
+		this.values = vals;
+		this.violations = null;
+	}
 
-			if (mostHarmonic.size() == 0)
-				mostHarmonic.add((Candidate) candIter.next());
-			else {
-				Candidate currentCand = (Candidate) candIter.next();
-				double mostHarmonicWeight, currentCandWeight;
+	/** Switch from sparse to dense storage. */
+	private void inflate() {
+		int rows = this.candidateCount();
+		double[] dense = new double[Math.max(rows, 1) * this.stride];
+		for (int r = 0; r < rows; r++) {
+			int base = r * this.stride;
+			for (int k = this.rowStart[r]; k < this.rowStart[r + 1]; k++) {
+				dense[base + this.columns[k]] = this.values[k];
+			}
+		}
+		this.violations = dense;
+		this.rowStart = null;
+		this.columns = null;
+		this.values = null;
+	}
 
-				mostHarmonicWeight = mostHarmonic.get(0).getWeight();
-				currentCandWeight = currentCand.getWeight();
+	/**
+	 * The dot product of a row of the violation matrix with a weight vector,
+	 * over the first n columns. This is the harmony of the candidate in that
+	 * row.
+	 */
+	double dot(int row, double[] weights, int n) {
+		if (this.rowStart != null) {
+			int[] cols = this.columns;
+			double[] vals = this.values;
+			double sum = 0.0;
+			int end = this.rowStart[row + 1];
+			for (int k = this.rowStart[row]; k < end; k++) {
+				int c = cols[k];
+				if (c >= n) {
+					break;
+				}
+				sum += vals[k] * weights[c];
+			}
+			return sum;
+		}
+		double[] v = this.violations;
+		int base = row * this.stride;
+		double sum = 0.0;
+		for (int i = 0; i < n; i++) {
+			sum += v[base + i] * weights[i];
+		}
+		return sum;
+	}
 
-				// Check to see if the current candidate is most harmonic,
-				// and label it as such if it is.
-				if (currentCandWeight == mostHarmonicWeight) {
-					mostHarmonic.add(currentCand);
+	/**
+	 * Same as dot(), with noise[i] added to weights[i].
+	 */
+	double dotWithNoise(int row, double[] weights, double[] noise, int n) {
+		if (this.rowStart != null) {
+			int[] cols = this.columns;
+			double[] vals = this.values;
+			double sum = 0.0;
+			int end = this.rowStart[row + 1];
+			for (int k = this.rowStart[row]; k < end; k++) {
+				int c = cols[k];
+				if (c >= n) {
+					break;
 				}
-				if (currentCandWeight < mostHarmonicWeight) {
-					mostHarmonic.clear();
-					mostHarmonic.add(currentCand);
+				sum += vals[k] * (weights[c] + noise[c]);
+			}
+			return sum;
+		}
+		double[] v = this.violations;
+		int base = row * this.stride;
+		double sum = 0.0;
+		for (int i = 0; i < n; i++) {
+			sum += v[base + i] * (weights[i] + noise[i]);
+		}
+		return sum;
+	}
+
+	/**
+	 * Add a times a row of the violation matrix, scaled column by column, to
+	 * a vector: y[i] += a * scale[i] * mark[i], over the first n columns. This
+	 * is a learning update; on a sparse tableau it only touches the non-zero
+	 * marks.
+	 */
+	void addScaledRow(int row, double a, double[] scale, double[] y, int n) {
+		if (this.rowStart != null) {
+			int[] cols = this.columns;
+			double[] vals = this.values;
+			int end = this.rowStart[row + 1];
+			for (int k = this.rowStart[row]; k < end; k++) {
+				int c = cols[k];
+				if (c >= n) {
+					break;
 				}
+				y[c] += a * vals[k] * scale[c];
+			}
+			return;
+		}
+		double[] v = this.violations;
+		int base = row * this.stride;
+		for (int i = 0; i < n; i++) {
+			if (v[base + i] != 0) {
+				y[i] += a * v[base + i] * scale[i];
+			}
+		}
+	}
+
+	/**
+	 * A learning update from this tableau: move the weights towards making
+	 * the winner beat the loser, by the plasticity times the difference of
+	 * their marks times the multiplier of each constraint's family.
+	 * 
+	 * <p>
+	 * The scaled difference of each winner/loser pair is worked out once and
+	 * kept as a sparse vector, so the update itself is a single pass over the
+	 * constraints on which the two differ. The vectors are kept for every
+	 * pair, so learners that take different winners from the same tableau
+	 * don't throw away each other's. They are thrown away when a mark in
+	 * this tableau or a multiplier in the TableauSet changes. Learners on
+	 * several threads may share a tableau: at worst, two of them compile the
+	 * same vector.
+	 * </p>
+	 * 
+	 * @param winnerRow
+	 *            The winner's row.
+	 * @param loserRow
+	 *            The loser's row.
+	 * @param plasticity
+	 *            The learning rate.
+	 * @param weights
+	 *            The weights to change.
+	 */
+	void learn(int winnerRow, int loserRow, double plasticity,
+			double[] weights) {
+		UpdateCache cache = this.updates;
+		int version = this.parent.getMultiplierVersion();
+		if (cache == null || cache.version != version) {
+			cache = new UpdateCache(version, this.candidateCount());
+			this.updates = cache;
+		}
+		Update[] byLoser = cache.byWinner[winnerRow];
+		if (byLoser == null) {
+			byLoser = new Update[cache.byWinner.length];
+			cache.byWinner[winnerRow] = byLoser;
+		}
+		Update update = byLoser[loserRow];
+		if (update == null) {
+			update = this.compileUpdate(winnerRow, loserRow);
+			byLoser[loserRow] = update;
+		}
+		int[] cols = update.columns;
+		double[] deltas = update.deltas;
+		for (int k = 0; k < cols.length; k++) {
+			weights[cols[k]] += plasticity * deltas[k];
+		}
+	}
+
+	/** Work out the scaled difference between a loser and a winner. */
+	private Update compileUpdate(int winnerRow, int loserRow) {
+		int n = Math.min(this.stride, this.constraintCount());
+		double[] multipliers = this.parent.getMultiplierVector();
+		double[] diff = new double[n];
+		this.addScaledRow(loserRow, 1.0, multipliers, diff, Math.min(n,
+				this.candidates.get(loserRow).violationCount()));
+		this.addScaledRow(winnerRow, -1.0, multipliers, diff, Math.min(n,
+				this.candidates.get(winnerRow).violationCount()));
+		int nnz = 0;
+		for (int i = 0; i < n; i++) {
+			if (diff[i] != 0) {
+				nnz++;
+			}
+		}
+		int[] cols = new int[nnz];
+		double[] deltas = new double[nnz];
+		int k = 0;
+		for (int i = 0; i < n; i++) {
+			if (diff[i] != 0) {
+				cols[k] = i;
+				deltas[k++] = diff[i];
 			}
 		}
+		return new Update(cols, deltas);
+	}
+
+	/**
+	 * The compiled updates by winner row, then loser row, for one version of
+	 * the multipliers. The row of a winner is filled in the first time it
+	 * wins.
+	 */
+	private static final class UpdateCache {
+
+		final int version;
+
+		final Update[][] byWinner;
+
+		UpdateCache(int version, int rows) {
+			this.version = version;
+			this.byWinner = new Update[rows][];
+		}
+	}
+
+	/** A sparse, pre-scaled loser-minus-winner vector. Never changes. */
+	private static final class Update {
+
+		final int[] columns;
+
+		final double[] deltas;
+
+		Update(int[] columns, double[] deltas) {
+			this.columns = columns;
+			this.deltas = deltas;
+		}
+	}
+
+	/**
+	 * Find the most harmonic candidate (the one with the lowest weighted
+	 * total) and make it the winner of this tableau. Ties are broken at
+	 * random.
+	 * 
+	 * <p>
+	 * Note that this rewrites the frequencies of all the candidates. To just
+	 * look at the optimum, use optimumIndex().
+	 * </p>
+	 * 
+	 * @return The optimal candidate, now the unique winner.
+	 */
+	public Candidate findOptimalCandidate() {
+		int best = this.optimumIndex(generator);
+		this.adoptWinner(best);
+		return this.candidates.get(best);
+	}
+
+	/**
+	 * Find the most harmonic candidate under the current weights, without
+	 * changing anything. Ties are broken uniformly at random.
+	 * 
+	 * @param r
+	 *            The source of randomness for tie-breaking.
+	 * @return The index of the optimal candidate, or -1 if there are no
+	 *         candidates.
+	 */
+	public int optimumIndex(Random r) {
+		return this.optimumIndex(this.parent.getWeightVector(), r);
+	}
 
-		// If only one candidate was most harmonic, return it.
-		if (mostHarmonic.size() == 1) {
-			this.parent.makeWinner(mostHarmonic.get(0)); // designate it as the
-															// winner
-			return mostHarmonic.get(0);
-		} else { // Pick one at random.
-			// System.out.println("More than one selection, picking at random");
-			Random r = new Random();
-			double selection = r.nextDouble() * mostHarmonic.size();
-			// System.out.println(selection);
-			this.parent.makeWinner(mostHarmonic.get((int) selection)); // designate
-																		// it as
-																		// the
-																		// winner
-			return mostHarmonic.get((int) selection);
+	/**
+	 * Same as optimumIndex(Random), under the given weights rather than the
+	 * TableauSet's.
+	 * 
+	 * @param weights
+	 *            One weight per constraint.
+	 * @param r
+	 *            The source of randomness for tie-breaking.
+	 * @return The index of the optimal candidate, or -1 if there are no
+	 *         candidates.
+	 */
+	public int optimumIndex(double[] weights, Random r) {
+		int n = Math.min(this.stride, this.constraintCount());
+		int best = -1;
+		double bestWeight = 0.0;
+		int ties = 0;
+		for (int i = 0; i < this.candidateCount(); i++) {
+			Candidate cand = this.candidates.get(i);
+			double weight = this.dot(i, weights, Math.min(n, cand
+					.violationCount()));
+			if (best < 0 || weight < bestWeight) {
+				best = i;
+				bestWeight = weight;
+				ties = 1;
+			} else if (weight == bestWeight) {
+				// Reservoir sampling: each of the k tied candidates ends up
+				// chosen with probability 1/k.
+				ties++;
+				if (r.nextInt(ties) == 0) {
+					best = i;
+				}
+			}
 		}
+		return best;
+	}
 
+	/**
+	 * Make candidate i the unique winner of this tableau: its frequency
+	 * becomes 1 and every other candidate's 0.
+	 * 
+	 * @param i
+	 *            The index of the new winner.
+	 * @return true if the winner was set, else false.
+	 */
+	public boolean adoptWinner(int i) {
+		return this.parent.makeWinner(this.candidates.get(i));
 	}
 
 	/*
@@ -272,44 +836,90 @@ public class Tableau {
 	 * @return winners The ArrayList of winning Candidate objects.
 	 */
 	public ArrayList<Candidate> getWinners() {
-		ArrayList<Candidate> winners = new ArrayList<Candidate>();
-		Iterator candidates = this.candidates.iterator();
-		while (candidates.hasNext()) {
-			Candidate cand = (Candidate) candidates.next();
-			if (cand.getFrequency() > 0) {
-				winners.add(cand);
-			}
+		ArrayList<Candidate> winners = new ArrayList<Candidate>(
+				this.winnerCount);
+		for (int i = this.nextWinner(0); i >= 0; i = this.nextWinner(i + 1)) {
+			winners.add(this.candidates.get(i));
 		}
 		return winners;
 	}
 
 	public ArrayList<Candidate> getLosers() {
-		ArrayList<Candidate> losers = new ArrayList<Candidate>();
-		Iterator candidates = this.candidates.iterator();
-		while (candidates.hasNext()) {
-			Candidate cand = (Candidate) candidates.next();
-			if (cand.getFrequency() <= 0) {
-				losers.add(cand);
-			}
+		ArrayList<Candidate> losers = new ArrayList<Candidate>(this
+				.candidateCount()
+				- this.winnerCount);
+		for (int i = this.nextLoser(0); i >= 0; i = this.nextLoser(i + 1)) {
+			losers.add(this.candidates.get(i));
 		}
 		return losers;
 	}
 
+	/**
+	 * The first winner.
+	 * 
+	 * @return The winning Candidate with the lowest index, or null if there
+	 *         is no winner.
+	 */
+	public Candidate getWinner() {
+		int i = this.getWinnerIndex();
+		return (i < 0) ? null : this.candidates.get(i);
+	}
+
+	/**
+	 * The index of the first winner.
+	 * 
+	 * @return The lowest index of a winning candidate, or -1.
+	 */
+	public int getWinnerIndex() {
+		return this.winners.nextSetBit(0);
+	}
+
+	/**
+	 * Whether candidate i is a winner (has a positive frequency).
+	 * 
+	 * @param i
+	 *            The index of the candidate.
+	 * @return true if it's a winner, else false.
+	 */
+	public boolean isWinner(int i) {
+		return this.winners.get(i);
+	}
+
+	/**
+	 * The index of the next winner at or after i. To go over the winners
+	 * without allocating:
+	 * 
+	 * <pre>
+	 * for (int i = tabl.nextWinner(0); i &gt;= 0; i = tabl.nextWinner(i + 1))
+	 * </pre>
+	 * 
+	 * @param i
+	 *            Where to start looking.
+	 * @return The index, or -1 if there are no more winners.
+	 */
+	public int nextWinner(int i) {
+		return this.winners.nextSetBit(i);
+	}
+
+	/**
+	 * The index of the next loser at or after i; see nextWinner().
+	 * 
+	 * @param i
+	 *            Where to start looking.
+	 * @return The index, or -1 if there are no more losers.
+	 */
+	public int nextLoser(int i) {
+		int loser = this.winners.nextClearBit(i);
+		return (loser < this.candidateCount()) ? loser : -1;
+	}
+
 	/**
 	 * Check that there is at least one winner.
 	 * 
 	 * @return true if there is a winner, else false.
 	 */
 	public boolean hasWinners() {
-		boolean hasWinners = false;
-		Iterator candidates = this.candidates.iterator();
-		while (candidates.hasNext()) {
-			Candidate cand = (Candidate) candidates.next();
-			if (cand.getFrequency() > 0) {
-				hasWinners = true;
-			}
-		}
-		return hasWinners;
+		return (this.winnerCount > 0);
 	}
 
 	/**
@@ -318,15 +928,7 @@ public class Tableau {
 	 * @return true if there is exactly one winner, else false.
 	 */
 	public boolean hasUniqueWinner() {
-		int winners = 0;
-		Iterator candidates = this.candidates.iterator();
-		while (candidates.hasNext()) {
-			Candidate cand = (Candidate) candidates.next();
-			if (cand.getFrequency() > 0) {
-				winners++;
-			}
-		}
-		return (winners == 1);
+		return (this.winnerCount == 1);
 	}
 
 	/**
@@ -335,7 +937,7 @@ public class Tableau {
 	 * @return int The number of winners.
 	 */
 	public int winnerCount() {
-		return getWinners().size();
+		return this.winnerCount;
 	}
 
 	public void setUniqueWinner(Candidate cand) {
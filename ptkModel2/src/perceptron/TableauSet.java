@@ -2,11 +2,11 @@ package perceptron;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.regex.Matcher;
@@ -77,9 +77,55 @@ public class TableauSet {
 	/** The tableaux: An ArrayList of Tableau objects. */
 	private ArrayList<Tableau> tableaux;
 
+	/**
+	 * Picks tableaux in proportion to their winners' frequencies. Built on the
+	 * first call to randomTableau() and kept up to date as frequencies
+	 * change.
+	 */
+	private FrequencySampler sampler;
+
+	/**
+	 * Where the tableaux that haven't been built yet come from, or null. While
+	 * there is a source, the list of tableaux holds null for each tableau
+	 * that hasn't been asked for yet.
+	 */
+	private CompiledGrammar source;
+
+	/**
+	 * candidatesBefore[t] is the number of candidates in the tableaux before
+	 * tableau t, for numbering candidates across the whole set; null if it has
+	 * to be worked out again, after a tableau or candidate is added or a
+	 * tableau removed.
+	 */
+	private volatile int[] candidatesBefore;
+
+	/** Whether the tableaux and constraints can no longer be changed. */
+	private boolean frozen;
+
 	/** The constraints: An ArrayList of LinguisticConstraint objects. */
 	private ArrayList<LinguisticConstraint> con;
 
+	/**
+	 * The constraint weights, one slot per constraint in the order of con.
+	 * LinguisticConstraint.getWeight() reads from here, and harmony
+	 * computations take the dot product of this vector with a row of a
+	 * tableau's violation matrix. Only the first constraintCount() slots are
+	 * in use.
+	 */
+	private double[] weights = new double[0];
+
+	/**
+	 * The learning-rate multiplier of each constraint, from its family (see
+	 * setMarkMultiplier() etc.), or null if it has to be worked out again.
+	 */
+	private double[] multipliers;
+
+	/**
+	 * Goes up whenever the multipliers change, so that anything computed
+	 * from them (like a Tableau's compiled updates) knows to start over.
+	 */
+	private int multiplierVersion;
+
 	/**
 	 * The languages: An ArrayList of ArrayLists of Candidate objects. This
 	 * member is used in the calculation of typologies, or sets of potential
@@ -225,6 +271,35 @@ public class TableauSet {
 		return true;
 	}
 
+	/**
+	 * Draw one noise value per constraint for a noisy evaluation, using each
+	 * constraint's own noise level (see LinguisticConstraint.getNoise()). The
+	 * same buffer should be used for all the candidates being compared.
+	 * 
+	 * @param buffer
+	 *            The buffer to fill; a new one is made if this is null or too
+	 *            short.
+	 * @return The filled buffer.
+	 * @see Candidate#getWeightWithNoise(double[])
+	 */
+	public double[] sampleNoise(double[] buffer) {
+		return this.sampleNoise(buffer, NoiseGenerator.current());
+	}
+
+	/**
+	 * Same as sampleNoise(double[]), drawing from the given generator.
+	 */
+	public double[] sampleNoise(double[] buffer, Random generator) {
+		int n = this.constraintCount();
+		if (buffer == null || buffer.length < n) {
+			buffer = new double[n];
+		}
+		for (int i = 0; i < n; i++) {
+			buffer[i] = generator.nextGaussian() * this.con.get(i).getNoise();
+		}
+		return buffer;
+	}
+
 	/*
 	 * ================================================================= The
 	 * tableaux
@@ -237,7 +312,7 @@ public class TableauSet {
 	 * @return this.tableaux.size() The number of tableaux.
 	 */
 	public int size() {
-		return this.tableaux.size();
+		return (this.tableaux == null) ? 0 : this.tableaux.size();
 	}
 
 	/**
@@ -246,6 +321,7 @@ public class TableauSet {
 	 * @return this.tableaux An ArrayList of Tableau objects.
 	 */
 	public ArrayList<Tableau> getTableaux() {
+		this.buildAll();
 		return this.tableaux;
 	}
 
@@ -254,7 +330,67 @@ public class TableauSet {
 	}
 	
 	public void setTableaux(ArrayList<Tableau> newTableaux) {
+		this.checkNotFrozen();
+		this.source = null;
 		this.tableaux = newTableaux;
+		this.reindexTableaux(0);
+	}
+
+	/**
+	 * Take the tableaux from a compiled grammar, building each one only when
+	 * it is first asked for.
+	 * 
+	 * @param grammar
+	 *            The compiled grammar.
+	 * @see CompiledGrammar#loadInto(TableauSet)
+	 */
+	void setSource(CompiledGrammar grammar) {
+		int n = grammar.tableauCount();
+		this.tableaux = new ArrayList<Tableau>(n);
+		for (int i = 0; i < n; i++) {
+			this.tableaux.add(null);
+		}
+		this.source = grammar;
+		this.sampler = null;
+		this.candidatesBefore = null;
+	}
+
+	/** Build tableau i from the source. */
+	private Tableau build(int i) {
+		Tableau tableau = this.source.buildTableau(i, this);
+		tableau.setIndex(i);
+		this.tableaux.set(i, tableau);
+		return tableau;
+	}
+
+	/**
+	 * Build all the tableaux that haven't been built yet. Anything that needs
+	 * the whole list does this first, as does anything that shares the set
+	 * between threads.
+	 */
+	public void buildAll() {
+		if (this.source != null) {
+			for (int i = 0; i < this.tableaux.size(); i++) {
+				if (this.tableaux.get(i) == null) {
+					this.build(i);
+				}
+			}
+			this.source = null;
+		}
+	}
+
+	/**
+	 * Renumber the tableaux from position i on, and throw away the sampler,
+	 * which is indexed by position.
+	 */
+	private void reindexTableaux(int from) {
+		if (this.tableaux != null) {
+			for (int i = from; i < this.tableaux.size(); i++) {
+				this.tableaux.get(i).setIndex(i);
+			}
+		}
+		this.sampler = null;
+		this.candidatesBefore = null;
 	}
 
 	/**
@@ -268,7 +404,11 @@ public class TableauSet {
 		if (this.tableaux == null) {
 			System.out.println("ERROR!");
 		}
-		return this.tableaux.get(i);
+		Tableau tableau = this.tableaux.get(i);
+		if (tableau == null && this.source != null) {
+			tableau = this.build(i);
+		}
+		return tableau;
 	}
 
 	/**
@@ -283,10 +423,16 @@ public class TableauSet {
 		// Make sure that the added tableau has the same constraint set as the
 		// TableauSet.
 		// if (tableau.getCon() == this.con) {
+		this.checkNotFrozen();
 		if (this.tableaux == null) {
 			this.tableaux = new ArrayList<Tableau>();
 		}
+		tableau.setIndex(this.tableaux.size());
 		this.tableaux.add(tableau);
+		this.candidatesBefore = null;
+		if (this.sampler != null) {
+			this.sampler.add(tableau.getWinnerMass());
+		}
 		// } else {
 		// addedSuccessfully = false;
 		// }
@@ -301,7 +447,12 @@ public class TableauSet {
 	 * @return The Tableau object that was removed.
 	 */
 	public Tableau removeTableau(int i) {
-		return this.tableaux.remove(i);
+		this.checkNotFrozen();
+		this.buildAll();
+		Tableau removed = this.tableaux.remove(i);
+		removed.setIndex(-1);
+		this.reindexTableaux(i);
+		return removed;
 	}
 
 	/*
@@ -347,16 +498,50 @@ public class TableauSet {
 	 * @return true if the constraint is added, else false.
 	 */
 	public boolean addConstraint(LinguisticConstraint constraint) {
+		this.checkNotFrozen();
 		if (this.con == null)
 			this.con = new ArrayList<LinguisticConstraint>();
+		int i = this.con.size();
+		if (i >= this.weights.length) {
+			this.weights = Arrays.copyOf(this.weights, Math.max(8, 2 * i));
+		}
+		constraint.attach(this, i);
+		this.multipliersChanged();
 		return this.con.add(constraint);
 	}
 
 	public boolean setConstraints(ArrayList<LinguisticConstraint> constraints) {
+		this.checkNotFrozen();
+		if (this.con != null) {
+			Iterator it = this.con.iterator();
+			while (it.hasNext()) {
+				((LinguisticConstraint) it.next()).detach();
+			}
+		}
+		this.con = null;
+		this.weights = new double[0];
+		this.multipliersChanged();
+		if (constraints != null) {
+			Iterator it = constraints.iterator();
+			while (it.hasNext()) {
+				this.addConstraint((LinguisticConstraint) it.next());
+			}
+		}
 		this.con = constraints;
 		return true;
 	}
 
+	/**
+	 * The weight vector, indexed like the constraints. This is the live
+	 * array, not a copy: writing to it changes the constraint weights. It may
+	 * be longer than constraintCount().
+	 * 
+	 * @return this.weights The weights.
+	 */
+	public double[] getWeightVector() {
+		return this.weights;
+	}
+
 	/*
 	 * ================================================================= Errors
 	 * and warnings.
@@ -427,6 +612,9 @@ public class TableauSet {
 	 *             returns 0.0 if this exception occurs.
 	 */
 	private double readDouble(String str) {
+		if (str.length() == 0) {
+			return 0.0; // empty cell; don't pay for the exception
+		}
 		double result = 0.0;
 		try {
 			result = Double.parseDouble(str);
@@ -477,368 +665,65 @@ public class TableauSet {
 	 * 
 	 * @param out
 	 *            The PrintStream --- where the content will end up.
+	 * @see TableauSetRenderer
 	 */
 	public void print(PrintStream out, String type) {
-
-		// Stylesheet.
-		String PO = "<p>";
-		String PC = "</p>";
-		String STATUSO = "<h3>";
-		String STATUSC = "</h3>";
-		if (type == "plain") {
-			PO = PC = STATUSO = STATUSC = "";
-		}
-
-		// Print the system status.
-		String str = "LP status: ";
-		if (this.status == TableauSet.FEASIBLE)
-			str += "solved";
-		if (this.status == TableauSet.INFEASIBLE)
-			str += "infeasible";
-		if (this.status == TableauSet.NONCONVERGENT)
-			str += "non-convergent";
-		if (this.status == TableauSet.UNBOUNDED)
-			str += "unbounded";
-		if (this.status == TableauSet.UNSOLVED)
-			str += "unsolved";
-		out.println(STATUSO + str + STATUSC);
-
-		// Print the system status.
-		out.println(STATUSO + "Min constraint weight was set to "
-				+ this.minConstraintWeight + STATUSC);
-
-		// Print any error messages.
-		printErrors(out, type);
-
-		// Plain-text output.
-		if (type == "plain") {
-			// Print the system in plain text.
-			printPlainText(out);
-			// Print warnings if there are any.
-			if (this.getWarnings().size() != 0) {
-				out.println("Non-deal-breaking issue(s):");
-				Iterator warn = this.getWarnings().iterator();
-				while (warn.hasNext()) {
-					out.println(warn.next());
-				}
-			}
-			// HTML output.
-		} else {
-			// Print warnings if there are any.
-			if (this.getWarnings().size() != 0) {
-				out.println(STATUSO
-						+ "HaLP encountered some issue(s) while running."
-						+ STATUSC);
-				out
-						.println(PO
-								+ "<a href='javascript:void(0)' onclick='hideReveal(\"issues\").style.display = \"block\";'>Show/Hide issue(s)</a>"
-								+ PC);
-				out.println("<div id='issues' style='display: none;'>");
-				out.println("<ul>");
-				Iterator warn = this.getWarnings().iterator();
-				while (warn.hasNext()) {
-					out.println("<li>" + warn.next() + "</li>");
-				}
-				out.println("</ul>");
-				out.println("</div>");
-			}
-			// Print the system in HTML.
-			this.printHTML(type, out);
+		try {
+			new TableauSetRenderer(this, type).render(out);
+		} catch (IOException e) {
+			// A PrintStream doesn't throw.
+			e.printStackTrace();
 		}
 	}
 
 	/**
-	 * Print any error messages.
+	 * Prints the status, errors and warnings and one page of the tableaux, for
+	 * sets too big to look at in one go.
 	 * 
 	 * @param out
-	 *            The output PrintStream.
+	 *            Where the content will end up.
 	 * @param type
-	 *            String indicating the type: plain or html.
+	 *            plain, html or html_typology.
+	 * @param page
+	 *            Which page, counting from 0.
+	 * @param pageSize
+	 *            The number of tableaux on a page.
+	 * @throws IOException
+	 *             If out does.
 	 */
-	public void printErrors(PrintStream out, String type) {
-
-		// Stylesheet.
-		String PO = "<p>";
-		String PC = "</p>";
-		if (type == "plain") {
-			PO = PC = "";
-		}
-
-		// If there are errors, print them and stop.
-		if (this.getErrors().size() != 0) {
-			// / Print errors.
-			out.println(PO + "Error message(s):" + PC);
-			Iterator err = this.getErrors().iterator();
-			while (err.hasNext()) {
-				out.println(PO + err.next() + PC);
-			}
-		}
+	public void printPage(Appendable out, String type, int page, int pageSize)
+			throws IOException {
+		new TableauSetRenderer(this, type).renderPage(out, page, pageSize);
 	}
 
 	/**
-	 * Prints the current tableaux in HTML format.
-	 * 
-	 * @param type
-	 * @param <PrintStream>
-	 *            out The place the content ends up.
-	 */
-	private void printHTML(String type, PrintStream out) {
-
-		// HTML mark-up and styles.
-		String TABLEO = "<table class='tableau' border='1'>";
-		String TABLEC = "</table>\n\n";
-		String TRO = "<tr>";
-		String TRC = "</tr>";
-		String TD = "<td></td>";
-		String TDOcenter = "<td align='center'>";
-		String TDOleft = "<td align='left'>";
-		String TDOright = "<td align='right'>";
-		String TDOfixed = "<td class='output'>";
-		String TDC = "</td>";
-		String WINNER_MARK = "<img src='images/hand.png' width='30' height='15' alt='===&gt;' />&nbsp;&nbsp;";
-
-		if (type == "html_typology") {
-			WINNER_MARK = "<B>--></B> &nbsp; ";
-		}
-
-		String line = "";
-
-		// ////////////////////////////////////////////////////////////////////
-		// Print a tableau with just the constraints and their weights.
-		line = TABLEO;
-		out.println(line);
-		// Get and print the constraints, as a table row.
-		ArrayList<LinguisticConstraint> con = this.getConstraints();
-		Iterator conIt = con.iterator();
-		line = TRO;
-		if (conIt.hasNext()) {
-			line += TD;
-		}
-		while (conIt.hasNext()) {
-			LinguisticConstraint currCon = (LinguisticConstraint) conIt.next();
-			line += TDOcenter + currCon.getShortName() + TDC;
-		}
-		line += TRC;
-		out.println(line);
-		// Get and print the weights, as a table row.
-		line = TRO;
-		conIt = con.iterator();
-		if (conIt.hasNext()) {
-			line += TDOright + "<em>Weights</em>" + TDC;
-		}
-		while (conIt.hasNext()) {
-			LinguisticConstraint currCon = (LinguisticConstraint) conIt.next();
-			line += TDOcenter + currCon.getRoundedWeight() + TDC;
-		}
-		line += TRC;
-		out.println(line);
-		line = TABLEC;
-		out.println(line);
-		// ////////////////////////////////////////////////////////////////////
-
-		// / Print the tableaux.
-		ArrayList<Tableau> tableaux = this.getTableaux();
-		Iterator tabIt = tableaux.iterator();
-		int candCount = 0;
-		while (tabIt.hasNext()) {
-			line = "";
-			Tableau tableau = (Tableau) tabIt.next();
-			line += TABLEO;
-			out.println(line);
-
-			// Get and print the weights, as a table row.
-			line = TRO;
-			conIt = con.iterator();
-			if (conIt.hasNext()) {
-				line += TDOright + "<em>Weights</em>" + TDC;
-			}
-			while (conIt.hasNext()) {
-				LinguisticConstraint currCon = (LinguisticConstraint) conIt
-						.next();
-				line += TDOcenter + currCon.getRoundedWeight() + TDC;
-			}
-			line += TRC;
-			out.println(line);
-
-			line = TRO;
-			// / Print input.
-			line += TDOfixed + "<em>Input</em>:&nbsp;&nbsp;"
-					+ tableau.getInput() + TDC;
-			// Get and print the constraints, as a table row.
-			conIt = con.iterator();
-			while (conIt.hasNext()) {
-				LinguisticConstraint currCon = (LinguisticConstraint) conIt
-						.next();
-				line += TDOcenter + currCon.getShortName() + TDC;
-			}
-			line += TRC;
-			out.println(line);
-			line = "";
-
-			// / Print candidates.
-			ArrayList<Candidate> candidates = tableau.getCandidates();
-			Iterator cand_it = candidates.iterator();
-			while (cand_it.hasNext()) {
-				line = TRO;
-				Candidate cand = (Candidate) cand_it.next();
-				candCount++;
-				// / Print output.
-				if (cand.getFrequency() == 0) {
-					line += TDOright;
-
-					// / for typology: add a "make winner" link
-					if (type == "html_typology") {
-						line += "<A STYLE='color:333399;' href='HaLP:manualTypology("
-								+ candCount
-								+ ")'>"
-								+ cand.getOutput()
-								+ "</a>"
-								+ TDC;
-					} else {
-						line += cand.getOutput() + TDC;
-					}
-
-				} else {
-					line += TDOright;
-					line += WINNER_MARK + cand.getOutput() + TDC;
-				}
-				// / Print violations.
-				ArrayList<Cell> cells = cand.getViolationVector();
-				Iterator cell_it = cells.iterator();
-				while (cell_it.hasNext()) {
-					Cell cell = (Cell) cell_it.next();
-					line += TDOcenter + cell.getViolation() + TDC;
-				}
-				// / Print weighted total.
-				line += TDOleft + "Weighted total: " + cand.getRoundedWeight()
-						+ TDC;
-				line += TRC;
-				out.println(line);
-				line = "";
-			}
-			line = TABLEC;
-			out.println(line);
-		}
-	}
-
-	/**
-	 * Prints an OTSoft file in plain-text, with the weights included. It is
-	 * just a call to printPlainly with the second parameter set to
-	 * <code>plain</code>.
+	 * Print any error messages.
 	 * 
 	 * @param out
-	 *            The output stream.
+	 *            The output PrintStream.
+	 * @param type
+	 *            String indicating the type: plain or html.
 	 */
-	private void printPlainText(PrintStream out) {
-		printPlainly(out, "plain");
+	public void printErrors(PrintStream out, String type) {
+		try {
+			new TableauSetRenderer(this, type).renderErrors(out);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 	}
 
 	/**
-	 * Prints an OTSoft file in plain-text, no weights. It is just a call to
-	 * printPlainly with the second parameter set to <code>otsoft</code>.
+	 * Prints an OTSoft file in plain-text, no weights.
 	 * 
 	 * @param out
 	 *            The output stream.
 	 */
 	@SuppressWarnings("unused")
 	private void printOTSoftFile(PrintStream out) {
-		printPlainly(out, "otsoft");
-	}
-
-	/**
-	 * Prints the current tableaux in plain-text.
-	 * 
-	 * @param <PrintStream>
-	 *            out The place the content ends up.
-	 * @param <String>
-	 *            type If this is <code>plain</code> then the weights are
-	 *            printed. Anything else, and the weights are not printed.
-	 */
-	private void printPlainly(PrintStream out, String type) {
-		String line = "";
-		// Print the system status (added by chris).
-		line += "System status: ";
-		if (this.status == TableauSet.FEASIBLE)
-			line += "solved";
-		if (this.status == TableauSet.INFEASIBLE)
-			line += "infeasible";
-		if (this.status == TableauSet.NONCONVERGENT)
-			line += "non-convergent";
-		if (this.status == TableauSet.UNBOUNDED)
-			line += "unbounded";
-		if (this.status == TableauSet.UNSOLVED)
-			line += "unsolved";
-
-		out.println(line);
-		line = "";
-		// / Print constraints' full names.
-		ArrayList<LinguisticConstraint> con = this.getConstraints();
-		Iterator it = con.iterator();
-		if (it.hasNext()) {
-			line += "\t\t";
-		}
-		while (it.hasNext()) {
-			LinguisticConstraint currCon = (LinguisticConstraint) it.next();
-			line += "\t" + currCon.getName();
-		}
-		out.println(line);
-		// / Print constraints' short names.
-		line = "";
-		it = con.iterator();
-		if (it.hasNext()) {
-			line += "\t\t";
-		}
-		while (it.hasNext()) {
-			LinguisticConstraint currCon = (LinguisticConstraint) it.next();
-			line += "\t" + currCon.getShortName();
-		}
-		out.println(line);
-		line = "";
-		// / Print constraint weights.
-		if (type == "plain") {
-			it = con.iterator();
-			if (it.hasNext()) {
-				line += "weights:\t\t";
-			}
-			while (it.hasNext()) {
-				LinguisticConstraint currCon = (LinguisticConstraint) it.next();
-				line += "\t" + currCon.getWeight();
-			}
-			out.println(line);
-		}
-		// / Print the tableaux.
-		ArrayList<Tableau> tableaux = this.getTableaux();
-		it = tableaux.iterator();
-		while (it.hasNext()) {
-			line = "";
-			Tableau tableau = (Tableau) it.next();
-			// / Print input.
-			line += tableau.getInput();
-			// / Print candidates.
-			ArrayList<Candidate> candidates = tableau.getCandidates();
-			Iterator cand_it = candidates.iterator();
-			while (cand_it.hasNext()) {
-				Candidate cand = (Candidate) cand_it.next();
-				// / Print output.
-				line += "\t" + cand.getOutput();
-				// / Print output's frequency.
-				if (cand.getFrequency() == 0) {
-					line += "\t";
-				} else {
-					line += "\t" + cand.getFrequency();
-				}
-				// / Print violations.
-				ArrayList<Cell> cells = cand.getViolationVector();
-				Iterator cell_it = cells.iterator();
-				while (cell_it.hasNext()) {
-					Cell cell = (Cell) cell_it.next();
-					line += "\t" + cell.getViolation();
-				}
-				// / Print weighted total.
-				line = line + "\tWeighted total:\t" + cand.getWeight();
-				out.println(line);
-				line = "";
-			}
+		try {
+			new TableauSetRenderer(this, "otsoft").renderPlainly(out, false);
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
 	}
 
@@ -1044,7 +929,7 @@ public class TableauSet {
 		}
 
 		/// add zeros as necessary to make the violation vector as big as the constraint set
-		for (int i = candidate.getViolationVector().size() ; i < this.con.size() ; i++) {
+		for (int i = candidate.violationCount() ; i < this.con.size() ; i++) {
 			Cell cell = new Cell(0);
 			candidate.addViolation(cell);
 		}
@@ -1076,7 +961,52 @@ public class TableauSet {
 	public void setLexicallySpecificConstraints(boolean b) {
 		this.lexicallySpecificConstraints = b;
 	}
+
+	public boolean isLexicallySpecificConstraints() {
+		return this.lexicallySpecificConstraints;
+	}
+
+	/**
+	 * Read in a grammar written by CompiledGrammar.write(). The file is
+	 * mapped into memory and each tableau is only built when it is first
+	 * asked for.
+	 * 
+	 * @param file
+	 *            The compiled grammar.
+	 * @return true if the file was read correctly, else false.
+	 * @see CompiledGrammar
+	 */
+	public boolean readCompiledGrammar(File file) {
+		try {
+			CompiledGrammar.open(file).loadInto(this);
+			return true;
+		} catch (IOException e) {
+			this.addError("Your compiled grammar could not be read: "
+					+ e.getMessage());
+			return false;
+		}
+	}
 	
+	/**
+	 * Read in an OTSoft file straight from disk, in a single pass. This reads
+	 * the same files as readOTSoftFile(getPrunedFile(name)), but much faster
+	 * and without holding the text in memory.
+	 * 
+	 * @param file
+	 *            The OTSoft file.
+	 * @return true if the file was read correctly, else false.
+	 * @see OTSoftReader
+	 */
+	public boolean readOTSoftFile(File file) {
+		try {
+			return new OTSoftReader(this).read(file);
+		} catch (IOException e) {
+			this.addError("Your OTSoft file could not be read: "
+					+ e.getMessage());
+			return false;
+		}
+	}
+
 	/** Read in an OTSoft file.
 	 * @param OTsoftfile An ArrayList of String object.
 	 * @return true if the file was read correctly, else false.
@@ -1084,6 +1014,11 @@ public class TableauSet {
 	public boolean readOTSoftFile (ArrayList<String> OTsoftfile) {
 		boolean readSuccessfully = true;
 		Iterator<String> file = OTsoftfile.iterator();
+		if (OTsoftfile.size() < 2) {
+			// Empty, e.g. because getPrunedFile() couldn't read the file.
+			this.addError("No constraint names were found in your OTSoft file");
+			return false;
+		}
 		
 		/// Get first two lines, hope to find constraints in them.
 		//  Constraints are counted via their tab spaces.
@@ -1091,16 +1026,97 @@ public class TableauSet {
 		String[] con1 = pat1.split(file.next());
 		String[] con2 = pat1.split(file.next());
 
+		if (!this.readOTSoftHeader(con1, con2)) {
+			readSuccessfully = false;
+		} else {
+			//// Read the rest of the file, looking for tableaux.
+			
+			boolean reachedEndOfTableaux = false;
+			
+			while (file.hasNext()) {
+				String[] currLine  = pat1.split(file.next());
+				
+				if (currLine[1].equalsIgnoreCase("[end of tableaux]")) reachedEndOfTableaux = true;
+				
+				if (!reachedEndOfTableaux) {
+					
+					/// read tableaux
+					
+					if (currLine.length < 3) { // tab-position 3 is the first place an output can sit
+						String line_num = currLine[0];
+						this.addError("Line no. " + line_num + " of you OTSoft file could not be read.");
+						readSuccessfully = false;
+					} else {
+						if (currLine[1].trim().length() > 0) {
+							/// Found input, make new tableau.
+							Tableau tableau = new Tableau(this);							 
+							LinguisticForm input = new LinguisticForm(currLine[1]);
+							tableau.setInput(input);							
+							tableau.addCandidate(readOTSoftCandidate(currLine,tableau));							
+							this.addTableau(tableau);							
+						} else {
+							/// Input not found, try to append to current tableau,
+							/// or report error if there isn't one.
+							if (this.size() == 0) {
+								String line_num = currLine[0];
+								this.addError("Line no. " + line_num + " in your OTSoft file could not be associated with any input.");
+							} else {
+								/// Add candidate to the last tableau.
+								Tableau tableau = this.getTableaux().get(this.getTableaux().size() - 1);
+								tableau.addCandidate(readOTSoftCandidate(currLine,tableau));
+							}
+						}
+					}
+				} else {
+					this.readOTSoftOption(currLine);
+				}
+			}
+			if (this.size() == 0) {
+				this.addWarning("No tableaux were found in your OTSoft file.");
+			}
+		}
+		this.checkOTSoftFile();
+		return readSuccessfully;	
+	}
+
+	/**
+	 * The last step of reading an OTSoft file: pick the storage of each
+	 * tableau and check that no tableau has more than one winner.
+	 */
+	void checkOTSoftFile() {
+		this.compress();
+
+		// Check that no tableau has more than one winner.
+		for (int i = 0; i < this.size(); i++) {
+			if (this.getTableau(i).winnerCount() > 1) {
+				int count = i+1;
+				this.addError("Tableau " + count + " has more than one winner.");
+			}
+		}
+	}
+
+	/**
+	 * Read the two header lines of an OTSoft file (already split at the tabs,
+	 * with the line number in front): the minimum constraint weight and the
+	 * constraint names.
+	 * 
+	 * @param con1
+	 *            The first line: long constraint names.
+	 * @param con2
+	 *            The second line: short constraint names.
+	 * @return true if constraints were found, else false.
+	 */
+	boolean readOTSoftHeader(String[] con1, String[] con2) {
 		// If the constraint counts in the first two lines don't match, quit.
 		if (con1.length != con2.length) {
 			String line_num1 = con1[0], line_num2 = con2[0]; 
 			this.addError("The number of constraints found in line no. " + line_num1 + " of your OTSoft file did not match the number of constraints found in line no. " + line_num2 + " of that file.");
-			readSuccessfully = false;
+			return false;
 		} else {
 			if (con1.length < 5) { // tab-position 5 is the first place a constraint can sit.
 				String line_num1 = con1[0]; 
 				this.addError("No constraint names were found in line no. " + line_num1 + " of your OTSoft file");
-				readSuccessfully = false;
+				return false;
 			} else {
 				// Look for a default value.
 				String flt = "(\\+|-)?\\d+(\\.\\d+)?";
@@ -1118,145 +1134,101 @@ public class TableauSet {
 					cons.setHTMLName(con2[i]);
 					this.addConstraint(cons);
 				}				
-				//// Read the rest of the file, looking for tableaux.
-				
-				boolean reachedEndOfTableaux = false;
-				
-				while (file.hasNext()) {
-					String[] currLine  = pat1.split(file.next());
-					
-					if (currLine[1].equalsIgnoreCase("[end of tableaux]")) reachedEndOfTableaux = true;
-					
-					if (!reachedEndOfTableaux) {
-						
-						/// read tableaux
-						
-						if (currLine.length < 3) { // tab-position 3 is the first place an output can sit
-							String line_num = currLine[0];
-							this.addError("Line no. " + line_num + " of you OTSoft file could not be read.");
-							readSuccessfully = false;
-						} else {
-							if (currLine[1].trim().length() > 0) {
-								/// Found input, make new tableau.
-								Tableau tableau = new Tableau(this);							 
-								LinguisticForm input = new LinguisticForm(currLine[1]);
-								tableau.setInput(input);							
-								tableau.addCandidate(readOTSoftCandidate(currLine,tableau));							
-								this.addTableau(tableau);							
-							} else {
-								/// Input not found, try to append to current tableau,
-								/// or report error if there isn't one.
-								if (this.getTableaux().size() == 0) {
-									String line_num = currLine[0];
-									this.addError("Line no. " + line_num + " in your OTSoft file could not be associated with any input.");
-								} else {
-									/// Add candidate to the last tableau.
-									Tableau tableau = this.getTableaux().get(this.getTableaux().size() - 1);
-									tableau.addCandidate(readOTSoftCandidate(currLine,tableau));
-								}
-							}
-						}
-					} else {
-						//// read advanced options
-						
-						/// lexically specific constraint - read true or false
-						if (currLine[1].trim().equalsIgnoreCase("[lexically specific constraints]")) {
-							if (currLine[2].trim().length()>0) {
-								if (currLine[2].trim().equals("0")) {
-									this.setLexicallySpecificConstraints(false);
-								} else {
-									this.setLexicallySpecificConstraints(true);
-								}
-							}
-						}
-						
-						///rate - read double
-						if (currLine[1].trim().equalsIgnoreCase("[rate]")) {
-							if (currLine.length>2 && currLine[2].trim().length()>0) {
-								this.setRate(readDouble(currLine[2].trim()));
-							}
-						}
-						
-						/// output stage - read double
-						if (currLine[1].trim().equalsIgnoreCase("[output stage]")) {
-							if (currLine.length>2 && currLine[2].trim().length()>0) {
-								this.setOutputStage(readDouble(currLine[2].trim()));
-							}
-						}
-						
-						/// biases - read one double per constraint
-						if (currLine[1].trim().equalsIgnoreCase("[bias]")) {
-							for (int i = 4 ; i < currLine.length ; i++) {
-								if (currLine[i].trim().length()>0) {
-									double bias = readDouble(currLine[i].trim());
-									if ((i-4) < this.getConstraints().size()) {
-										this.getConstraint(i-4).setBias(bias);
-									}
-								}
-							}
-						}
-						
-						/// initial rankings - read one double per constraint
-						if (currLine[1].trim().equalsIgnoreCase("[initial ranking]")) {
-							for (int i = 4 ; i < currLine.length ; i++) {
-								if (currLine[i].trim().length()>0) {
-									double initialRanking = readDouble(currLine[i].trim());
-									if ((i-4) < this.getConstraints().size()) {
-										this.getConstraint(i-4).setInitialRanking(initialRanking);
-									}
-								}
-							}
-						}
+			}
+		}
+		return true;
+	}
 
-						/// read minimal weights
-						/// read column 2 as default double value, then read one double per constraint, which overrides the column 2 value
-						if (currLine[1].trim().equalsIgnoreCase("[minimal weight]")) {
-							if (currLine.length>2 && currLine[2].trim().length()>0) {
-								this.setMinConstraintWeight(readDouble(currLine[2].trim()));
-							}
-							for (int i = 4 ; i < currLine.length ; i++) {
-								if (currLine[i].trim().length()>0) {
-									double minWeight = readDouble(currLine[i].trim());
-									if ((i-4) < this.getConstraints().size()) {
-										this.getConstraint(i-4).setUseLocalMinConstraintWeight(true);
-										this.getConstraint(i-4).setMinConstraintWeight(minWeight);
-									}
-								}
-							}
-						}
-						
-						/// read noise
-						/// read column 2 as default double value, then read one double per constraint, which overrides the column 2 value
-						if (currLine[1].trim().equalsIgnoreCase("[noise]")) {
-							if (currLine.length>2 && currLine[2].trim().length()>0) {
-								this.setNoise(readDouble(currLine[2].trim()));
-							}
-							for (int i = 4 ; i < currLine.length ; i++) {
-								if (currLine[i].trim().length()>0) {
-									double noise = readDouble(currLine[i].trim());
-									if ((i-4) < this.getConstraints().size()) {
-										this.getConstraint(i-4).setUseLocalNoise(true);
-										this.getConstraint(i-4).setNoise(noise);
-									}
-								}
-							}
-						}	
+	/**
+	 * Read one line of the advanced options that follow [end of tableaux],
+	 * already split at the tabs, with the line number in front.
+	 * 
+	 * @param currLine
+	 *            The line.
+	 */
+	void readOTSoftOption(String[] currLine) {
+		/// lexically specific constraint - read true or false
+		if (currLine[1].trim().equalsIgnoreCase("[lexically specific constraints]")) {
+			if (currLine.length>2 && currLine[2].trim().length()>0) {
+				if (currLine[2].trim().equals("0")) {
+					this.setLexicallySpecificConstraints(false);
+				} else {
+					this.setLexicallySpecificConstraints(true);
+				}
+			}
+		}
+		
+		///rate - read double
+		if (currLine[1].trim().equalsIgnoreCase("[rate]")) {
+			if (currLine.length>2 && currLine[2].trim().length()>0) {
+				this.setRate(readDouble(currLine[2].trim()));
+			}
+		}
+		
+		/// output stage - read double
+		if (currLine[1].trim().equalsIgnoreCase("[output stage]")) {
+			if (currLine.length>2 && currLine[2].trim().length()>0) {
+				this.setOutputStage(readDouble(currLine[2].trim()));
+			}
+		}
+		
+		/// biases - read one double per constraint
+		if (currLine[1].trim().equalsIgnoreCase("[bias]")) {
+			for (int i = 4 ; i < currLine.length ; i++) {
+				if (currLine[i].trim().length()>0) {
+					double bias = readDouble(currLine[i].trim());
+					if ((i-4) < this.getConstraints().size()) {
+						this.getConstraint(i-4).setBias(bias);
 					}
 				}
-				if (this.getTableaux().size() == 0) {
-					this.addWarning("No tableaux were found in your OTSoft file.");
+			}
+		}
+		
+		/// initial rankings - read one double per constraint
+		if (currLine[1].trim().equalsIgnoreCase("[initial ranking]")) {
+			for (int i = 4 ; i < currLine.length ; i++) {
+				if (currLine[i].trim().length()>0) {
+					double initialRanking = readDouble(currLine[i].trim());
+					if ((i-4) < this.getConstraints().size()) {
+						this.getConstraint(i-4).setInitialRanking(initialRanking);
+					}
 				}
 			}
 		}
-		// Check that no tableau has more than one winner.
-		for (int i = 0; i < this.size(); i++) {
-			if (this.getTableau(i).winnerCount() > 1) {
-				int count = i+1;
-				this.addError("Tableau " + count + " has more than one winner.");
+
+		/// read minimal weights
+		/// read column 2 as default double value, then read one double per constraint, which overrides the column 2 value
+		if (currLine[1].trim().equalsIgnoreCase("[minimal weight]")) {
+			if (currLine.length>2 && currLine[2].trim().length()>0) {
+				this.setMinConstraintWeight(readDouble(currLine[2].trim()));
+			}
+			for (int i = 4 ; i < currLine.length ; i++) {
+				if (currLine[i].trim().length()>0) {
+					double minWeight = readDouble(currLine[i].trim());
+					if ((i-4) < this.getConstraints().size()) {
+						this.getConstraint(i-4).setUseLocalMinConstraintWeight(true);
+						this.getConstraint(i-4).setMinConstraintWeight(minWeight);
+					}
+				}
 			}
 		}
-				
-		return readSuccessfully;	
+		
+		/// read noise
+		/// read column 2 as default double value, then read one double per constraint, which overrides the column 2 value
+		if (currLine[1].trim().equalsIgnoreCase("[noise]")) {
+			if (currLine.length>2 && currLine[2].trim().length()>0) {
+				this.setNoise(readDouble(currLine[2].trim()));
+			}
+			for (int i = 4 ; i < currLine.length ; i++) {
+				if (currLine[i].trim().length()>0) {
+					double noise = readDouble(currLine[i].trim());
+					if ((i-4) < this.getConstraints().size()) {
+						this.getConstraint(i-4).setUseLocalNoise(true);
+						this.getConstraint(i-4).setNoise(noise);
+					}
+				}
+			}
+		}	
 	}
 
 	
@@ -1291,6 +1263,7 @@ public class TableauSet {
 	 */
 	public void setMarkMultiplier(double x) {
 		this.markMultiplier = x;
+		this.multipliersChanged();
 	}
 
 	/**
@@ -1301,6 +1274,7 @@ public class TableauSet {
 	 */
 	public void setIOFaithMultiplier(double x) {
 		this.ioFaithMultiplier = x;
+		this.multipliersChanged();
 	}
 
 	/**
@@ -1311,6 +1285,7 @@ public class TableauSet {
 	 */
 	public void setOOFaithMultiplier(double x) {
 		this.ooFaithMultiplier = x;
+		this.multipliersChanged();
 	}
 
 	public double getMarkMultiplier() {
@@ -1326,28 +1301,65 @@ public class TableauSet {
 	}
 
 	/**
-	 * Get the number of possible langugages in a TableauSet See member
-	 * "languages" for an explanation of what a language is in this context
+	 * The multiplier of each constraint, indexed like the constraints:
+	 * markedness constraints get the markedness multiplier, and so on, and
+	 * constraints of no family get 1. Do not write to it.
 	 * 
-	 * @return int the number of languages in the TableauSet
+	 * @return The multipliers.
 	 */
-	public int getLanguageCount() {
+	double[] getMultiplierVector() {
+		double[] m = this.multipliers;
+		if (m == null) {
+			int n = this.constraintCount();
+			m = new double[n];
+			for (int i = 0; i < n; i++) {
+				LinguisticConstraint currentCon = this.con.get(i);
+				m[i] = 1.0;
+				if (currentCon.isMarkedness())
+					m[i] = this.markMultiplier;
+				if (currentCon.isIOFaithfulness())
+					m[i] = this.ioFaithMultiplier;
+				if (currentCon.isOOFaithfulness())
+					m[i] = this.ooFaithMultiplier;
+			}
+			this.multipliers = m;
+		}
+		return m;
+	}
 
-		Iterator it = this.getTableaux().iterator();
-		int totalLanguages = 1;
+	/** Called by a constraint when its family changes. */
+	void constraintTypeChanged() {
+		this.multipliersChanged();
+	}
 
-		while (it.hasNext()) {
-			Tableau tableau = (Tableau) it.next();
-			int currentTableauCandidates = 0;
-			Iterator it2 = tableau.getCandidates().iterator();
-			while (it2.hasNext()) {
-				currentTableauCandidates++;
-				it2.next();
-			}
-			totalLanguages *= currentTableauCandidates;
+	private void multipliersChanged() {
+		this.multipliers = null;
+		this.multiplierVersion++;
+	}
+
+	/**
+	 * How many times the multipliers have changed.
+	 * 
+	 * @see #getMultiplierVector()
+	 */
+	int getMultiplierVersion() {
+		return this.multiplierVersion;
+	}
+
+	/**
+	 * Get the number of possible langugages in a TableauSet See member
+	 * "languages" for an explanation of what a language is in this context
+	 * 
+	 * @return the number of languages in the TableauSet: the product of the
+	 *         numbers of candidates, which soon outgrows any int or long.
+	 */
+	public BigInteger getLanguageCount() {
+		BigInteger totalLanguages = BigInteger.ONE;
+		for (int i = 0; i < this.size(); i++) {
+			totalLanguages = totalLanguages.multiply(BigInteger.valueOf(this
+					.getTableau(i).candidateCount()));
 		}
 		return totalLanguages;
-
 	}
 
 	public ArrayList<Language> getLanguages() {
@@ -1363,25 +1375,23 @@ public class TableauSet {
 		return true;
 	}
 
-	/*
-	 * public void generateLanguages() {
-	 * 
-	 * ArrayList<Language> seedLanguages = new ArrayList<Language>();
-	 * seedLanguages.add(new Language(null));
+	/**
+	 * Find the languages that some ranking of the constraints produces, and
+	 * keep them as the languages of this TableauSet. They are found one at a
+	 * time, by a TypologyEnumerator, which skips the rest without making
+	 * them; getRankableLanguages() and getFeasibleLanguages() return them.
 	 * 
-	 * Iterator tableaux = this.getTableaux().iterator(); while
-	 * (tableaux.hasNext()) { Tableau tabl = (Tableau) tableaux.next();
-	 * ArrayList<Language> newLanguages = new ArrayList<Language>(); Iterator
-	 * candidates = tabl.getCandidates().iterator(); while
-	 * (candidates.hasNext()) { Candidate cand = (Candidate) candidates.next();
-	 * Iterator it = seedLanguages.iterator(); while (it.hasNext()) { Language
-	 * lang = (Language) it.next(); Language newLanguage = (Language)
-	 * lang.clone(); newLanguage.add(cand); newLanguages.add(newLanguage); } }
-	 * seedLanguages.clear(); Iterator it2 = newLanguages.iterator(); while
-	 * (it2.hasNext()) { Language lang = (Language) it2.next(); Language
-	 * newLanguage = (Language) lang.clone(); seedLanguages.add(newLanguage); }
-	 * } this.languages = seedLanguages; }
+	 * @return the number of languages found.
+	 * @see TypologyEnumerator
 	 */
+	public int generateLanguages() {
+		this.languages = new ArrayList<Language>();
+		TypologyEnumerator typology = new TypologyEnumerator(this);
+		while (typology.next()) {
+			this.languages.add(typology.getLanguage());
+		}
+		return this.languages.size();
+	}
 
 	public ArrayList<Language> getFeasibleLanguages() {
 		ArrayList<Language> feasibleLanguages = new ArrayList<Language>();
@@ -1454,48 +1464,86 @@ public class TableauSet {
 		return true;
 	}
 
+	/**
+	 * The candidate with the given number, counting the candidates of all the
+	 * tableaux in order from 1.
+	 * 
+	 * @return The candidate, or null if there is no such number.
+	 */
 	public Candidate getCandidateByNumber(int winnerNum) {
-
-		if ((winnerNum > 0) && (winnerNum <= this.getCandidateCount())) {
-
-			Iterator it = this.getTableaux().iterator();
-			int totalCandidates = 0;
-
-			while (it.hasNext()) {
-				Tableau tableau = (Tableau) it.next();
-				Iterator it2 = tableau.getCandidates().iterator();
-				while (it2.hasNext()) {
-					totalCandidates++;
-					Candidate cand = (Candidate) it2.next();
-					if (totalCandidates == winnerNum) {
-						return cand;
-					}
-				}
+		int[] before = this.getCandidatesBefore();
+		if (winnerNum < 1 || winnerNum > before[before.length - 1]) {
+			return null;
+		}
+		// The last tableau with fewer candidates before it than winnerNum.
+		int lo = 0, hi = before.length - 2;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (before[mid] < winnerNum) {
+				lo = mid;
+			} else {
+				hi = mid - 1;
 			}
 		}
-		return null;
+		return this.getTableau(lo).getCandidate(winnerNum - before[lo] - 1);
 	}
 
+	/**
+	 * The number of a candidate, counting the candidates of all the tableaux
+	 * in order from 1; 0 if it isn't in this set. Takes constant time once the
+	 * count of candidates before each tableau is known.
+	 */
 	public int getCandidateNumber(Candidate cand) {
-
-		if (cand.getParent().getParent() == this) {
-			Iterator it = this.getTableaux().iterator();
-			int totalCandidates = 0;
-			while (it.hasNext()) {
-				Tableau tableau = (Tableau) it.next();
-				Iterator it2 = tableau.getCandidates().iterator();
-				while (it2.hasNext()) {
-					totalCandidates++;
-					Candidate currentCand = (Candidate) it2.next();
-					if (currentCand == cand) {
-						return totalCandidates;
-					}
+		Tableau tabl = cand.getParent();
+		if (tabl == null || tabl.getParent() != this || this.tableaux == null) {
+			return 0;
+		}
+		int t = tabl.getIndex();
+		int r = cand.getRow();
+		if (t >= 0 && t < this.tableaux.size() && this.tableaux.get(t) == tabl
+				&& r >= 0 && r < tabl.candidateCount()
+				&& tabl.getCandidate(r) == cand) {
+			return this.getCandidatesBefore()[t] + r + 1;
+		}
+		// The lists were changed behind our back: search.
+		Iterator it = this.getTableaux().iterator();
+		int totalCandidates = 0;
+		while (it.hasNext()) {
+			Tableau tableau = (Tableau) it.next();
+			Iterator it2 = tableau.getCandidates().iterator();
+			while (it2.hasNext()) {
+				totalCandidates++;
+				Candidate currentCand = (Candidate) it2.next();
+				if (currentCand == cand) {
+					return totalCandidates;
 				}
 			}
 		}
 		return 0;
 	}
 
+	/**
+	 * The number of candidates before each tableau, and the total at the end,
+	 * worked out again if the tableaux have changed since.
+	 */
+	private int[] getCandidatesBefore() {
+		int[] before = this.candidatesBefore;
+		int n = (this.tableaux == null) ? 0 : this.tableaux.size();
+		if (before == null || before.length != n + 1) {
+			before = new int[n + 1];
+			for (int t = 0; t < n; t++) {
+				before[t + 1] = before[t] + this.getTableau(t).candidateCount();
+			}
+			this.candidatesBefore = before;
+		}
+		return before;
+	}
+
+	/** Called by a tableau when a candidate is added to it. */
+	void candidatesChanged() {
+		this.candidatesBefore = null;
+	}
+
 	public boolean makeWinner(Candidate cand) {
 
 		boolean success = false;
@@ -1562,6 +1610,25 @@ public class TableauSet {
 	 *         the file.
 	 */
 	public static ArrayList<String> getPrunedFile(String fileName) {
+		return getPrunedFile(fileName, null);
+	}
+
+	/**
+	 * Takes a text file, compressed or not, removes blank line and comments
+	 * lines, adds line numbers (in front of each line, separated by a tab)
+	 * and returns the contentful lines in an arrayList
+	 * 
+	 * @param fileName
+	 *            The file to process.
+	 * @param ts
+	 *            Where to report a file that can't be read, or null to print
+	 *            the problem.
+	 * @return OTsoftfile ArrayList of Strings containing the useful parts of
+	 *         the file; empty if it couldn't be read.
+	 * @see CompressedInput
+	 */
+	public static ArrayList<String> getPrunedFile(String fileName,
+			TableauSet ts) {
 
 		// This commenting scheme seemed too permissive,
 		// so we switched to HTML-style comments. --- Chris
@@ -1579,11 +1646,10 @@ public class TableauSet {
 
 		ArrayList<String> OTsoftfile = new ArrayList<String>();
 
-		File OTSoft = new File(fileName);
-		if (OTSoft.exists() && OTSoft.isFile() && OTSoft.canRead()) {
+		try {
+			BufferedReader input = CompressedInput.openReader(new File(
+					fileName));
 			try {
-				BufferedReader input = new BufferedReader(
-						new FileReader(OTSoft));
 				String line = null;
 				int line_number = 0;
 				while ((line = input.readLine()) != null) {
@@ -1597,70 +1663,148 @@ public class TableauSet {
 						OTsoftfile.add(line_number + "\t" + line);
 					}
 				}
-			} catch (FileNotFoundException ex) {
-				ex.printStackTrace();
-			} catch (IOException ex) {
-				ex.printStackTrace();
+			} finally {
+				input.close();
 			}
-
-		} else {
-
-			// System.out.println("File not found, or could not be read.");
+		} catch (IOException ex) {
+			reportUnreadable(ts, ex);
 		}
 
 		return OTsoftfile;
 
 	}
 
-	/*
+	/** Report an OTSoft file that couldn't be read. */
+	static void reportUnreadable(TableauSet ts, IOException ex) {
+		if (ts == null) {
+			ex.printStackTrace();
+		} else {
+			ts.addError("Your OTSoft file could not be read: "
+					+ ex.getMessage());
+		}
+	}
+
+	/**
 	 * Returns a randomly selected tableau, based on the frequencies of the
-	 * winners
+	 * winners: the chance of picking a tableau is the summed frequency of its
+	 * winners over the summed frequency of all winners.
 	 * 
-	 * @return The randomly selected tableau
+	 * @return The randomly selected tableau, or null if there are no winners.
 	 */
-
 	public Tableau randomTableau() {
-		double totalFrequency = 0;
-		ArrayList<Candidate> winners = new ArrayList<Candidate>(); // keep track
-																	// of the
-																	// winners,
-																	// in order
-
-		//
-		Iterator tableauxIter = this.getTableaux().iterator();
-		while (tableauxIter.hasNext()) {
-			Tableau currentTableau = (Tableau) tableauxIter.next();
-			Iterator winnersIter = currentTableau.getWinners().iterator();
-			while (winnersIter.hasNext()) {
-				Candidate currentWinner = (Candidate) winnersIter.next();
-				winners.add(currentWinner);
-				totalFrequency += currentWinner.getFrequency();
-			}
+		return this.randomTableau(NoiseGenerator.current());
+	}
+
+	/**
+	 * Same as randomTableau(), drawing from the given generator.
+	 * 
+	 * @param generator
+	 *            The source of randomness.
+	 * @return The randomly selected tableau, or null if there are no winners.
+	 */
+	public Tableau randomTableau(Random generator) {
+		int i = this.getSampler().sample(generator);
+		if (i < 0) {
+			return null;
 		}
+		return this.getTableau(i);
+	}
 
-		// Given a list of the winners, and their total frequency,
-		// generate a number between 0 and the total frequency.
-		// Run through the ArrayList of winners, subtracting the
-		// frequency of each one from the random number, until it
-		// reaches zero. The current winner's tableau will be returned.
-
-		Random generator = new Random();
-		Double choice = generator.nextDouble() * totalFrequency;// because the
-																// random number
-																// generated
-																// will be
-																// between 0 and
-																// 1
-		Iterator winnersIter = winners.iterator();
-		while (winnersIter.hasNext()) {
-			Candidate currentWinner = (Candidate) winnersIter.next();
-			choice -= currentWinner.getFrequency();
-			if (choice <= 0) {
-				return currentWinner.getParent();
+	/**
+	 * The tableau sampler, rebuilt from scratch if it's missing or if the list
+	 * of tableaux was changed behind our back.
+	 */
+	private FrequencySampler getSampler() {
+		int n = (this.tableaux == null) ? 0 : this.tableaux.size();
+		if (this.sampler == null || this.sampler.size() != n) {
+			FrequencySampler fresh = new FrequencySampler();
+			for (int i = 0; i < n; i++) {
+				Tableau tabl = this.tableaux.get(i);
+				if (tabl == null) {
+					// Not built yet: the compiled grammar knows its mass.
+					fresh.add(this.source.winnerMass(i));
+				} else {
+					tabl.setIndex(i);
+					fresh.add(tabl.getWinnerMass());
+				}
 			}
+			this.sampler = fresh;
 		}
+		return this.sampler;
+	}
 
-		return null; // The method should never get to this point.
+	/**
+	 * Get the tableau sampler ready for concurrent use by several learners
+	 * that share this TableauSet: after this, randomTableau(Random) only
+	 * reads, as long as no frequency changes.
+	 */
+	public void prepareSampler() {
+		this.getSampler().prepare();
+	}
 
+	/**
+	 * Make this TableauSet a read-only template that any number of learners,
+	 * in any number of threads, can share, each with weights of its own (see
+	 * Perceptron(TableauSet, double[], long)). Every tableau is built and
+	 * every cache filled; from then on adding or removing tableaux,
+	 * candidates or constraints, and changing violation marks or frequencies,
+	 * throws an IllegalStateException. The set's own weights can still be
+	 * changed: they are what a learner copies to start from.
+	 */
+	public void freeze() {
+		if (!this.frozen) {
+			this.buildAll();
+			this.compress();
+			this.prepareSampler();
+			this.getMultiplierVector();
+			this.frozen = true;
+		}
+	}
+
+	/**
+	 * Whether freeze() has been called.
+	 * 
+	 * @return true if the tableaux can't be changed.
+	 */
+	public boolean isFrozen() {
+		return this.frozen;
+	}
+
+	/** Called before anything that would change a frozen TableauSet. */
+	void checkNotFrozen() {
+		if (this.frozen) {
+			throw new IllegalStateException("This TableauSet is frozen: "
+					+ "its tableaux are shared and can't be changed.");
+		}
+	}
+
+	/**
+	 * Let every tableau pick dense or sparse storage for its violation marks,
+	 * according to how many of them are zero.
+	 * 
+	 * @return The number of tableaux that are now sparse.
+	 * @see Tableau#compress()
+	 */
+	public int compress() {
+		int sparse = 0;
+		int n = (this.tableaux == null) ? 0 : this.tableaux.size();
+		for (int i = 0; i < n; i++) {
+			Tableau tabl = this.tableaux.get(i);
+			if (tabl != null && tabl.compress()) {
+				sparse++;
+			}
+		}
+		return sparse;
+	}
+
+	/** Called by a tableau whenever the frequency of its winners changes. */
+	void winnerMassChanged(Tableau tabl) {
+		if (this.sampler != null) {
+			if (tabl.getIndex() < this.sampler.size()) {
+				this.sampler.set(tabl.getIndex(), tabl.getWinnerMass());
+			} else {
+				this.sampler = null;
+			}
+		}
 	}
 }
@@ -0,0 +1,457 @@
+package perceptron;
+
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+
+/**
+ * <p>
+ * Writes a TableauSet, as TableauSet.print() shows it, straight to an
+ * Appendable (a PrintStream, a Writer, a StringBuilder...), one line at a
+ * time. Only the current line is held in memory, and the parts that are the
+ * same in every tableau (the row of weights, the row of constraint names) are
+ * built once, so the time taken grows with the size of the output and the
+ * memory doesn't grow at all.
+ * </p>
+ *
+ * <p>
+ * The type is the one print() takes: <code>plain</code>, <code>html</code>
+ * or <code>html_typology</code>. renderPage() shows the header and only
+ * some of the tableaux, for files too big to look at in one go.
+ * </p>
+ *
+ * @see TableauSet#print(java.io.PrintStream, String)
+ */
+public class TableauSetRenderer {
+
+	/*
+	 * ================================================================= Class
+	 * variables
+	 * =================================================================
+	 */
+
+	public static String newline = System.getProperty("line.separator");
+
+	// HTML mark-up and styles.
+	private final static String TABLEO = "<table class='tableau' border='1'>";
+	private final static String TABLEC = "</table>\n\n";
+	private final static String TRO = "<tr>";
+	private final static String TRC = "</tr>";
+	private final static String TD = "<td></td>";
+	private final static String TDOcenter = "<td align='center'>";
+	private final static String TDOleft = "<td align='left'>";
+	private final static String TDOright = "<td align='right'>";
+	private final static String TDOfixed = "<td class='output'>";
+	private final static String TDC = "</td>";
+
+	private TableauSet ts;
+
+	private String type;
+
+	private boolean plain;
+
+	private String PO = "<p>", PC = "</p>", STATUSO = "<h3>",
+			STATUSC = "</h3>";
+
+	private String winnerMark = "<img src='images/hand.png' width='30' height='15' alt='===&gt;' />&nbsp;&nbsp;";
+
+	/** The line being written. */
+	private StringBuilder line = new StringBuilder();
+
+	private DecimalFormat rounding = new DecimalFormat("0.###");
+
+	/** The HTML row of weights, built by the first page. */
+	private String weightRow;
+
+	/** The HTML cells of constraint names. */
+	private String nameCells;
+
+	/**
+	 * A renderer of the given type.
+	 *
+	 * @param ts
+	 *            The tableaux to show.
+	 * @param type
+	 *            plain, html or html_typology.
+	 */
+	public TableauSetRenderer(TableauSet ts, String type) {
+		this.ts = ts;
+		this.type = type;
+		this.plain = "plain".equals(type);
+		if (this.plain) {
+			PO = PC = STATUSO = STATUSC = "";
+		}
+		if ("html_typology".equals(type)) {
+			this.winnerMark = "<B>--></B> &nbsp; ";
+		}
+	}
+
+	/*
+	 * =================================================================
+	 * Whole documents
+	 * =================================================================
+	 */
+
+	/**
+	 * Write everything: status, errors, warnings and all the tableaux.
+	 *
+	 * @param out
+	 *            Where the content ends up.
+	 * @throws IOException
+	 *             If out does.
+	 */
+	public void render(Appendable out) throws IOException {
+		this.render(out, 0, this.ts.size());
+	}
+
+	/**
+	 * Write the status, errors and warnings, and page number page of the
+	 * tableaux, counting from 0.
+	 *
+	 * @param out
+	 *            Where the content ends up.
+	 * @param page
+	 *            Which page.
+	 * @param pageSize
+	 *            The number of tableaux on a page.
+	 * @throws IOException
+	 *             If out does.
+	 */
+	public void renderPage(Appendable out, int page, int pageSize)
+			throws IOException {
+		int from = (int) Math.min((long) page * pageSize, this.ts.size());
+		this.render(out, from, Math.min(from + pageSize, this.ts.size()));
+	}
+
+	/**
+	 * Write the status, errors and warnings, and tableaux from to to - 1.
+	 */
+	public void render(Appendable out, int from, int to) throws IOException {
+		// Print the system status.
+		this.println(out, STATUSO + "LP status: " + this.statusWord()
+				+ STATUSC);
+		this.println(out, STATUSO + "Min constraint weight was set to "
+				+ this.ts.getMinConstraintWeight() + STATUSC);
+
+		// Print any error messages.
+		this.renderErrors(out);
+
+		if (this.plain) {
+			this.renderPlainly(out, true, from, to);
+			// Print warnings if there are any.
+			if (this.ts.getWarnings().size() != 0) {
+				this.println(out, "Non-deal-breaking issue(s):");
+				for (int i = 0; i < this.ts.getWarnings().size(); i++) {
+					this.println(out, this.ts.getWarnings().get(i));
+				}
+			}
+		} else {
+			// Print warnings if there are any.
+			if (this.ts.getWarnings().size() != 0) {
+				this.println(out, STATUSO
+						+ "HaLP encountered some issue(s) while running."
+						+ STATUSC);
+				this.println(out, PO
+						+ "<a href='javascript:void(0)' onclick='hideReveal(\"issues\").style.display = \"block\";'>Show/Hide issue(s)</a>"
+						+ PC);
+				this.println(out, "<div id='issues' style='display: none;'>");
+				this.println(out, "<ul>");
+				for (int i = 0; i < this.ts.getWarnings().size(); i++) {
+					this.println(out, "<li>" + this.ts.getWarnings().get(i)
+							+ "</li>");
+				}
+				this.println(out, "</ul>");
+				this.println(out, "</div>");
+			}
+			this.renderHTML(out, from, to);
+		}
+	}
+
+	/**
+	 * Write the error messages, if there are any.
+	 */
+	public void renderErrors(Appendable out) throws IOException {
+		ArrayList<String> errors = this.ts.getErrors();
+		if (errors.size() != 0) {
+			this.println(out, PO + "Error message(s):" + PC);
+			for (int i = 0; i < errors.size(); i++) {
+				this.println(out, PO + errors.get(i) + PC);
+			}
+		}
+	}
+
+	private String statusWord() {
+		switch (this.ts.getStatus()) {
+		case TableauSet.FEASIBLE:
+			return "solved";
+		case TableauSet.INFEASIBLE:
+			return "infeasible";
+		case TableauSet.NONCONVERGENT:
+			return "non-convergent";
+		case TableauSet.UNBOUNDED:
+			return "unbounded";
+		case TableauSet.UNSOLVED:
+			return "unsolved";
+		default:
+			return "";
+		}
+	}
+
+	/*
+	 * =================================================================
+	 * HTML
+	 * =================================================================
+	 */
+
+	/** The weights table, then tableaux from to to - 1, in HTML. */
+	private void renderHTML(Appendable out, int from, int to)
+			throws IOException {
+		this.prepareHTML();
+		ArrayList<LinguisticConstraint> con = this.ts.getConstraints();
+
+		// A tableau with just the constraints and their weights.
+		this.println(out, TABLEO);
+		StringBuilder sb = this.line;
+		sb.setLength(0);
+		sb.append(TRO);
+		if (con.size() > 0) {
+			sb.append(TD);
+		}
+		sb.append(this.nameCells).append(TRC);
+		this.println(out, sb);
+		this.println(out, this.weightRow);
+		this.println(out, TABLEC);
+
+		// The candidates are numbered across the whole set.
+		int candCount = 0;
+		if ("html_typology".equals(this.type)) {
+			for (int t = 0; t < from; t++) {
+				candCount += this.ts.getTableau(t).candidateCount();
+			}
+		}
+		for (int t = from; t < to; t++) {
+			Tableau tableau = this.ts.getTableau(t);
+			this.println(out, TABLEO);
+			this.println(out, this.weightRow);
+
+			sb.setLength(0);
+			sb.append(TRO).append(TDOfixed).append("<em>Input</em>:&nbsp;&nbsp;")
+					.append(tableau.getInput()).append(TDC);
+			sb.append(this.nameCells).append(TRC);
+			this.println(out, sb);
+
+			for (int r = 0; r < tableau.candidateCount(); r++) {
+				Candidate cand = tableau.getCandidate(r);
+				candCount++;
+				sb.setLength(0);
+				sb.append(TRO).append(TDOright);
+				if (cand.getFrequency() == 0) {
+					// For typology: add a "make winner" link.
+					if ("html_typology".equals(this.type)) {
+						sb.append("<A STYLE='color:333399;' href='HaLP:manualTypology(")
+								.append(candCount).append(")'>").append(
+										cand.getOutput()).append("</a>");
+					} else {
+						sb.append(cand.getOutput());
+					}
+				} else {
+					sb.append(this.winnerMark).append(cand.getOutput());
+				}
+				sb.append(TDC);
+				for (int i = 0; i < cand.violationCount(); i++) {
+					sb.append(TDOcenter).append(tableau.getViolation(r, i))
+							.append(TDC);
+				}
+				sb.append(TDOleft).append("Weighted total: ").append(
+						this.round(cand.getWeight())).append(TDC);
+				sb.append(TRC);
+				this.println(out, sb);
+			}
+			this.println(out, TABLEC);
+		}
+	}
+
+	/** Build the fragments that every tableau shares. */
+	private void prepareHTML() {
+		ArrayList<LinguisticConstraint> con = this.ts.getConstraints();
+		StringBuilder names = new StringBuilder();
+		StringBuilder weights = new StringBuilder(TRO);
+		if (con.size() > 0) {
+			weights.append(TDOright).append("<em>Weights</em>").append(TDC);
+		}
+		for (int i = 0; i < con.size(); i++) {
+			LinguisticConstraint currCon = con.get(i);
+			names.append(TDOcenter).append(currCon.getShortName()).append(TDC);
+			weights.append(TDOcenter).append(this.round(currCon.getWeight()))
+					.append(TDC);
+		}
+		weights.append(TRC);
+		this.nameCells = names.toString();
+		this.weightRow = weights.toString();
+	}
+
+	/** A weight rounded as LinguisticConstraint.getRoundedWeight() does. */
+	private double round(double weight) {
+		return Double.parseDouble(this.rounding.format(weight));
+	}
+
+	/*
+	 * =================================================================
+	 * Plain text
+	 * =================================================================
+	 */
+
+	/**
+	 * Write the tableaux in plain text, in the layout of an OTSoft file.
+	 *
+	 * @param out
+	 *            Where the content ends up.
+	 * @param withWeights
+	 *            Whether to include a row of weights.
+	 */
+	public void renderPlainly(Appendable out, boolean withWeights)
+			throws IOException {
+		this.renderPlainly(out, withWeights, 0, this.ts.size());
+	}
+
+	private void renderPlainly(Appendable out, boolean withWeights, int from,
+			int to) throws IOException {
+		ArrayList<LinguisticConstraint> con = this.ts.getConstraints();
+		StringBuilder sb = this.line;
+		this.println(out, "System status: " + this.statusWord());
+
+		// Constraints' full names, then their short names.
+		sb.setLength(0);
+		if (con.size() > 0) {
+			sb.append("\t\t");
+		}
+		for (int i = 0; i < con.size(); i++) {
+			sb.append('\t').append(con.get(i).getName());
+		}
+		this.println(out, sb);
+		sb.setLength(0);
+		if (con.size() > 0) {
+			sb.append("\t\t");
+		}
+		for (int i = 0; i < con.size(); i++) {
+			sb.append('\t').append(con.get(i).getShortName());
+		}
+		this.println(out, sb);
+		if (withWeights) {
+			sb.setLength(0);
+			if (con.size() > 0) {
+				sb.append("weights:\t\t");
+			}
+			for (int i = 0; i < con.size(); i++) {
+				sb.append('\t').append(con.get(i).getWeight());
+			}
+			this.println(out, sb);
+		}
+
+		for (int t = from; t < to; t++) {
+			Tableau tableau = this.ts.getTableau(t);
+			sb.setLength(0);
+			sb.append(tableau.getInput());
+			for (int r = 0; r < tableau.candidateCount(); r++) {
+				Candidate cand = tableau.getCandidate(r);
+				sb.append('\t').append(cand.getOutput());
+				sb.append('\t');
+				if (cand.getFrequency() != 0) {
+					sb.append(cand.getFrequency());
+				}
+				for (int i = 0; i < cand.violationCount(); i++) {
+					sb.append('\t').append(tableau.getViolation(r, i));
+				}
+				sb.append("\tWeighted total:\t").append(cand.getWeight());
+				this.println(out, sb);
+				sb.setLength(0);
+			}
+		}
+	}
+
+	/*
+	 * =================================================================
+	 * Comparative tableaux
+	 * =================================================================
+	 */
+
+	/**
+	 * Write a comparative tableau as HTML: one row per ERC, with the
+	 * winner-loser pair and a W or L for each constraint that prefers one of
+	 * them.
+	 *
+	 * @param ct
+	 *            The comparative tableau.
+	 * @param out
+	 *            Where the content ends up.
+	 */
+	public static void renderERCs(ComparativeTableau ct, Appendable out)
+			throws IOException {
+		String TABLEO = "<TABLE class='tableau' border='1'>";
+		String TABLEC = "</TABLE>";
+		String TRO = "<TR>";
+		String TRC = "</TR>";
+		String TDOnormal = "<TD>";
+		String TDOunaccounted = "<TD class='unaccountedfor'>";
+		String TDC = "</TD>";
+
+		out.append(TABLEO).append(TRO).append(TDOnormal).append(" input ")
+				.append(TDC).append(TDOnormal).append(" winner ~ loser ")
+				.append(TDC);
+		ArrayList<LinguisticConstraint> con = ct.getCon();
+		for (int i = 0; i < con.size(); i++) {
+			out.append(TDOnormal).append(con.get(i).getHTMLName()).append(TDC);
+		}
+
+		// A row span covers each run of ERCs of one input.
+		ArrayList<ERC> ercs = ct.getERCs();
+
+		StringBuilder sb = new StringBuilder();
+		LinguisticForm prevInput = null;
+		for (int e = 0; e < ercs.size(); e++) {
+			ERC erc = ercs.get(e);
+			String TDO = erc.isAccountedFor() ? TDOnormal : TDOunaccounted;
+			sb.setLength(0);
+			sb.append(TRO);
+			if (erc.getInput() != prevInput) {
+				int run = e + 1;
+				while (run < ercs.size()
+						&& ercs.get(run).getInput() == erc.getInput()) {
+					run++;
+				}
+				sb.append("<TD ROWSPAN=").append(run - e).append(">").append(
+						erc.getInput()).append(TDC);
+			}
+			prevInput = erc.getInput();
+			sb.append(TDO).append(erc.getWinner().getOutput()).append(" ~ ");
+			sb.append("<A STYLE='color:333399;' href='HaLP:manualComparative(")
+					.append(erc.getLoser().getNumber()).append(")'>").append(
+							erc.getLoser().getOutput()).append("</a>");
+			sb.append(TDC);
+			double[] lv = erc.getLearningVector();
+			for (int i = 0; i < lv.length; i++) {
+				sb.append(TDO);
+				if (lv[i] == ERC.L) {
+					sb.append('L');
+				} else if (lv[i] == ERC.W) {
+					sb.append('W');
+				}
+				sb.append(TDC);
+			}
+			sb.append(TRC);
+			out.append(sb);
+		}
+		out.append(TABLEC);
+	}
+
+	/*
+	 * =================================================================
+	 * Output
+	 * =================================================================
+	 */
+
+	private void println(Appendable out, CharSequence text) throws IOException {
+		out.append(text).append(newline);
+	}
+
+}
@@ -0,0 +1,237 @@
+package perceptron;
+
+/**
+ * <p>
+ * Runs a Perceptron for as long as it takes. The plasticity of each step comes
+ * from a PlasticitySchedule; the run stops when the schedule runs out, when
+ * the step or epoch budget is spent, or (unless told otherwise) as soon as
+ * every tableau's winner is optimal under the current weights.
+ * </p>
+ *
+ * <p>
+ * An epoch is as many steps as there are tableaux. Convergence is read from an
+ * ErrorTracker, which only looks at the tableaux a step actually touched, so
+ * checking after every step costs little. It counts errors by the learner's
+ * own rule, so a step that learns nothing never leaves an error behind; but
+ * a tableau whose first winner is in free variation with a candidate that
+ * beats it stays in error until the weights favour the first winner.
+ * </p>
+ *
+ * <pre>
+ * Trainer trainer = new Trainer(new Perceptron(ts),
+ * 		new PlasticitySchedule(2.0, 0.5, 4, 1000, PlasticitySchedule.LINEAR));
+ * trainer.setMaxEpochs(50);
+ * trainer.train();
+ * if (trainer.isConverged()) ...
+ * </pre>
+ *
+ * @see PlasticitySchedule
+ * @see ErrorTracker
+ */
+public class Trainer {
+
+	/*
+	 * ================================================================= Class
+	 * variables
+	 * =================================================================
+	 */
+
+	private Perceptron learner;
+
+	private TableauSet ts;
+
+	private PlasticitySchedule schedule;
+
+	private ErrorTracker tracker;
+
+	/** The most steps to take; 0 means no limit beyond the schedule. */
+	private long maxSteps;
+
+	/** The most epochs to take; 0 means no limit beyond the schedule. */
+	private long maxEpochs;
+
+	/** Whether to stop as soon as the grammar is right. */
+	private boolean stopWhenConverged = true;
+
+	/** Steps taken so far, over all calls to train(). */
+	private long steps;
+
+	/** Steps that changed the weights. */
+	private long errorSteps;
+
+	/** Where the weights are sampled as learning goes, or null. */
+	private TrajectoryRecorder trajectory;
+
+	/*
+	 * =================================================================
+	 * Constructors
+	 * =================================================================
+	 */
+
+	/**
+	 * Train a Perceptron with the given schedule.
+	 *
+	 * @param learner
+	 *            The Perceptron.
+	 * @param schedule
+	 *            The plasticity schedule.
+	 */
+	public Trainer(Perceptron learner, PlasticitySchedule schedule) {
+		this.learner = learner;
+		this.ts = learner.getTableauSet();
+		this.schedule = schedule;
+		this.tracker = new ErrorTracker(this.ts, learner.getWeights());
+	}
+
+	/*
+	 * =================================================================
+	 * Training
+	 * =================================================================
+	 */
+
+	/**
+	 * Learn until the schedule, the budget or the errors run out.
+	 *
+	 * @return true if the grammar converged.
+	 */
+	public boolean train() {
+		this.ts.prepareSampler();
+		long limit = this.schedule.getTotalSteps();
+		if (this.maxSteps > 0) {
+			limit = Math.min(limit, this.maxSteps);
+		}
+		if (this.maxEpochs > 0) {
+			limit = Math.min(limit, this.maxEpochs * this.ts.size());
+		}
+		double[] weights = this.learner.getWeights();
+		if (this.trajectory != null) {
+			this.trajectory.record(this.steps, weights);
+		}
+		boolean done = this.stopWhenConverged && this.tracker.isConverged();
+		while (!done && this.steps < limit) {
+			double plasticity = this.schedule.getPlasticity(this.steps);
+			this.steps++;
+			boolean learned = (this.learner.perceptronStep(plasticity) > 0);
+			if (this.trajectory != null) {
+				this.trajectory.record(this.steps, weights);
+			}
+			if (learned) {
+				this.errorSteps++;
+				this.tracker.sync();
+				done = this.stopWhenConverged && this.tracker.isConverged();
+			}
+		}
+		this.tracker.sync();
+		if (this.trajectory != null) {
+			// The weights the run ended with, due or not.
+			this.trajectory.sample(this.steps, weights);
+		}
+		return this.tracker.isConverged();
+	}
+
+	/**
+	 * Start over: forget the steps taken and rebuild the error count, e.g.
+	 * after the weights or the winners were changed from outside.
+	 */
+	public void reset() {
+		this.steps = 0;
+		this.errorSteps = 0;
+		this.tracker.refresh();
+	}
+
+	/*
+	 * =================================================================
+	 * Getters and setters
+	 * =================================================================
+	 */
+
+	public boolean setMaxSteps(long maxSteps) {
+		this.maxSteps = maxSteps;
+		return true;
+	}
+
+	public long getMaxSteps() {
+		return this.maxSteps;
+	}
+
+	public boolean setMaxEpochs(long maxEpochs) {
+		this.maxEpochs = maxEpochs;
+		return true;
+	}
+
+	public long getMaxEpochs() {
+		return this.maxEpochs;
+	}
+
+	public boolean setStopWhenConverged(boolean stop) {
+		this.stopWhenConverged = stop;
+		return true;
+	}
+
+	public boolean isStopWhenConverged() {
+		return this.stopWhenConverged;
+	}
+
+	public boolean setSchedule(PlasticitySchedule schedule) {
+		this.schedule = schedule;
+		return true;
+	}
+
+	public PlasticitySchedule getSchedule() {
+		return this.schedule;
+	}
+
+	/**
+	 * Sample the weights into this recorder as learning goes: before the
+	 * first step, every interval steps, and at the end of each call to
+	 * train(). The recorder is not closed by the Trainer.
+	 */
+	public boolean setTrajectory(TrajectoryRecorder trajectory) {
+		this.trajectory = trajectory;
+		return true;
+	}
+
+	public TrajectoryRecorder getTrajectory() {
+		return this.trajectory;
+	}
+
+	public Perceptron getLearner() {
+		return this.learner;
+	}
+
+	public ErrorTracker getErrorTracker() {
+		return this.tracker;
+	}
+
+	/** The number of steps taken. */
+	public long getSteps() {
+		return this.steps;
+	}
+
+	/** The number of steps taken, in epochs. */
+	public double getEpochs() {
+		return (this.ts.size() == 0) ? 0.0 : (double) this.steps
+				/ this.ts.size();
+	}
+
+	/** The number of steps on which the weights changed. */
+	public long getErrorSteps() {
+		return this.errorSteps;
+	}
+
+	/** Whether every tableau's winner is optimal. */
+	public boolean isConverged() {
+		return this.tracker.isConverged();
+	}
+
+	/** The number of tableaux whose winner is not optimal. */
+	public int getErrorCount() {
+		return this.tracker.getErrorCount();
+	}
+
+	/** The fraction of tableaux whose winner is optimal. */
+	public double getAccuracy() {
+		return this.tracker.getAccuracy();
+	}
+
+}
@@ -0,0 +1,409 @@
+package perceptron;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * <p>
+ * Records the weights of a learning run every so many steps, for learning
+ * curves. Samples go into a preallocated block of doubles; a full block is
+ * handed to a background thread to be written while the learner fills the
+ * other one. Between samples, record() costs one comparison.
+ * </p>
+ *
+ * <pre>
+ * TrajectoryRecorder trajectory = new TrajectoryRecorder(ts, new File(
+ * 		&quot;trajectory.csv&quot;), 25, TrajectoryRecorder.CSV);
+ * trainer.setTrajectory(trajectory);
+ * trainer.train();
+ * trajectory.close();
+ * </pre>
+ *
+ * <p>
+ * A CSV file has a line of column names, step and the constraint names, then
+ * one line per sample. A BINARY file is big-endian and columnar: the magic
+ * number PTKT, the version, the number of constraints and the interval, then
+ * blocks, each made of its number of samples n, n longs for the steps, and n
+ * doubles for each constraint in turn.
+ * </p>
+ *
+ * <p>
+ * A recorder belongs to one learner. Recorders share one writer thread
+ * unless they are given an ExecutorService of their own.
+ * </p>
+ *
+ * @see Trainer#setTrajectory(TrajectoryRecorder)
+ */
+public class TrajectoryRecorder {
+
+	/*
+	 * ================================================================= Class
+	 * variables
+	 * =================================================================
+	 */
+
+	/** Comma-separated text, one line per sample. */
+	public final static int CSV = 0;
+
+	/** Columnar blocks of big-endian numbers. */
+	public final static int BINARY = 1;
+
+	/** "PTKT". */
+	public final static int MAGIC = 0x50544B54;
+
+	public final static int VERSION = 1;
+
+	public static String newline = System.getProperty("line.separator");
+
+	private static ExecutorService sharedWriter;
+
+	private int constraints;
+
+	private int interval;
+
+	private int format;
+
+	private ExecutorService writer;
+
+	/** The block being filled and the one being written. */
+	private Block filling, spare;
+
+	/** Held while a block is being written. */
+	private Semaphore writing = new Semaphore(1);
+
+	/** The next step to be sampled. */
+	private long next;
+
+	/** The last step sampled, or -1. */
+	private long last = -1;
+
+	private long samples;
+
+	private FileOutputStream stream;
+
+	private FileChannel channel;
+
+	private ByteBuffer buffer;
+
+	private Writer text;
+
+	/** The first error, if any. */
+	private volatile IOException error;
+
+	private boolean closed;
+
+	/** Samples kept in memory before they are written. */
+	private final static int DEFAULT_CAPACITY = 512;
+
+	/**
+	 * Record the weights of a grammar into a file, on the shared writer
+	 * thread.
+	 *
+	 * @param ts
+	 *            The grammar; its constraint names head the CSV file.
+	 * @param file
+	 *            The file.
+	 * @param interval
+	 *            The number of steps between samples.
+	 * @param format
+	 *            CSV or BINARY.
+	 * @throws IOException
+	 *             If the file can't be created.
+	 */
+	public TrajectoryRecorder(TableauSet ts, File file, int interval,
+			int format) throws IOException {
+		this(ts, file, interval, format, DEFAULT_CAPACITY, null);
+	}
+
+	/**
+	 * Record the weights of a grammar into a file.
+	 *
+	 * @param ts
+	 *            The grammar.
+	 * @param file
+	 *            The file.
+	 * @param interval
+	 *            The number of steps between samples.
+	 * @param format
+	 *            CSV or BINARY.
+	 * @param capacity
+	 *            The number of samples in a block.
+	 * @param writer
+	 *            Where the blocks are written, or null for the shared writer
+	 *            thread.
+	 * @throws IOException
+	 *             If the file can't be created.
+	 */
+	public TrajectoryRecorder(TableauSet ts, File file, int interval,
+			int format, int capacity, ExecutorService writer)
+			throws IOException {
+		this.constraints = ts.constraintCount();
+		this.interval = Math.max(1, interval);
+		this.format = format;
+		this.writer = (writer == null) ? sharedWriter() : writer;
+		capacity = Math.max(1, capacity);
+		this.filling = new Block(capacity, this.constraints);
+		this.spare = new Block(capacity, this.constraints);
+		this.stream = new FileOutputStream(file);
+		if (format == BINARY) {
+			this.channel = this.stream.getChannel();
+			this.buffer = ByteBuffer.allocateDirect(1 << 16);
+			this.buffer.putInt(MAGIC);
+			this.buffer.putInt(VERSION);
+			this.buffer.putInt(this.constraints);
+			this.buffer.putInt(this.interval);
+		} else {
+			this.text = new BufferedWriter(new OutputStreamWriter(this.stream),
+					1 << 16);
+			StringBuilder sb = new StringBuilder("step");
+			for (int k = 0; k < this.constraints; k++) {
+				sb.append(',').append(quote(ts.getConstraint(k).getName()));
+			}
+			this.text.write(sb.append(newline).toString());
+		}
+	}
+
+	/** One block of samples. */
+	private static class Block {
+
+		final long[] steps;
+
+		/** values[k * capacity + r] is constraint k in sample r. */
+		final double[] values;
+
+		int rows;
+
+		Block(int capacity, int constraints) {
+			this.steps = new long[capacity];
+			this.values = new double[capacity * constraints];
+		}
+
+		int capacity() {
+			return this.steps.length;
+		}
+	}
+
+	/** The writer thread recorders share; it doesn't keep the JVM alive. */
+	private static synchronized ExecutorService sharedWriter() {
+		if (sharedWriter == null) {
+			sharedWriter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "TrajectoryRecorder");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return sharedWriter;
+	}
+
+	/*
+	 * =================================================================
+	 * Recording
+	 * =================================================================
+	 */
+
+	/**
+	 * Sample the weights if a sample is due at this step: at step 0, and
+	 * every interval steps after it.
+	 *
+	 * @param step
+	 *            The number of steps taken so far.
+	 * @param weights
+	 *            The weights, one per constraint.
+	 */
+	public void record(long step, double[] weights) {
+		if (step >= this.next) {
+			this.sample(step, weights);
+		}
+	}
+
+	/**
+	 * Sample the weights now, due or not; e.g. at the end of a run. A step
+	 * already sampled isn't sampled twice.
+	 */
+	public void sample(long step, double[] weights) {
+		if (step == this.last) {
+			return;
+		}
+		if (this.closed) {
+			throw new IllegalStateException("The TrajectoryRecorder is closed.");
+		}
+		Block block = this.filling;
+		int r = block.rows;
+		int capacity = block.capacity();
+		block.steps[r] = step;
+		for (int k = 0; k < this.constraints; k++) {
+			block.values[k * capacity + r] = weights[k];
+		}
+		block.rows++;
+		this.samples++;
+		this.last = step;
+		this.next = step - step % this.interval + this.interval;
+		if (block.rows == capacity) {
+			this.hand(block);
+		}
+	}
+
+	/** Give a block to the writer, and take the other one to fill. */
+	private void hand(final Block block) {
+		this.acquire();
+		this.filling = this.spare;
+		this.spare = block;
+		this.writer.execute(new Runnable() {
+			public void run() {
+				try {
+					writeBlock(block);
+				} catch (IOException e) {
+					if (error == null) {
+						error = e;
+					}
+				} finally {
+					block.rows = 0;
+					writing.release();
+				}
+			}
+		});
+	}
+
+	/** Wait for the block being written, if any. */
+	private void acquire() {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				this.writing.acquire();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Write the samples still in memory, wait for the writer, and close the
+	 * file.
+	 *
+	 * @throws IOException
+	 *             The first error met in writing, if any.
+	 */
+	public void close() throws IOException {
+		if (!this.closed) {
+			if (this.filling.rows > 0) {
+				this.hand(this.filling);
+			}
+			this.acquire();
+			this.closed = true;
+			try {
+				if (this.format == BINARY) {
+					this.flush();
+				} else {
+					this.text.flush();
+				}
+			} catch (IOException e) {
+				if (this.error == null) {
+					this.error = e;
+				}
+			} finally {
+				this.writing.release();
+				this.stream.close();
+			}
+		}
+		if (this.error != null) {
+			throw this.error;
+		}
+	}
+
+	/*
+	 * =================================================================
+	 * The writer's side
+	 * =================================================================
+	 */
+
+	private void writeBlock(Block block) throws IOException {
+		int rows = block.rows;
+		int capacity = block.capacity();
+		if (this.format == BINARY) {
+			this.room(4);
+			this.buffer.putInt(rows);
+			for (int r = 0; r < rows; r++) {
+				this.room(8);
+				this.buffer.putLong(block.steps[r]);
+			}
+			for (int k = 0; k < this.constraints; k++) {
+				int base = k * capacity;
+				for (int r = 0; r < rows; r++) {
+					this.room(8);
+					this.buffer.putDouble(block.values[base + r]);
+				}
+			}
+		} else {
+			StringBuilder sb = new StringBuilder();
+			for (int r = 0; r < rows; r++) {
+				sb.setLength(0);
+				sb.append(block.steps[r]);
+				for (int k = 0; k < this.constraints; k++) {
+					sb.append(',').append(block.values[k * capacity + r]);
+				}
+				sb.append(newline);
+				this.text.append(sb);
+			}
+		}
+	}
+
+	/** Make room for n more bytes in the buffer. */
+	private void room(int n) throws IOException {
+		if (this.buffer.remaining() < n) {
+			this.flush();
+		}
+	}
+
+	private void flush() throws IOException {
+		this.buffer.flip();
+		while (this.buffer.hasRemaining()) {
+			this.channel.write(this.buffer);
+		}
+		this.buffer.clear();
+	}
+
+	/** A CSV field, quoted if it needs to be. */
+	private static String quote(String field) {
+		if (field.indexOf(',') < 0 && field.indexOf('"') < 0
+				&& field.indexOf('\n') < 0 && field.indexOf('\r') < 0) {
+			return field;
+		}
+		return "\"" + field.replace("\"", "\"\"") + "\"";
+	}
+
+	/*
+	 * =================================================================
+	 * Getters
+	 * =================================================================
+	 */
+
+	public int getInterval() {
+		return this.interval;
+	}
+
+	public int getFormat() {
+		return this.format;
+	}
+
+	/** The number of samples taken so far. */
+	public long getSamples() {
+		return this.samples;
+	}
+
+}
@@ -0,0 +1,250 @@
+package perceptron;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <p>
+ * Works out which languages of a typology a grammar can produce, on a
+ * work-stealing pool. Each language gets an RCD status, from Recursive
+ * Constraint Demotion, and an LP status, for harmonic grammar:
+ * </p>
+ * <ul>
+ * <li>FEASIBLE if it has a ranking (weights can mimic any ranking) or if a
+ * perceptron finds non-negative weights under which every winner wins;</li>
+ * <li>INFEASIBLE if some ERC has no W at all, so that no weights can work;</li>
+ * <li>NONCONVERGENT if the perceptron hasn't found weights within the epoch
+ * limit, which leaves the question open.</li>
+ * </ul>
+ *
+ * <pre>
+ * TypologyChecker checker = new TypologyChecker(ts);
+ * checker.checkAll(); // every language, rankable or not
+ * ArrayList&lt;Language&gt; rankable = ts.getRankableLanguages();
+ * </pre>
+ *
+ * <p>
+ * The tableaux are only read. Each task has its own ComparativeTableau and
+ * weights, so the languages are checked without calling setWinners(), which
+ * changes the frequencies of the shared candidates.
+ * </p>
+ *
+ * @see TypologyEnumerator
+ */
+public class TypologyChecker {
+
+	/*
+	 * ================================================================= Class
+	 * variables
+	 * =================================================================
+	 */
+
+	/** Languages taken from the enumerator at a time by checkAll(). */
+	private final static int BATCH = 1 << 14;
+
+	private TableauSet ts;
+
+	private ForkJoinPool pool;
+
+	/** The most epochs the perceptron gets to find weights. */
+	private int maxEpochs = 1000;
+
+	/**
+	 * Check the languages of a TableauSet on the common pool.
+	 *
+	 * @param ts
+	 *            The tableaux; must not change while checking.
+	 */
+	public TypologyChecker(TableauSet ts) {
+		this(ts, ForkJoinPool.commonPool());
+	}
+
+	public TypologyChecker(TableauSet ts, ForkJoinPool pool) {
+		this.ts = ts;
+		this.pool = pool;
+	}
+
+	/*
+	 * =================================================================
+	 * Checking
+	 * =================================================================
+	 */
+
+	/**
+	 * Set the RCD and LP status of every language, in parallel.
+	 *
+	 * @param languages
+	 *            The languages; each must pick its winners from this
+	 *            TableauSet.
+	 */
+	public void check(List<Language> languages) {
+		if (languages.isEmpty()) {
+			return;
+		}
+		int leaf = Math.max(16, languages.size()
+				/ (8 * this.pool.getParallelism()));
+		this.pool.invoke(new Check(languages, 0, languages.size(), leaf));
+	}
+
+	/**
+	 * Check the languages of the TableauSet, as getLanguages() has them, and
+	 * keep them there, so that getFeasibleLanguages() and
+	 * getRankableLanguages() report them.
+	 */
+	public void checkLanguages() {
+		this.check(this.ts.getLanguages());
+	}
+
+	/**
+	 * Go through every language of the typology, a batch at a time, check
+	 * each batch in parallel, and keep the languages that are rankable or
+	 * feasible as the TableauSet's languages. Only a batch is in memory at
+	 * once, besides the languages kept.
+	 *
+	 * @return The languages kept.
+	 */
+	public ArrayList<Language> checkAll() {
+		TypologyEnumerator typology = new TypologyEnumerator(this.ts);
+		typology.setPruning(false);
+		ArrayList<Language> kept = new ArrayList<Language>();
+		ArrayList<Language> batch = new ArrayList<Language>(BATCH);
+		boolean more = true;
+		while (more) {
+			batch.clear();
+			while (batch.size() < BATCH && (more = typology.next())) {
+				batch.add(typology.getLanguage());
+			}
+			this.check(batch);
+			for (int i = 0; i < batch.size(); i++) {
+				Language language = batch.get(i);
+				if (language.getRCDStatus() == ComparativeTableau.RANKING_FOUND
+						|| language.getLPStatus() == TableauSet.FEASIBLE) {
+					kept.add(language);
+				}
+			}
+		}
+		this.ts.setLanguages(kept);
+		return kept;
+	}
+
+	/** Splits a range of languages until it is small enough to check. */
+	private class Check extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<Language> languages;
+
+		private final int from, to, leaf;
+
+		Check(List<Language> languages, int from, int to, int leaf) {
+			this.languages = languages;
+			this.from = from;
+			this.to = to;
+			this.leaf = leaf;
+		}
+
+		protected void compute() {
+			if (this.to - this.from <= this.leaf) {
+				checkRange(this.languages, this.from, this.to);
+			} else {
+				int mid = (this.from + this.to) >>> 1;
+				invokeAll(new Check(this.languages, this.from, mid, this.leaf),
+						new Check(this.languages, mid, this.to, this.leaf));
+			}
+		}
+	}
+
+	/**
+	 * Check languages from..to, with scratch space of their own. Only the
+	 * unique ERCs of each language are ranked and weighed.
+	 */
+	private void checkRange(List<Language> languages, int from, int to) {
+		ComparativeTableau scratch = null;
+		double[] weights = new double[this.ts.constraintCount()];
+		for (int i = from; i < to; i++) {
+			Language language = languages.get(i);
+			if (scratch == null) {
+				scratch = new ComparativeTableau(this.ts, language);
+			} else {
+				scratch.setLanguage(language);
+			}
+			ArrayList<ERC> unique = scratch.getUniqueERCs();
+			int rcd = scratch.rank(unique);
+			language.setRCDStatus(rcd);
+			if (rcd == ComparativeTableau.RANKING_FOUND) {
+				language.setLPStatus(TableauSet.FEASIBLE);
+			} else {
+				language.setLPStatus(this.weigh(unique, weights));
+			}
+		}
+	}
+
+	/**
+	 * Look for non-negative weights under which every ERC's winner has less
+	 * penalty than its loser, with a perceptron: each ERC that isn't
+	 * satisfied moves the weights by its loser's violations minus its
+	 * winner's.
+	 *
+	 * @return FEASIBLE, INFEASIBLE or NONCONVERGENT.
+	 */
+	private int weigh(ArrayList<ERC> ercs, double[] weights) {
+		for (int e = 0; e < ercs.size(); e++) {
+			ERC erc = ercs.get(e);
+			if (erc.hasL() && !erc.hasW()) {
+				return TableauSet.INFEASIBLE;
+			}
+		}
+		int n = weights.length;
+		Arrays.fill(weights, 0.0);
+		for (int epoch = 0; epoch < this.maxEpochs; epoch++) {
+			boolean changed = false;
+			for (int e = 0; e < ercs.size(); e++) {
+				ERC erc = ercs.get(e);
+				if (!erc.hasW()) {
+					continue; // no L either: a tie, which asks for nothing
+				}
+				Candidate winner = erc.getWinner(), loser = erc.getLoser();
+				int m = Math.min(n, winner.violationCount());
+				double margin = 0.0;
+				for (int k = 0; k < m; k++) {
+					margin += weights[k]
+							* (loser.getViolation(k) - winner.getViolation(k));
+				}
+				if (margin <= 0.0) {
+					for (int k = 0; k < m; k++) {
+						weights[k] = Math.max(0.0, weights[k]
+								+ loser.getViolation(k) - winner.getViolation(k));
+					}
+					changed = true;
+				}
+			}
+			if (!changed) {
+				return TableauSet.FEASIBLE;
+			}
+		}
+		return TableauSet.NONCONVERGENT;
+	}
+
+	/*
+	 * =================================================================
+	 * Getters and setters
+	 * =================================================================
+	 */
+
+	/**
+	 * The most epochs the perceptron gets before a language is called
+	 * NONCONVERGENT.
+	 */
+	public boolean setMaxEpochs(int maxEpochs) {
+		this.maxEpochs = maxEpochs;
+		return true;
+	}
+
+	public int getMaxEpochs() {
+		return this.maxEpochs;
+	}
+
+}
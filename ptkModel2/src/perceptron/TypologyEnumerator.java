@@ -0,0 +1,305 @@
+package perceptron;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Goes through the languages of a TableauSet one at a time, without making a
+ * list of them. A language picks one winner per tableau, so the languages are
+ * the numbers of a mixed radix, with one digit per tableau; they come in that
+ * order, the last tableau's winner changing fastest.
+ * </p>
+ *
+ * <pre>
+ * TypologyEnumerator typology = new TypologyEnumerator(ts);
+ * while (typology.next()) {
+ * 	int[] winners = typology.getWinners(); // one candidate index per tableau
+ * 	...
+ * }
+ * </pre>
+ *
+ * <p>
+ * With pruning on (the default), only the languages that some ranking of the
+ * constraints produces are returned. The digits are chosen one tableau at a
+ * time, and each choice adds the ERCs of its winner over the other
+ * candidates; as soon as Recursive Constraint Demotion finds no ranking for
+ * the ERCs so far, no language that begins that way can be ranked, and all of
+ * them are skipped at once. A loser with the winner's violations gives an ERC
+ * with no W or L, which asks nothing of the ranking, and is left out.
+ * </p>
+ *
+ * <p>
+ * The TableauSet is only read, and must not change while the languages are
+ * being gone through.
+ * </p>
+ *
+ * @see TableauSet#generateLanguages()
+ */
+public class TypologyEnumerator {
+
+	/*
+	 * ================================================================= Class
+	 * variables
+	 * =================================================================
+	 */
+
+	private Candidate[][] candidates;
+
+	private int tableauCount;
+
+	private int constraintCount;
+
+	/** The winner of each tableau in the current language; -1 if not chosen. */
+	private int[] winners;
+
+	/**
+	 * The ERCs of each choice of winner, made when first needed, as bitsets:
+	 * wMasks[t][w] holds the W's of one ERC per loser, lMasks[t][w] the L's.
+	 */
+	private long[][][][] wMasks, lMasks;
+
+	/** The ERCs of the winners chosen so far, in the first chosenCount. */
+	private long[][] chosenW = new long[16][], chosenL = new long[16][];
+
+	private int chosenCount;
+
+	/** The number of ERCs chosen before tableau t's winner was. */
+	private int[] chosenBefore;
+
+	/** suffix[t] is the number of languages of tableaux t and after. */
+	private BigInteger[] suffix;
+
+	private boolean pruning = true;
+
+	private boolean started;
+
+	private boolean finished;
+
+	private BigInteger pruned = BigInteger.ZERO;
+
+	private long returned;
+
+	private RecursiveConstraintDemotion engine;
+
+	/**
+	 * The languages of a TableauSet.
+	 *
+	 * @param ts
+	 *            The tableaux.
+	 */
+	public TypologyEnumerator(TableauSet ts) {
+		this.tableauCount = ts.size();
+		this.constraintCount = ts.constraintCount();
+		this.candidates = new Candidate[this.tableauCount][];
+		this.wMasks = new long[this.tableauCount][][][];
+		this.lMasks = new long[this.tableauCount][][][];
+		for (int t = 0; t < this.tableauCount; t++) {
+			Tableau tableau = ts.getTableau(t);
+			this.candidates[t] = new Candidate[tableau.candidateCount()];
+			for (int r = 0; r < this.candidates[t].length; r++) {
+				this.candidates[t][r] = tableau.getCandidate(r);
+			}
+			this.wMasks[t] = new long[this.candidates[t].length][][];
+			this.lMasks[t] = new long[this.candidates[t].length][][];
+		}
+		this.winners = new int[this.tableauCount];
+		Arrays.fill(this.winners, -1);
+		this.chosenBefore = new int[this.tableauCount + 1];
+		this.suffix = new BigInteger[this.tableauCount + 1];
+		this.suffix[this.tableauCount] = BigInteger.ONE;
+		for (int t = this.tableauCount - 1; t >= 0; t--) {
+			this.suffix[t] = this.suffix[t + 1].multiply(BigInteger
+					.valueOf(this.candidates[t].length));
+		}
+		this.engine = new RecursiveConstraintDemotion(this.constraintCount);
+	}
+
+	/*
+	 * =================================================================
+	 * Enumeration
+	 * =================================================================
+	 */
+
+	/**
+	 * Move to the next language.
+	 *
+	 * @return false when there are no more.
+	 */
+	public boolean next() {
+		if (this.finished) {
+			return false;
+		}
+		int t;
+		if (!this.started) {
+			this.started = true;
+			if (this.tableauCount == 0) {
+				// One language, which picks nothing.
+				this.returned++;
+				return true;
+			}
+			t = 0;
+		} else {
+			t = this.tableauCount - 1;
+		}
+		while (t >= 0) {
+			this.unchoose(t);
+			this.winners[t]++;
+			if (this.winners[t] >= this.candidates[t].length) {
+				this.winners[t] = -1;
+				t--;
+				continue;
+			}
+			this.choose(t, this.winners[t]);
+			if (this.pruning && !this.rcd()) {
+				this.pruned = this.pruned.add(this.suffix[t + 1]);
+				continue;
+			}
+			if (t == this.tableauCount - 1) {
+				this.returned++;
+				return true;
+			}
+			t++;
+		}
+		this.finished = true;
+		return false;
+	}
+
+	/** Add the ERCs of winner w of tableau t. */
+	private void choose(int t, int w) {
+		this.chosenBefore[t] = this.chosenCount;
+		if (this.wMasks[t][w] == null) {
+			this.makeERCs(t, w);
+		}
+		long[][] wRows = this.wMasks[t][w], lRows = this.lMasks[t][w];
+		int n = this.chosenCount + wRows.length;
+		if (this.chosenW.length < n) {
+			int size = Math.max(n, 2 * this.chosenW.length);
+			this.chosenW = Arrays.copyOf(this.chosenW, size);
+			this.chosenL = Arrays.copyOf(this.chosenL, size);
+		}
+		System.arraycopy(wRows, 0, this.chosenW, this.chosenCount, wRows.length);
+		System.arraycopy(lRows, 0, this.chosenL, this.chosenCount, lRows.length);
+		this.chosenCount = n;
+	}
+
+	/** Take away the ERCs of tableau t's winner, if it has one. */
+	private void unchoose(int t) {
+		if (this.winners[t] >= 0) {
+			this.chosenCount = this.chosenBefore[t];
+		}
+	}
+
+	/**
+	 * The ERCs of winner w of tableau t over the other candidates, as
+	 * ComparativeTableau.readTableau() makes them, leaving out those with
+	 * neither a W nor an L.
+	 */
+	private void makeERCs(int t, int w) {
+		Candidate winner = this.candidates[t][w];
+		int words = (this.constraintCount + 63) >>> 6;
+		ArrayList<long[]> wRows = new ArrayList<long[]>();
+		ArrayList<long[]> lRows = new ArrayList<long[]>();
+		for (int r = 0; r < this.candidates[t].length; r++) {
+			Candidate loser = this.candidates[t][r];
+			if (r == w || loser.violationCount() != winner.violationCount()) {
+				continue;
+			}
+			long[] wMask = new long[words], lMask = new long[words];
+			boolean informative = false;
+			int n = Math.min(winner.violationCount(), this.constraintCount);
+			for (int i = 0; i < n; i++) {
+				double wv = winner.getViolation(i), lv = loser.getViolation(i);
+				if (wv < lv) {
+					wMask[i >>> 6] |= 1L << i;
+					informative = true;
+				} else if (wv > lv) {
+					lMask[i >>> 6] |= 1L << i;
+					informative = true;
+				}
+			}
+			if (informative) {
+				wRows.add(wMask);
+				lRows.add(lMask);
+			}
+		}
+		this.wMasks[t][w] = wRows.toArray(new long[wRows.size()][]);
+		this.lMasks[t][w] = lRows.toArray(new long[lRows.size()][]);
+	}
+
+	/**
+	 * Recursive Constraint Demotion on the ERCs chosen so far: whether some
+	 * ranking satisfies them all.
+	 */
+	private boolean rcd() {
+		return this.engine.run(this.chosenW, this.chosenL, this.chosenCount);
+	}
+
+	/*
+	 * =================================================================
+	 * The current language
+	 * =================================================================
+	 */
+
+	/**
+	 * The winner of each tableau in the current language. This is the live
+	 * array: copy it to keep it.
+	 */
+	public int[] getWinners() {
+		return this.winners;
+	}
+
+	/**
+	 * The current language as a Language: its winners, in tableau order. If
+	 * pruning is on, it is rankable, and so feasible too, since every ranking
+	 * can be mimicked by weights.
+	 */
+	public Language getLanguage() {
+		ArrayList<Candidate> list = new ArrayList<Candidate>(this.tableauCount);
+		for (int t = 0; t < this.tableauCount; t++) {
+			list.add(this.candidates[t][this.winners[t]]);
+		}
+		Language language = new Language(list);
+		if (this.pruning) {
+			language.setRCDStatus(ComparativeTableau.RANKING_FOUND);
+			language.setLPStatus(TableauSet.FEASIBLE);
+		}
+		return language;
+	}
+
+	/*
+	 * =================================================================
+	 * Getters and setters
+	 * =================================================================
+	 */
+
+	/**
+	 * Whether to skip the languages that no ranking produces. Set this before
+	 * the first call to next().
+	 */
+	public boolean setPruning(boolean pruning) {
+		this.pruning = pruning;
+		return true;
+	}
+
+	public boolean isPruning() {
+		return this.pruning;
+	}
+
+	/** The number of languages, rankable or not. */
+	public BigInteger getLanguageCount() {
+		return this.suffix[0];
+	}
+
+	/** The number of languages skipped so far for want of a ranking. */
+	public BigInteger getPrunedCount() {
+		return this.pruned;
+	}
+
+	/** The number of languages next() has moved to so far. */
+	public long getReturnedCount() {
+		return this.returned;
+	}
+
+}